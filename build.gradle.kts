@@ -16,4 +16,11 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+tasks.register<JavaExec>("benchmark") {
+    description = "Measures lex and parse throughput and heap use on generated programs."
+    group = "verification"
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass.set("plc.project.ParserBenchmark")
+    maxHeapSize = "12g"
+}
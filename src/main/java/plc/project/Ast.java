@@ -1,23 +1,60 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * See the Parser assignment specification for specific notes on each AST class
  * and how to use it.
+ *
+ * Nodes are immutable. Lists are copied into right-sized immutable lists
+ * (sharing a single empty list), and optional children are stored as nullable
+ * fields and only wrapped in an {@link Optional} by their getters. Each node
+ * also caches a structural hash code, which equals compares before comparing
+ * children. The hash is computed on construction, except for {@link Method}
+ * and {@link Source} where it is computed on first use so that outline mode
+ * does not parse method bodies early.
  */
 public abstract class Ast {
 
+    /**
+     * Calls the {@code visit} method of {@code visitor} for this node's type.
+     */
+    public abstract <R> R accept(Visitor<R> visitor);
+
+    /**
+     * Calls the {@code visit} method of {@code visitor} for this node's type,
+     * passing along {@code context}.
+     */
+    public abstract <C, R> R accept(ContextVisitor<C, R> visitor, C context);
+
+    /**
+     * Returns this tree in the standard format of {@link AstPrinter}.
+     */
+    @Override
+    public String toString() {
+        return new AstPrinter().print(this);
+    }
+
     public static final class Source extends Ast {
 
         private final List<Field> fields;
         private final List<Method> methods;
+        private final SpanTable spans;
+        private int hash;
 
         public Source(List<Field> fields, List<Method> methods) {
-            this.fields = fields;
-            this.methods = methods;
+            this(fields, methods, new SpanTable());
+        }
+
+        public Source(List<Field> fields, List<Method> methods, SpanTable spans) {
+            this.fields = List.copyOf(fields);
+            this.methods = List.copyOf(methods);
+            this.spans = spans;
         }
 
         public List<Field> getFields() {
@@ -28,19 +65,41 @@ public abstract class Ast {
             return methods;
         }
 
+        /**
+         * Returns the source spans of the nodes in this tree, which is empty
+         * unless the tree was created by {@link Parser}. Spans are not part of
+         * equality.
+         */
+        public SpanTable getSpans() {
+            return spans;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visit(this);
+        }
+
+        @Override
+        public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+            return visitor.visit(this, context);
+        }
+
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Source &&
+            return this == obj || obj instanceof Source &&
+                    hashCode() == ((Source) obj).hashCode() &&
                     fields.equals(((Source) obj).fields) &&
                     methods.equals(((Source) obj).methods);
         }
 
         @Override
-        public String toString() {
-            return "Ast.Source{" +
-                    "fields=" + fields +
-                    "methods=" + methods +
-                    '}';
+        public int hashCode() {
+            int hash = this.hash;
+            if (hash == 0) {
+                hash = Objects.hash("Ast.Source", fields, methods);
+                this.hash = hash;
+            }
+            return hash;
         }
 
     }
@@ -48,11 +107,13 @@ public abstract class Ast {
     public static final class Field extends Ast {
 
         private final String name;
-        private final Optional<Expr> value;
+        private final Expr value;
+        private final int hash;
 
         public Field(String name, Optional<Expr> value) {
             this.name = name;
-            this.value = value;
+            this.value = value.orElse(null);
+            this.hash = Objects.hash("Ast.Field", name, value);
         }
 
         public String getName() {
@@ -60,22 +121,30 @@ public abstract class Ast {
         }
 
         public Optional<Expr> getValue() {
-            return value;
+            return Optional.ofNullable(value);
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visit(this);
+        }
+
+        @Override
+        public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+            return visitor.visit(this, context);
         }
 
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Field &&
+            return this == obj || obj instanceof Field &&
+                    hash == ((Field) obj).hash &&
                     name.equals(((Field) obj).name) &&
-                    value.equals(((Field) obj).value);
+                    Objects.equals(value, ((Field) obj).value);
         }
 
         @Override
-        public String toString() {
-            return "Ast.Field{" +
-                    "name='" + name + '\'' +
-                    ", value=" + value +
-                    '}';
+        public int hashCode() {
+            return hash;
         }
 
     }
@@ -84,12 +153,26 @@ public abstract class Ast {
 
         private final String name;
         private final List<String> parameters;
-        private final List<Stmt> statements;
+        private volatile List<Stmt> statements;
+        private Supplier<List<Stmt>> body;
+        private int hash;
 
         public Method(String name, List<String> parameters, List<Stmt> statements) {
             this.name = name;
-            this.parameters = parameters;
-            this.statements = statements;
+            this.parameters = List.copyOf(parameters);
+            this.statements = List.copyOf(statements);
+        }
+
+        /**
+         * Creates a method whose statements are produced by {@code body} on
+         * the first call to {@link #getStatements()}, as done by the parser's
+         * outline mode. The body is evaluated at most once, even when
+         * accessed from multiple threads, and released afterwards.
+         */
+        public Method(String name, List<String> parameters, Supplier<List<Stmt>> body) {
+            this.name = name;
+            this.parameters = List.copyOf(parameters);
+            this.body = body;
         }
 
         public String getName() {
@@ -101,24 +184,55 @@ public abstract class Ast {
         }
 
         public List<Stmt> getStatements() {
+            List<Stmt> statements = this.statements;
+            if (statements == null) {
+                synchronized (this) {
+                    statements = this.statements;
+                    if (statements == null) {
+                        statements = List.copyOf(body.get());
+                        this.statements = statements;
+                        body = null;
+                    }
+                }
+            }
             return statements;
         }
 
+        /**
+         * Returns {@code true} if the statements are available without
+         * evaluating a deferred body.
+         */
+        public boolean isParsed() {
+            return statements != null;
+        }
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visit(this);
+        }
+
+        @Override
+        public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+            return visitor.visit(this, context);
+        }
+
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Method &&
+            return this == obj || obj instanceof Method &&
+                    hashCode() == ((Method) obj).hashCode() &&
                     name.equals(((Method) obj).name) &&
                     parameters.equals(((Method) obj).parameters) &&
-                    statements.equals(((Method) obj).statements);
+                    getStatements().equals(((Method) obj).getStatements());
         }
 
         @Override
-        public String toString() {
-            return "Ast.Method{" +
-                    "name='" + name + '\'' +
-                    ", parameters=" + parameters +
-                    ", statements=" + statements +
-                    '}';
+        public int hashCode() {
+            int hash = this.hash;
+            if (hash == 0) {
+                hash = Objects.hash("Ast.Method", name, parameters, getStatements());
+                this.hash = hash;
+            }
+            return hash;
         }
 
     }
@@ -128,38 +242,51 @@ public abstract class Ast {
         public static final class Expression extends Stmt {
 
             private final Expr expression;
+            private final int hash;
 
             public Expression(Expr expression) {
                 this.expression = expression;
+                this.hash = Objects.hash("Ast.Stmt.Expression", expression);
             }
 
             public Expr getExpression() {
                 return expression;
             }
 
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Expression &&
+                return this == obj || obj instanceof Expression &&
+                        hash == ((Expression) obj).hash &&
                         expression.equals(((Expression) obj).expression);
             }
 
             @Override
-            public String toString() {
-                return "Ast.Stmt.Expression{" +
-                        "expression=" + expression +
-                        '}';
+            public int hashCode() {
+                return hash;
             }
 
         }
 
         public static final class Declaration extends Stmt {
 
-            private String name;
-            private Optional<Expr> value;
+            private final String name;
+            private final Expr value;
+            private final int hash;
 
             public Declaration(String name, Optional<Expr> value) {
                 this.name = name;
-                this.value = value;
+                this.value = value.orElse(null);
+                this.hash = Objects.hash("Ast.Stmt.Declaration", name, value);
             }
 
             public String getName() {
@@ -167,22 +294,30 @@ public abstract class Ast {
             }
 
             public Optional<Expr> getValue() {
-                return value;
+                return Optional.ofNullable(value);
+            }
+
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
             }
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Declaration &&
+                return this == obj || obj instanceof Declaration &&
+                        hash == ((Declaration) obj).hash &&
                         name.equals(((Declaration) obj).name) &&
-                        value.equals(((Declaration) obj).value);
+                        Objects.equals(value, ((Declaration) obj).value);
             }
 
             @Override
-            public String toString() {
-                return "Ast.Stmt.Declaration{" +
-                        "name='" + name + '\'' +
-                        ", value=" + value +
-                        '}';
+            public int hashCode() {
+                return hash;
             }
 
         }
@@ -191,10 +326,12 @@ public abstract class Ast {
 
             private final Expr receiver;
             private final Expr value;
+            private final int hash;
 
             public Assignment(Expr receiver, Expr value) {
                 this.receiver = receiver;
                 this.value = value;
+                this.hash = Objects.hash("Ast.Stmt.Assignment", receiver, value);
             }
 
             public Expr getReceiver() {
@@ -205,19 +342,27 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Assignment &&
+                return this == obj || obj instanceof Assignment &&
+                        hash == ((Assignment) obj).hash &&
                         receiver.equals(((Assignment) obj).receiver) &&
                         value.equals(((Assignment) obj).value);
             }
 
             @Override
-            public final String toString() {
-                return "Ast.Stmt.Assignment{" +
-                        "receiver=" + receiver +
-                        ", value=" + value +
-                        '}';
+            public int hashCode() {
+                return hash;
             }
 
         }
@@ -227,12 +372,14 @@ public abstract class Ast {
             private final Expr condition;
             private final List<Stmt> thenStatements;
             private final List<Stmt> elseStatements;
+            private final int hash;
 
 
             public If(Expr condition, List<Stmt> thenStatements, List<Stmt> elseStatements) {
                 this.condition = condition;
-                this.thenStatements = thenStatements;
-                this.elseStatements = elseStatements;
+                this.thenStatements = List.copyOf(thenStatements);
+                this.elseStatements = List.copyOf(elseStatements);
+                this.hash = Objects.hash("Ast.Stmt.If", condition, thenStatements, elseStatements);
             }
 
             public Expr getCondition() {
@@ -247,21 +394,28 @@ public abstract class Ast {
                 return elseStatements;
             }
 
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof If &&
+                return this == obj || obj instanceof If &&
+                        hash == ((If) obj).hash &&
                         condition.equals(((If) obj).condition) &&
                         thenStatements.equals(((If) obj).thenStatements) &&
                         elseStatements.equals(((If) obj).elseStatements);
             }
 
             @Override
-            public String toString() {
-                return "Ast.Stmt.If{" +
-                        "condition=" + condition +
-                        ", thenStatements=" + thenStatements +
-                        ", elseStatements=" + elseStatements +
-                        '}';
+            public int hashCode() {
+                return hash;
             }
 
         }
@@ -271,11 +425,13 @@ public abstract class Ast {
             private final String name;
             private final Expr value;
             private final List<Stmt> statements;
+            private final int hash;
 
             public For(String name, Expr value, List<Stmt> statements) {
                 this.name = name;
                 this.value = value;
-                this.statements = statements;
+                this.statements = List.copyOf(statements);
+                this.hash = Objects.hash("Ast.Stmt.For", name, value, statements);
             }
 
             public String getName() {
@@ -290,21 +446,28 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof For &&
+                return this == obj || obj instanceof For &&
+                        hash == ((For) obj).hash &&
                         name.equals(((For) obj).name) &&
                         value.equals(((For) obj).value) &&
                         statements.equals(((For) obj).statements);
             }
 
             @Override
-            public String toString() {
-                return "For{" +
-                        "name='" + name + '\'' +
-                        ", value=" + value +
-                        ", statements=" + statements +
-                        '}';
+            public int hashCode() {
+                return hash;
             }
 
         }
@@ -313,10 +476,12 @@ public abstract class Ast {
 
             private final Expr condition;
             private final List<Stmt> statements;
+            private final int hash;
 
             public While(Expr condition, List<Stmt> statements) {
                 this.condition = condition;
-                this.statements = statements;
+                this.statements = List.copyOf(statements);
+                this.hash = Objects.hash("Ast.Stmt.While", condition, statements);
             }
 
             public Expr getCondition() {
@@ -327,19 +492,27 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof While &&
+                return this == obj || obj instanceof While &&
+                        hash == ((While) obj).hash &&
                         condition.equals(((While) obj).condition) &&
                         statements.equals(((While) obj).statements);
             }
 
             @Override
-            public String toString() {
-                return "Ast.Stmt.While{" +
-                        "condition=" + condition +
-                        ", statements=" + statements +
-                        '}';
+            public int hashCode() {
+                return hash;
             }
 
         }
@@ -347,26 +520,87 @@ public abstract class Ast {
         public static final class Return extends Stmt {
 
             private final Expr value;
+            private final int hash;
 
             public Return(Expr value) {
                 this.value = value;
+                this.hash = Objects.hash("Ast.Stmt.Return", value);
             }
 
             public Expr getValue() {
                 return value;
             }
 
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Return &&
+                return this == obj || obj instanceof Return &&
+                        hash == ((Return) obj).hash &&
                         value.equals(((Return) obj).value);
             }
 
             @Override
-            public String toString() {
-                return "Ast.Stmt.Return{" +
-                        "value=" + value +
-                        '}';
+            public int hashCode() {
+                return hash;
+            }
+
+        }
+
+        /**
+         * Placeholder inserted by the parser's error recovery in place of a
+         * statement that failed to parse. The {@code message} and {@code index}
+         * match the {@link ParseException} recorded for it.
+         */
+        public static final class Error extends Stmt {
+
+            private final String message;
+            private final int index;
+            private final int hash;
+
+            public Error(String message, int index) {
+                this.message = message;
+                this.index = index;
+                this.hash = Objects.hash("Ast.Stmt.Error", message, index);
+            }
+
+            public String getMessage() {
+                return message;
+            }
+
+            public int getIndex() {
+                return index;
+            }
+
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                return this == obj || obj instanceof Error &&
+                        hash == ((Error) obj).hash &&
+                        message.equals(((Error) obj).message) &&
+                        index == ((Error) obj).index;
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
             }
 
         }
@@ -375,29 +609,157 @@ public abstract class Ast {
 
     public static abstract class Expr extends Ast {
 
+        /**
+         * A literal value. Integers which fit in a {@code long}, and decimals
+         * whose unscaled value fits in a {@code long}, are stored unboxed and
+         * only promoted to a {@link BigInteger} or {@link BigDecimal} (a new
+         * one on each call) by {@link #getLiteral()}. Code which evaluates
+         * literals repeatedly can avoid that with {@link #isLong()}, {@link
+         * #getLong()} and {@link #getDouble()}.
+         */
         public static final class Literal extends Expr {
 
+            private static final byte OBJECT = 0;
+            private static final byte LONG = 1;
+            private static final byte DECIMAL = 2;
+
+            /**
+             * Powers of ten which are exactly representable as a double.
+             */
+            private static final double[] POWERS_OF_TEN = {
+                    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+            };
+
+            private final byte kind;
             private final Object literal;
+            private final long bits;
+            private final int scale;
+            private final int hash;
 
             public Literal(Object literal) {
-                this.literal = literal;
+                if (literal instanceof BigInteger && ((BigInteger) literal).bitLength() < 64) {
+                    this.kind = LONG;
+                    this.literal = null;
+                    this.bits = ((BigInteger) literal).longValue();
+                    this.scale = 0;
+                } else if (literal instanceof BigDecimal && ((BigDecimal) literal).unscaledValue().bitLength() < 64) {
+                    this.kind = DECIMAL;
+                    this.literal = null;
+                    this.bits = ((BigDecimal) literal).unscaledValue().longValue();
+                    this.scale = ((BigDecimal) literal).scale();
+                } else {
+                    this.kind = OBJECT;
+                    this.literal = literal;
+                    this.bits = 0;
+                    this.scale = 0;
+                }
+                this.hash = hash(this.kind, this.literal, this.bits, this.scale);
+            }
+
+            private Literal(byte kind, long bits, int scale) {
+                this.kind = kind;
+                this.literal = null;
+                this.bits = bits;
+                this.scale = scale;
+                this.hash = hash(kind, null, bits, scale);
+            }
+
+            /**
+             * Returns an integer literal, equal to {@code new
+             * Literal(BigInteger.valueOf(value))} without allocating it.
+             */
+            public static Literal ofInteger(long value) {
+                return new Literal(LONG, value, 0);
+            }
+
+            /**
+             * Returns a decimal literal, equal to {@code new
+             * Literal(BigDecimal.valueOf(unscaledValue, scale))} without
+             * allocating it.
+             */
+            public static Literal ofDecimal(long unscaledValue, int scale) {
+                return new Literal(DECIMAL, unscaledValue, scale);
             }
 
             public Object getLiteral() {
-                return literal;
+                switch (kind) {
+                    case LONG:
+                        return BigInteger.valueOf(bits);
+                    case DECIMAL:
+                        return BigDecimal.valueOf(bits, scale);
+                    default:
+                        return literal;
+                }
+            }
+
+            /**
+             * Returns {@code true} if this is an integer which fits in a
+             * {@code long}.
+             */
+            public boolean isLong() {
+                return kind == LONG;
+            }
+
+            /**
+             * Returns the value of an integer which fits in a {@code long}.
+             */
+            public long getLong() {
+                if (kind != LONG) {
+                    throw new IllegalStateException("Literal is not a long: " + this);
+                }
+                return bits;
+            }
+
+            /**
+             * Returns {@code true} if this is a decimal.
+             */
+            public boolean isDecimal() {
+                return kind == DECIMAL || literal instanceof BigDecimal;
+            }
+
+            /**
+             * Returns the value of a decimal rounded to the nearest {@code
+             * double}. When the unscaled value and the power of ten are both
+             * exact doubles, a single division (or multiplication) is exactly
+             * rounded and no {@link BigDecimal} is created.
+             */
+            public double getDouble() {
+                if (kind == DECIMAL && Math.abs(bits) <= 1L << 53 && Math.abs(scale) < POWERS_OF_TEN.length) {
+                    return scale >= 0 ? bits / POWERS_OF_TEN[scale] : bits * POWERS_OF_TEN[-scale];
+                } else if (kind == DECIMAL || literal instanceof BigDecimal) {
+                    return ((BigDecimal) getLiteral()).doubleValue();
+                }
+                throw new IllegalStateException("Literal is not a decimal: " + this);
+            }
+
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
             }
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Literal &&
+                return this == obj || obj instanceof Literal &&
+                        hash == ((Literal) obj).hash &&
+                        kind == ((Literal) obj).kind &&
+                        bits == ((Literal) obj).bits &&
+                        scale == ((Literal) obj).scale &&
                         Objects.equals(literal, ((Literal) obj).literal);
             }
 
             @Override
-            public String toString() {
-                return "Ast.Expr.Literal{" +
-                        "literal=" + literal +
-                        '}';
+            public int hashCode() {
+                return hash;
+            }
+
+            private static int hash(byte kind, Object literal, long bits, int scale) {
+                return 31 * (31 * (31 * kind + Long.hashCode(bits)) + scale) + Objects.hashCode(literal);
             }
 
         }
@@ -405,26 +767,37 @@ public abstract class Ast {
         public static final class Group extends Expr {
 
             private final Expr expression;
+            private final int hash;
 
             public Group(Expr expression) {
                 this.expression = expression;
+                this.hash = Objects.hash("Ast.Expr.Group", expression);
             }
 
             public Expr getExpression() {
                 return expression;
             }
 
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Group &&
+                return this == obj || obj instanceof Group &&
+                        hash == ((Group) obj).hash &&
                         expression.equals(((Group) obj).expression);
             }
 
             @Override
-            public String toString() {
-                return "Ast.Expr.Group{" +
-                        "expression=" + expression +
-                        '}';
+            public int hashCode() {
+                return hash;
             }
 
         }
@@ -434,11 +807,13 @@ public abstract class Ast {
             private final String operator;
             private final Expr left;
             private final Expr right;
+            private final int hash;
 
             public Binary(String operator, Expr left, Expr right) {
                 this.operator = operator;
                 this.left = left;
                 this.right = right;
+                this.hash = Objects.hash("Ast.Expr.Binary", operator, left, right);
             }
 
             public String getOperator() {
@@ -453,74 +828,93 @@ public abstract class Ast {
                 return right;
             }
 
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Binary &&
+                return this == obj || obj instanceof Binary &&
+                        hash == ((Binary) obj).hash &&
                         operator.equals(((Binary) obj).operator) &&
                         left.equals(((Binary) obj).left) &&
                         right.equals(((Binary) obj).right);
             }
 
             @Override
-            public String toString() {
-                return "Ast.Expr.Binary{" +
-                        "operator='" + operator + '\'' +
-                        ", left=" + left +
-                        ", right=" + right +
-                        '}';
+            public int hashCode() {
+                return hash;
             }
 
         }
 
         public static final class Access extends Expr {
 
-            private final Optional<Expr> receiver;
+            private final Expr receiver;
             private final String name;
+            private final int hash;
 
             public Access(Optional<Expr> receiver, String name) {
-                this.receiver = receiver;
+                this.receiver = receiver.orElse(null);
                 this.name = name;
+                this.hash = Objects.hash("Ast.Expr.Access", receiver, name);
             }
 
             public Optional<Expr> getReceiver() {
-                return receiver;
+                return Optional.ofNullable(receiver);
             }
 
             public String getName() {
                 return name;
             }
 
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Access &&
-                        receiver.equals(((Access) obj).receiver) &&
+                return this == obj || obj instanceof Access &&
+                        hash == ((Access) obj).hash &&
+                        Objects.equals(receiver, ((Access) obj).receiver) &&
                         name.equals(((Access) obj).name);
             }
 
             @Override
-            public String toString() {
-                return "Ast.Expr.Access{" +
-                        "receiver=" + receiver +
-                        ", name='" + name + '\'' +
-                        '}';
+            public int hashCode() {
+                return hash;
             }
 
         }
 
         public static final class Function extends Expr {
 
-            private final Optional<Expr> receiver;
+            private final Expr receiver;
             private final String name;
             private final List<Expr> arguments;
+            private final int hash;
 
             public Function(Optional<Expr> receiver, String name, List<Expr> arguments) {
-                this.receiver = receiver;
+                this.receiver = receiver.orElse(null);
                 this.name = name;
-                this.arguments = arguments;
+                this.arguments = List.copyOf(arguments);
+                this.hash = Objects.hash("Ast.Expr.Function", receiver, name, arguments);
             }
 
             public Optional<Expr> getReceiver() {
-                return receiver;
+                return Optional.ofNullable(receiver);
             }
 
             public String getName() {
@@ -531,25 +925,241 @@ public abstract class Ast {
                 return arguments;
             }
 
+            @Override
+            public <R> R accept(Visitor<R> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            public <C, R> R accept(ContextVisitor<C, R> visitor, C context) {
+                return visitor.visit(this, context);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Function &&
-                        receiver.equals(((Function) obj).receiver) &&
+                return this == obj || obj instanceof Function &&
+                        hash == ((Function) obj).hash &&
+                        Objects.equals(receiver, ((Function) obj).receiver) &&
                         name.equals(((Function) obj).name) &&
                         arguments.equals(((Function) obj).arguments);
             }
 
             @Override
-            public String toString() {
-                return "Ast.Expr.Function{" +
-                        "receiver=" + receiver +
-                        ", name='" + name + '\'' +
-                        ", arguments=" + arguments +
-                        '}';
+            public int hashCode() {
+                return hash;
             }
 
         }
 
     }
 
+    /**
+     * A pass over the AST with one method per node type, dispatched through
+     * {@link Ast#accept(Visitor)} in a single virtual call rather than by
+     * testing each type in turn.
+     */
+    public interface Visitor<R> {
+
+        default R visit(Ast ast) {
+            return ast.accept(this);
+        }
+
+        R visit(Ast.Source ast);
+
+        R visit(Ast.Field ast);
+
+        R visit(Ast.Method ast);
+
+        R visit(Ast.Stmt.Expression ast);
+
+        R visit(Ast.Stmt.Declaration ast);
+
+        R visit(Ast.Stmt.Assignment ast);
+
+        R visit(Ast.Stmt.If ast);
+
+        R visit(Ast.Stmt.For ast);
+
+        R visit(Ast.Stmt.While ast);
+
+        R visit(Ast.Stmt.Return ast);
+
+        R visit(Ast.Stmt.Error ast);
+
+        R visit(Ast.Expr.Literal ast);
+
+        R visit(Ast.Expr.Group ast);
+
+        R visit(Ast.Expr.Binary ast);
+
+        R visit(Ast.Expr.Access ast);
+
+        R visit(Ast.Expr.Function ast);
+
+    }
+
+    /**
+     * A {@link Visitor} which is passed a context value, such as an
+     * environment or output, along with each node.
+     */
+    public interface ContextVisitor<C, R> {
+
+        default R visit(Ast ast, C context) {
+            return ast.accept(this, context);
+        }
+
+        R visit(Ast.Source ast, C context);
+
+        R visit(Ast.Field ast, C context);
+
+        R visit(Ast.Method ast, C context);
+
+        R visit(Ast.Stmt.Expression ast, C context);
+
+        R visit(Ast.Stmt.Declaration ast, C context);
+
+        R visit(Ast.Stmt.Assignment ast, C context);
+
+        R visit(Ast.Stmt.If ast, C context);
+
+        R visit(Ast.Stmt.For ast, C context);
+
+        R visit(Ast.Stmt.While ast, C context);
+
+        R visit(Ast.Stmt.Return ast, C context);
+
+        R visit(Ast.Stmt.Error ast, C context);
+
+        R visit(Ast.Expr.Literal ast, C context);
+
+        R visit(Ast.Expr.Group ast, C context);
+
+        R visit(Ast.Expr.Binary ast, C context);
+
+        R visit(Ast.Expr.Access ast, C context);
+
+        R visit(Ast.Expr.Function ast, C context);
+
+    }
+
+    /**
+     * A {@link Visitor} which visits every node of the tree, parents before
+     * their children and in source order. Subclasses override the
+     * methods for the nodes they are interested in, calling the superclass
+     * method to continue into that node's children.
+     *
+     * Visiting a method created in outline mode parses its body.
+     */
+    public static abstract class Walker implements Visitor<Void> {
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            visitAll(ast.getFields());
+            visitAll(ast.getMethods());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            visitAll(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            visit(ast.getReceiver());
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            visit(ast.getCondition());
+            visitAll(ast.getThenStatements());
+            visitAll(ast.getElseStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            visit(ast.getValue());
+            visitAll(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            visit(ast.getCondition());
+            visitAll(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Error ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            ast.getReceiver().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            ast.getReceiver().ifPresent(this::visit);
+            visitAll(ast.getArguments());
+            return null;
+        }
+
+        protected void visitAll(List<? extends Ast> asts) {
+            for (Ast ast : asts) {
+                visit(ast);
+            }
+        }
+
+    }
+
 }
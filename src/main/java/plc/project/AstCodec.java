@@ -0,0 +1,676 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads and writes {@link Ast.Source} trees in a compact, versioned binary
+ * format, so a parsed program can be stored and later reloaded much faster
+ * than lexing and parsing it again.
+ *
+ * The format is the magic bytes {@code PLCA} and a version, followed by a
+ * string table and the tree. All integers are unsigned LEB128 varints (signed
+ * values are zigzag encoded first). The string table is a count followed by
+ * each distinct name, operator, string literal and error message as a length
+ * and UTF-8 bytes; the tree then refers to strings by their index. The tree
+ * is the fields and then the methods, each prefixed by a count, with every
+ * node written as a one byte tag followed by its children in the order of
+ * their getters. Absent optional expressions are written as {@link #NONE},
+ * and literals have their own tags so the common values need no payload.
+ *
+ * The tree is followed by the spans of its {@link SpanTable}: a count, which
+ * is either zero for a tree without spans or the number of nodes, and then
+ * for each node in post-order (children before their parents, as recorded by
+ * the parser) its length plus one, or zero if it has no span, followed by
+ * its start relative to the previous start if it has one. Only the spans of
+ * the nodes in the tree are kept, and a node shared by an interning {@link
+ * AstFactory} is decoded as a separate node for each occurrence.
+ */
+public final class AstCodec {
+
+    private static final byte[] MAGIC = {'P', 'L', 'C', 'A'};
+    private static final int VERSION = 2;
+
+    private static final int NONE = 0;
+    private static final int EXPRESSION = 1, DECLARATION = 2, ASSIGNMENT = 3, IF = 4,
+            FOR = 5, WHILE = 6, RETURN = 7, ERROR = 8;
+    private static final int GROUP = 16, BINARY = 17, ACCESS = 18, FUNCTION = 19;
+    private static final int NIL = 32, TRUE = 33, FALSE = 34, INTEGER = 35, BIG_INTEGER = 36,
+            DECIMAL = 37, CHARACTER = 38, STRING = 39;
+
+    private AstCodec() {}
+
+    /**
+     * Returns the encoding of {@code source}.
+     */
+    public static byte[] encode(Ast.Source source) {
+        return new Writer().encode(source);
+    }
+
+    /**
+     * Decodes a {@link Ast.Source} from bytes produced by {@link #encode}.
+     */
+    public static Ast.Source decode(byte[] bytes) throws IOException {
+        try {
+            return new Reader(bytes).readSource();
+        } catch (RuntimeException | StackOverflowError e) {
+            // Such as reading past the end, a zero length integer, or nesting
+            // deeper than the stack allows.
+            throw new IOException("Truncated or corrupt AST data", e);
+        }
+    }
+
+    /**
+     * Writes {@code source} to {@code output}. The stream is not closed.
+     */
+    public static void write(Ast.Source source, OutputStream output) throws IOException {
+        output.write(encode(source));
+        output.flush();
+    }
+
+    /**
+     * Reads a {@link Ast.Source} previously written by {@link #write}, reading
+     * the stream to its end. The stream is not closed.
+     */
+    public static Ast.Source read(InputStream input) throws IOException {
+        return decode(input.readAllBytes());
+    }
+
+    /**
+     * Encodes the tree into a body buffer while building the string table,
+     * then emits the header, table and body.
+     */
+    private static final class Writer implements Ast.Visitor<Void> {
+
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> table = new ArrayList<>();
+        private byte[] buffer = new byte[256];
+        private int size = 0;
+        private SpanTable.Occurrences occurrences;
+        private boolean spanned;
+        private long[] spans = new long[64];
+        private int spanCount = 0;
+
+        private byte[] encode(Ast.Source ast) {
+            // Parses any lazy method bodies first, so their spans are recorded.
+            ast.getMethods().forEach(Ast.Method::getStatements);
+            occurrences = ast.getSpans().occurrences();
+            spanned = ast.getSpans().size() > 0;
+            visit(ast);
+            byte[] body = Arrays.copyOf(buffer, size);
+
+            size = 0;
+            write(MAGIC, MAGIC.length);
+            writeVarint(VERSION);
+            writeVarint(table.size());
+            for (String string : table) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writeVarint(bytes.length);
+                write(bytes, bytes.length);
+            }
+            write(body, body.length);
+            writeSpans();
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void writeSpans() {
+            writeVarint(spanCount);
+            int previous = 0;
+            for (int i = 0; i < spanCount; i++) {
+                if (spans[i] == -1) {
+                    writeVarint(0);
+                } else {
+                    int start = SpanTable.Occurrences.start(spans[i]);
+                    writeVarint(SpanTable.Occurrences.end(spans[i]) - start + 1L);
+                    writeVarint(zigzag(start - previous));
+                    previous = start;
+                }
+            }
+        }
+
+        /**
+         * Adds the span of {@code ast}, after those of its children.
+         */
+        private void span(Ast ast) {
+            span(occurrences.next(ast));
+        }
+
+        private void span(long span) {
+            if (!spanned) {
+                return;
+            }
+            if (spanCount == spans.length) {
+                spans = Arrays.copyOf(spans, 2 * spanCount);
+            }
+            spans[spanCount++] = span;
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            writeVarint(ast.getFields().size());
+            for (Ast.Field field : ast.getFields()) {
+                visit(field);
+            }
+            writeVarint(ast.getMethods().size());
+            for (Ast.Method method : ast.getMethods()) {
+                visit(method);
+            }
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            long span = occurrences.next(ast);
+            occurrences.enter(span);
+            writeString(ast.getName());
+            writeOptional(ast.getValue());
+            occurrences.exit();
+            span(span);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            long span = occurrences.next(ast);
+            occurrences.enter(span);
+            writeString(ast.getName());
+            writeVarint(ast.getParameters().size());
+            for (String parameter : ast.getParameters()) {
+                writeString(parameter);
+            }
+            writeStatements(ast.getStatements());
+            occurrences.exit();
+            span(span);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            writeByte(EXPRESSION);
+            visit(ast.getExpression());
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            writeByte(DECLARATION);
+            writeString(ast.getName());
+            writeOptional(ast.getValue());
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            writeByte(ASSIGNMENT);
+            visit(ast.getReceiver());
+            visit(ast.getValue());
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            writeByte(IF);
+            visit(ast.getCondition());
+            writeStatements(ast.getThenStatements());
+            writeStatements(ast.getElseStatements());
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            writeByte(FOR);
+            writeString(ast.getName());
+            visit(ast.getValue());
+            writeStatements(ast.getStatements());
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            writeByte(WHILE);
+            visit(ast.getCondition());
+            writeStatements(ast.getStatements());
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            writeByte(RETURN);
+            visit(ast.getValue());
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Error ast) {
+            writeByte(ERROR);
+            writeString(ast.getMessage());
+            writeVarint(zigzag(ast.getIndex()));
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            if (ast.isLong()) {
+                writeByte(INTEGER);
+                writeVarint(zigzag(ast.getLong()));
+            } else {
+                writeLiteral(ast.getLiteral());
+            }
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            writeByte(GROUP);
+            visit(ast.getExpression());
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            writeByte(BINARY);
+            writeString(ast.getOperator());
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            writeByte(ACCESS);
+            writeOptional(ast.getReceiver());
+            writeString(ast.getName());
+            span(ast);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            writeByte(FUNCTION);
+            writeOptional(ast.getReceiver());
+            writeString(ast.getName());
+            writeVarint(ast.getArguments().size());
+            for (Ast.Expr argument : ast.getArguments()) {
+                visit(argument);
+            }
+            span(ast);
+            return null;
+        }
+
+        private void writeStatements(List<Ast.Stmt> statements) {
+            writeVarint(statements.size());
+            for (Ast.Stmt statement : statements) {
+                visit(statement);
+            }
+        }
+
+        private void writeLiteral(Object literal) {
+            if (literal == null) {
+                writeByte(NIL);
+            } else if (literal instanceof Boolean) {
+                writeByte((Boolean) literal ? TRUE : FALSE);
+            } else if (literal instanceof BigInteger) {
+                writeInteger((BigInteger) literal);
+            } else if (literal instanceof BigDecimal) {
+                writeByte(DECIMAL);
+                writeVarint(zigzag(((BigDecimal) literal).scale()));
+                writeInteger(((BigDecimal) literal).unscaledValue());
+            } else if (literal instanceof Character) {
+                writeByte(CHARACTER);
+                writeVarint((Character) literal);
+            } else if (literal instanceof String) {
+                writeByte(STRING);
+                writeString((String) literal);
+            } else {
+                throw new AssertionError("Unknown literal: " + literal.getClass());
+            }
+        }
+
+        /**
+         * Writes an integer as {@link #INTEGER} with a zigzag varint when it
+         * fits in a {@code long}, or otherwise as {@link #BIG_INTEGER} with
+         * its two's complement bytes.
+         */
+        private void writeInteger(BigInteger integer) {
+            if (integer.bitLength() < 64) {
+                writeByte(INTEGER);
+                writeVarint(zigzag(integer.longValue()));
+            } else {
+                writeByte(BIG_INTEGER);
+                byte[] bytes = integer.toByteArray();
+                writeVarint(bytes.length);
+                write(bytes, bytes.length);
+            }
+        }
+
+        private void writeOptional(Optional<Ast.Expr> value) {
+            if (value.isPresent()) {
+                visit(value.get());
+            } else {
+                writeByte(NONE);
+            }
+        }
+
+        private void writeString(String string) {
+            Integer index = strings.get(string);
+            if (index == null) {
+                index = table.size();
+                strings.put(string, index);
+                table.add(string);
+            }
+            writeVarint(index);
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        private void writeByte(int value) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void write(byte[] bytes, int length) {
+            if (size + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+            }
+            System.arraycopy(bytes, 0, buffer, size, length);
+            size += length;
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+    }
+
+    /**
+     * Decodes directly from a byte array. Every string in the table is decoded
+     * once and then shared by all the nodes referring to it.
+     */
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position = 0;
+        private String[] strings;
+        private final List<Ast> nodes = new ArrayList<>();
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private Ast.Source readSource() throws IOException {
+            for (byte magic : MAGIC) {
+                if (bytes.length <= position || bytes[position++] != magic) {
+                    throw new IOException("Not an AST file");
+                }
+            }
+            int version = readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported AST format version " + version);
+            }
+            strings = new String[readCount()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readCount();
+                strings[i] = new String(bytes, position, length, StandardCharsets.UTF_8);
+                position += length;
+            }
+
+            int fieldCount = readCount();
+            List<Ast.Field> fields = new ArrayList<>(fieldCount);
+            for (int i = 0; i < fieldCount; i++) {
+                String name = readString();
+                fields.add(node(new Ast.Field(name, readOptional())));
+            }
+            int methodCount = readCount();
+            List<Ast.Method> methods = new ArrayList<>(methodCount);
+            for (int i = 0; i < methodCount; i++) {
+                String name = readString();
+                int parameterCount = readCount();
+                List<String> parameters = new ArrayList<>(parameterCount);
+                for (int j = 0; j < parameterCount; j++) {
+                    parameters.add(readString());
+                }
+                methods.add(node(new Ast.Method(name, parameters, readStatements())));
+            }
+            SpanTable spans = new SpanTable();
+            Ast.Source source = node(new Ast.Source(fields, methods, spans));
+            readSpans(spans);
+            if (position != bytes.length) {
+                throw new IOException("Trailing data after AST");
+            }
+            return source;
+        }
+
+        /**
+         * Records the spans of the nodes, which were read in the same order
+         * as they are written.
+         */
+        private void readSpans(SpanTable spans) throws IOException {
+            int count = readCount();
+            if (count != 0 && count != nodes.size()) {
+                throw new IOException("Span count " + count + " does not match " + nodes.size() + " nodes");
+            }
+            long start = 0;
+            for (int i = 0; i < count; i++) {
+                long length = readLong() - 1;
+                if (length >= 0) {
+                    start += unzigzag(readLong());
+                    if (start < 0 || start + length > Integer.MAX_VALUE) {
+                        throw new IOException("Span out of range " + start);
+                    }
+                    spans.record(nodes.get(i), (int) start, (int) (start + length));
+                }
+            }
+        }
+
+        private <T extends Ast> T node(T node) {
+            nodes.add(node);
+            return node;
+        }
+
+        private List<Ast.Stmt> readStatements() throws IOException {
+            int count = readCount();
+            List<Ast.Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(readStatement());
+            }
+            return statements;
+        }
+
+        private Ast.Stmt readStatement() throws IOException {
+            int tag = bytes[position++];
+            switch (tag) {
+                case EXPRESSION:
+                    return node(new Ast.Stmt.Expression(readExpression()));
+                case DECLARATION: {
+                    String name = readString();
+                    return node(new Ast.Stmt.Declaration(name, readOptional()));
+                }
+                case ASSIGNMENT: {
+                    Ast.Expr receiver = readExpression();
+                    return node(new Ast.Stmt.Assignment(receiver, readExpression()));
+                }
+                case IF: {
+                    Ast.Expr condition = readExpression();
+                    List<Ast.Stmt> thenStatements = readStatements();
+                    return node(new Ast.Stmt.If(condition, thenStatements, readStatements()));
+                }
+                case FOR: {
+                    String name = readString();
+                    Ast.Expr value = readExpression();
+                    return node(new Ast.Stmt.For(name, value, readStatements()));
+                }
+                case WHILE: {
+                    Ast.Expr condition = readExpression();
+                    return node(new Ast.Stmt.While(condition, readStatements()));
+                }
+                case RETURN:
+                    return node(new Ast.Stmt.Return(readExpression()));
+                case ERROR: {
+                    String message = readString();
+                    return node(new Ast.Stmt.Error(message, (int) unzigzag(readLong())));
+                }
+                default:
+                    throw new IOException("Invalid statement tag " + tag);
+            }
+        }
+
+        private Ast.Expr readExpression() throws IOException {
+            Ast.Expr expression = readOptionalExpression();
+            if (expression == null) {
+                throw new IOException("Missing expression at " + (position - 1));
+            }
+            return expression;
+        }
+
+        private Optional<Ast.Expr> readOptional() throws IOException {
+            return Optional.ofNullable(readOptionalExpression());
+        }
+
+        /**
+         * Reads an expression, returning {@code null} for {@link #NONE}.
+         */
+        private Ast.Expr readOptionalExpression() throws IOException {
+            int tag = bytes[position++];
+            switch (tag) {
+                case NONE:
+                    return null;
+                case GROUP:
+                    return node(new Ast.Expr.Group(readExpression()));
+                case BINARY: {
+                    String operator = readString();
+                    Ast.Expr left = readExpression();
+                    return node(new Ast.Expr.Binary(operator, left, readExpression()));
+                }
+                case ACCESS: {
+                    Optional<Ast.Expr> receiver = readOptional();
+                    return node(new Ast.Expr.Access(receiver, readString()));
+                }
+                case FUNCTION: {
+                    Optional<Ast.Expr> receiver = readOptional();
+                    String name = readString();
+                    int count = readCount();
+                    List<Ast.Expr> arguments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        arguments.add(readExpression());
+                    }
+                    return node(new Ast.Expr.Function(receiver, name, arguments));
+                }
+                case NIL:
+                    return node(new Ast.Expr.Literal(null));
+                case TRUE:
+                    return node(new Ast.Expr.Literal(true));
+                case FALSE:
+                    return node(new Ast.Expr.Literal(false));
+                case INTEGER:
+                    return node(Ast.Expr.Literal.ofInteger(unzigzag(readLong())));
+                case BIG_INTEGER:
+                    position--;
+                    return node(new Ast.Expr.Literal(readInteger()));
+                case DECIMAL: {
+                    int scale = (int) unzigzag(readLong());
+                    if (position < bytes.length && bytes[position] == INTEGER) {
+                        position++;
+                        return node(Ast.Expr.Literal.ofDecimal(unzigzag(readLong()), scale));
+                    }
+                    return node(new Ast.Expr.Literal(new BigDecimal(readInteger(), scale)));
+                }
+                case CHARACTER:
+                    return node(new Ast.Expr.Literal((char) readInt()));
+                case STRING:
+                    return node(new Ast.Expr.Literal(readString()));
+                default:
+                    throw new IOException("Invalid expression tag " + tag);
+            }
+        }
+
+        private BigInteger readInteger() throws IOException {
+            int tag = bytes[position++];
+            if (tag == INTEGER) {
+                return BigInteger.valueOf(unzigzag(readLong()));
+            } else if (tag == BIG_INTEGER) {
+                int length = readCount();
+                BigInteger integer = new BigInteger(bytes, position, length);
+                position += length;
+                return integer;
+            }
+            throw new IOException("Invalid integer tag " + tag);
+        }
+
+        private String readString() throws IOException {
+            int index = readInt();
+            if (index >= strings.length) {
+                throw new IOException("Invalid string index " + index);
+            }
+            return strings[index];
+        }
+
+        /**
+         * Reads the number of elements or bytes which follow, each taking at
+         * least one byte, so a count larger than the remaining input is
+         * rejected before anything is allocated for it.
+         */
+        private int readCount() throws IOException {
+            int count = readInt();
+            if (count > bytes.length - position) {
+                throw new IOException("Count out of range " + count);
+            }
+            return count;
+        }
+
+        private int readInt() throws IOException {
+            long value = readLong();
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Length out of range " + value);
+            }
+            return (int) value;
+        }
+
+        private long readLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+    }
+
+}
@@ -0,0 +1,301 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Computes an edit script between two versions of a program, listing the
+ * fields, methods and statements which were added, removed or changed.
+ *
+ * Fields are matched by name and methods by name and number of parameters,
+ * regardless of their order. A matched field is changed if its value
+ * differs, and a matched method is changed as a whole if its parameter names
+ * differ; otherwise its body is diffed as a sequence of statements. Bodies
+ * are aligned on a longest common subsequence, which gives the fewest
+ * additions and removals, and a removal and addition between the same
+ * aligned statements are reported together as a change. A changed {@code IF},
+ * {@code FOR} or {@code WHILE} whose condition (or variable and value) is
+ * unchanged is diffed recursively instead.
+ *
+ * Subtrees are compared by their cached hash codes first, so differing
+ * subtrees are detected in constant time, and trees sharing instances (such
+ * as those from an interning {@link AstFactory}) compare identical subtrees
+ * in constant time too.
+ *
+ * Each edit has a path naming what changed: {@code x} for a field, {@code
+ * f/2} for a method, {@code f/2[3]} for a statement (indexed in the new body,
+ * or the old body for a removal), and {@code f/2[3].then[0]}, {@code .else}
+ * or {@code .body} for a nested statement.
+ */
+public final class AstDiff {
+
+    /**
+     * Statement lists whose differing middles would need a larger table than
+     * this are not aligned, and are reported as changed position by position.
+     */
+    private static final long MAX_TABLE = 1 << 22;
+
+    public enum Kind {
+        ADDED,
+        REMOVED,
+        CHANGED
+    }
+
+    public static final class Edit {
+
+        private final Kind kind;
+        private final String path;
+        private final Ast before;
+        private final Ast after;
+
+        public Edit(Kind kind, String path, Ast before, Ast after) {
+            this.kind = kind;
+            this.path = path;
+            this.before = before;
+            this.after = after;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the old node, which is {@code null} for an addition.
+         */
+        public Ast getBefore() {
+            return before;
+        }
+
+        /**
+         * Returns the new node, which is {@code null} for a removal.
+         */
+        public Ast getAfter() {
+            return after;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Edit &&
+                    kind == ((Edit) obj).kind &&
+                    path.equals(((Edit) obj).path) &&
+                    Objects.equals(before, ((Edit) obj).before) &&
+                    Objects.equals(after, ((Edit) obj).after);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, path, before, after);
+        }
+
+        @Override
+        public String toString() {
+            return "Edit{" +
+                    "kind=" + kind +
+                    ", path='" + path + '\'' +
+                    ", before=" + before +
+                    ", after=" + after +
+                    '}';
+        }
+
+    }
+
+    private final List<Edit> edits = new ArrayList<>();
+
+    private AstDiff() {}
+
+    /**
+     * Returns the edits which turn {@code before} into {@code after}, which
+     * is empty if the trees are equal.
+     */
+    public static List<Edit> diff(Ast.Source before, Ast.Source after) {
+        AstDiff diff = new AstDiff();
+        diff.diffFields(before.getFields(), after.getFields());
+        diff.diffMethods(before.getMethods(), after.getMethods());
+        return diff.edits;
+    }
+
+    private void diffFields(List<Ast.Field> before, List<Ast.Field> after) {
+        List<String> beforeKeys = new ArrayList<>();
+        List<String> afterKeys = new ArrayList<>();
+        before.forEach(field -> beforeKeys.add(field.getName()));
+        after.forEach(field -> afterKeys.add(field.getName()));
+        int[] matches = match(beforeKeys, afterKeys);
+        boolean[] matched = new boolean[after.size()];
+        for (int i = 0; i < before.size(); i++) {
+            if (matches[i] < 0) {
+                edits.add(new Edit(Kind.REMOVED, beforeKeys.get(i), before.get(i), null));
+            } else {
+                matched[matches[i]] = true;
+                if (!same(before.get(i), after.get(matches[i]))) {
+                    edits.add(new Edit(Kind.CHANGED, beforeKeys.get(i), before.get(i), after.get(matches[i])));
+                }
+            }
+        }
+        for (int j = 0; j < after.size(); j++) {
+            if (!matched[j]) {
+                edits.add(new Edit(Kind.ADDED, afterKeys.get(j), null, after.get(j)));
+            }
+        }
+    }
+
+    private void diffMethods(List<Ast.Method> before, List<Ast.Method> after) {
+        List<String> beforeKeys = new ArrayList<>();
+        List<String> afterKeys = new ArrayList<>();
+        before.forEach(method -> beforeKeys.add(method.getName() + "/" + method.getParameters().size()));
+        after.forEach(method -> afterKeys.add(method.getName() + "/" + method.getParameters().size()));
+        int[] matches = match(beforeKeys, afterKeys);
+        boolean[] matched = new boolean[after.size()];
+        for (int i = 0; i < before.size(); i++) {
+            String path = beforeKeys.get(i);
+            if (matches[i] < 0) {
+                edits.add(new Edit(Kind.REMOVED, path, before.get(i), null));
+                continue;
+            }
+            Ast.Method old = before.get(i);
+            Ast.Method current = after.get(matches[i]);
+            matched[matches[i]] = true;
+            if (same(old, current)) {
+                continue;
+            } else if (!old.getParameters().equals(current.getParameters())) {
+                edits.add(new Edit(Kind.CHANGED, path, old, current));
+            } else {
+                diffStatements(path, old.getStatements(), current.getStatements());
+            }
+        }
+        for (int j = 0; j < after.size(); j++) {
+            if (!matched[j]) {
+                edits.add(new Edit(Kind.ADDED, afterKeys.get(j), null, after.get(j)));
+            }
+        }
+    }
+
+    /**
+     * Returns, for each key in {@code before}, the index of the same key in
+     * {@code after} or {@code -1}. Repeated keys are matched in order.
+     */
+    private static int[] match(List<String> before, List<String> after) {
+        Map<String, ArrayDeque<Integer>> indices = new HashMap<>();
+        for (int j = 0; j < after.size(); j++) {
+            indices.computeIfAbsent(after.get(j), key -> new ArrayDeque<>()).add(j);
+        }
+        int[] matches = new int[before.size()];
+        for (int i = 0; i < before.size(); i++) {
+            ArrayDeque<Integer> candidates = indices.get(before.get(i));
+            matches[i] = candidates == null || candidates.isEmpty() ? -1 : candidates.poll();
+        }
+        return matches;
+    }
+
+    private void diffStatements(String path, List<Ast.Stmt> before, List<Ast.Stmt> after) {
+        int prefix = 0;
+        while (prefix < before.size() && prefix < after.size() && same(before.get(prefix), after.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < before.size() - prefix && suffix < after.size() - prefix
+                && same(before.get(before.size() - 1 - suffix), after.get(after.size() - 1 - suffix))) {
+            suffix++;
+        }
+        int n = before.size() - prefix - suffix;
+        int m = after.size() - prefix - suffix;
+        if (n == 0 && m == 0) {
+            return;
+        } else if ((long) (n + 1) * (m + 1) > MAX_TABLE) {
+            report(path, before, after, prefix, prefix + n, prefix, prefix + m);
+            return;
+        }
+
+        // lengths[i][j] is the length of the longest common subsequence of
+        // the middles of before from i and after from j.
+        int[] hashes = new int[m];
+        for (int j = 0; j < m; j++) {
+            hashes[j] = after.get(prefix + j).hashCode();
+        }
+        int[][] lengths = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            Ast.Stmt statement = before.get(prefix + i);
+            int hash = statement.hashCode();
+            for (int j = m - 1; j >= 0; j--) {
+                if (hash == hashes[j] && statement.equals(after.get(prefix + j))) {
+                    lengths[i][j] = lengths[i + 1][j + 1] + 1;
+                } else {
+                    lengths[i][j] = Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+                }
+            }
+        }
+
+        int i = 0;
+        int j = 0;
+        int unmatchedBefore = 0;
+        int unmatchedAfter = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && hashes[j] == before.get(prefix + i).hashCode()
+                    && lengths[i][j] == lengths[i + 1][j + 1] + 1
+                    && before.get(prefix + i).equals(after.get(prefix + j))) {
+                report(path, before, after, prefix + unmatchedBefore, prefix + i, prefix + unmatchedAfter, prefix + j);
+                i++;
+                j++;
+                unmatchedBefore = i;
+                unmatchedAfter = j;
+            } else if (j < m && (i == n || lengths[i][j + 1] >= lengths[i + 1][j])) {
+                j++;
+            } else {
+                i++;
+            }
+        }
+        report(path, before, after, prefix + unmatchedBefore, prefix + n, prefix + unmatchedAfter, prefix + m);
+    }
+
+    /**
+     * Reports the statements from {@code beforeStart} to {@code beforeEnd}
+     * as replaced by those from {@code afterStart} to {@code afterEnd},
+     * pairing them up as changes where possible.
+     */
+    private void report(String path, List<Ast.Stmt> before, List<Ast.Stmt> after,
+                        int beforeStart, int beforeEnd, int afterStart, int afterEnd) {
+        int pairs = Math.min(beforeEnd - beforeStart, afterEnd - afterStart);
+        for (int k = 0; k < pairs; k++) {
+            changed(path + "[" + (afterStart + k) + "]", before.get(beforeStart + k), after.get(afterStart + k));
+        }
+        for (int i = beforeStart + pairs; i < beforeEnd; i++) {
+            edits.add(new Edit(Kind.REMOVED, path + "[" + i + "]", before.get(i), null));
+        }
+        for (int j = afterStart + pairs; j < afterEnd; j++) {
+            edits.add(new Edit(Kind.ADDED, path + "[" + j + "]", null, after.get(j)));
+        }
+    }
+
+    private void changed(String path, Ast.Stmt before, Ast.Stmt after) {
+        if (before instanceof Ast.Stmt.If && after instanceof Ast.Stmt.If
+                && same(((Ast.Stmt.If) before).getCondition(), ((Ast.Stmt.If) after).getCondition())) {
+            diffStatements(path + ".then", ((Ast.Stmt.If) before).getThenStatements(), ((Ast.Stmt.If) after).getThenStatements());
+            diffStatements(path + ".else", ((Ast.Stmt.If) before).getElseStatements(), ((Ast.Stmt.If) after).getElseStatements());
+        } else if (before instanceof Ast.Stmt.For && after instanceof Ast.Stmt.For
+                && ((Ast.Stmt.For) before).getName().equals(((Ast.Stmt.For) after).getName())
+                && same(((Ast.Stmt.For) before).getValue(), ((Ast.Stmt.For) after).getValue())) {
+            diffStatements(path + ".body", ((Ast.Stmt.For) before).getStatements(), ((Ast.Stmt.For) after).getStatements());
+        } else if (before instanceof Ast.Stmt.While && after instanceof Ast.Stmt.While
+                && same(((Ast.Stmt.While) before).getCondition(), ((Ast.Stmt.While) after).getCondition())) {
+            diffStatements(path + ".body", ((Ast.Stmt.While) before).getStatements(), ((Ast.Stmt.While) after).getStatements());
+        } else {
+            edits.add(new Edit(Kind.CHANGED, path, before, after));
+        }
+    }
+
+    /**
+     * Returns whether two subtrees are equal, which is immediate if they are
+     * the same instance or have different hash codes.
+     */
+    private static boolean same(Ast before, Ast after) {
+        return before == after || before.hashCode() == after.hashCode() && before.equals(after);
+    }
+
+}
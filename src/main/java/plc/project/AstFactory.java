@@ -0,0 +1,171 @@
+package plc.project;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Creates {@link Ast} nodes for the {@link Parser}, with one method per node
+ * type.
+ *
+ * A plain factory simply calls the constructors. An interning factory instead
+ * returns a canonical shared instance for fields, statements and expressions
+ * which are structurally equal to one created before (hash-consing), so that
+ * a subtree such as {@code x.y + 1} repeated throughout a program is stored
+ * once. Since children are interned before their parents, the comparison
+ * with a candidate usually stops at the cached hash or at identical children.
+ *
+ * Canonical instances are held through weak references, so an interning
+ * factory can be shared between parsers (and threads) for a whole session
+ * without keeping trees alive. Methods and sources are never shared, as a
+ * method body may be parsed lazily. Note that a shared node is recorded once
+ * per occurrence in a {@link SpanTable}, so looking its span up by node is
+ * ambiguous and reports that of its first occurrence.
+ */
+public final class AstFactory {
+
+    private final Map<Ast, WeakReference<Ast>> table;
+    private long hits = 0;
+
+    /**
+     * Creates a plain factory, which does not share nodes.
+     */
+    public AstFactory() {
+        this(false);
+    }
+
+    /**
+     * Creates a factory which shares structurally equal nodes if {@code
+     * intern} is {@code true}.
+     */
+    public AstFactory(boolean intern) {
+        this.table = intern ? new WeakHashMap<>() : null;
+    }
+
+    /**
+     * Returns the number of nodes which were replaced by a canonical instance.
+     */
+    public long getHits() {
+        if (table == null) {
+            return 0;
+        }
+        synchronized (table) {
+            return hits;
+        }
+    }
+
+    /**
+     * Returns the number of canonical instances currently held, which is
+     * always {@code 0} for a plain factory.
+     */
+    public int size() {
+        if (table == null) {
+            return 0;
+        }
+        synchronized (table) {
+            return table.size();
+        }
+    }
+
+    public Ast.Source source(List<Ast.Field> fields, List<Ast.Method> methods, SpanTable spans) {
+        return new Ast.Source(fields, methods, spans);
+    }
+
+    public Ast.Field field(String name, Optional<Ast.Expr> value) {
+        return intern(new Ast.Field(name, value));
+    }
+
+    public Ast.Method method(String name, List<String> parameters, List<Ast.Stmt> statements) {
+        return new Ast.Method(name, parameters, statements);
+    }
+
+    public Ast.Method method(String name, List<String> parameters, Supplier<List<Ast.Stmt>> body) {
+        return new Ast.Method(name, parameters, body);
+    }
+
+    public Ast.Stmt.Expression expressionStatement(Ast.Expr expression) {
+        return intern(new Ast.Stmt.Expression(expression));
+    }
+
+    public Ast.Stmt.Declaration declarationStatement(String name, Optional<Ast.Expr> value) {
+        return intern(new Ast.Stmt.Declaration(name, value));
+    }
+
+    public Ast.Stmt.Assignment assignmentStatement(Ast.Expr receiver, Ast.Expr value) {
+        return intern(new Ast.Stmt.Assignment(receiver, value));
+    }
+
+    public Ast.Stmt.If ifStatement(Ast.Expr condition, List<Ast.Stmt> thenStatements, List<Ast.Stmt> elseStatements) {
+        return intern(new Ast.Stmt.If(condition, thenStatements, elseStatements));
+    }
+
+    public Ast.Stmt.For forStatement(String name, Ast.Expr value, List<Ast.Stmt> statements) {
+        return intern(new Ast.Stmt.For(name, value, statements));
+    }
+
+    public Ast.Stmt.While whileStatement(Ast.Expr condition, List<Ast.Stmt> statements) {
+        return intern(new Ast.Stmt.While(condition, statements));
+    }
+
+    public Ast.Stmt.Return returnStatement(Ast.Expr value) {
+        return intern(new Ast.Stmt.Return(value));
+    }
+
+    public Ast.Stmt.Error errorStatement(String message, int index) {
+        return intern(new Ast.Stmt.Error(message, index));
+    }
+
+    public Ast.Expr.Literal literal(Object literal) {
+        return intern(new Ast.Expr.Literal(literal));
+    }
+
+    public Ast.Expr.Literal integerLiteral(long value) {
+        return intern(Ast.Expr.Literal.ofInteger(value));
+    }
+
+    public Ast.Expr.Literal decimalLiteral(long unscaledValue, int scale) {
+        return intern(Ast.Expr.Literal.ofDecimal(unscaledValue, scale));
+    }
+
+    public Ast.Expr.Group group(Ast.Expr expression) {
+        return intern(new Ast.Expr.Group(expression));
+    }
+
+    public Ast.Expr.Binary binary(String operator, Ast.Expr left, Ast.Expr right) {
+        return intern(new Ast.Expr.Binary(operator, left, right));
+    }
+
+    public Ast.Expr.Access access(Optional<Ast.Expr> receiver, String name) {
+        return intern(new Ast.Expr.Access(receiver, name));
+    }
+
+    public Ast.Expr.Function function(Optional<Ast.Expr> receiver, String name, List<Ast.Expr> arguments) {
+        return intern(new Ast.Expr.Function(receiver, name, arguments));
+    }
+
+    /**
+     * Returns the canonical instance equal to {@code node}, which becomes the
+     * canonical instance if there is none. Equal nodes always have the same
+     * class, so the cast is safe.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Ast> T intern(T node) {
+        if (table == null) {
+            return node;
+        }
+        synchronized (table) {
+            WeakReference<Ast> reference = table.get(node);
+            Ast canonical = reference != null ? reference.get() : null;
+            if (canonical != null) {
+                hits++;
+                return (T) canonical;
+            }
+            table.put(node, new WeakReference<>(node));
+            return node;
+        }
+    }
+
+}
@@ -0,0 +1,377 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Writes an {@link Ast} to an {@link Appendable} in a single pass, so that
+ * dumping a tree costs time proportional to the output rather than copying
+ * each child's text once per level of nesting. {@link Ast#toString()} uses a
+ * printer with no limits in the standard format.
+ *
+ * The standard format is that of the original {@code toString} methods, such
+ * as {@code Ast.Expr.Access{receiver=Optional.empty, name='x'}}. The compact
+ * format drops the package-like prefixes, field names and absent optional
+ * values, as in {@code Access(x)}, and quotes string and character literals.
+ *
+ * A printer may limit the depth, past which each node is written as {@code
+ * ...}, and the number of characters written, past which output stops with
+ * {@code ...} (so the output is at most three characters over the limit). A
+ * printer is not thread-safe, but may be reused.
+ */
+public final class AstPrinter implements Ast.Visitor<Void> {
+
+    private static final String ELLIPSIS = "...";
+
+    private final int maxDepth;
+    private final long maxLength;
+    private final boolean compact;
+
+    private Appendable out;
+    private int depth;
+    private long length;
+    private boolean truncated;
+
+    /**
+     * Creates a printer for the standard format with no limits.
+     */
+    public AstPrinter() {
+        this(Integer.MAX_VALUE, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Creates a printer which writes nodes nested at most {@code maxDepth}
+     * deep (the root being at depth 1) and at most {@code maxLength}
+     * characters, in the compact format if {@code compact} is {@code true}.
+     */
+    public AstPrinter(int maxDepth, long maxLength, boolean compact) {
+        if (maxDepth < 0 || maxLength < 0) {
+            throw new IllegalArgumentException("Invalid limits " + maxDepth + ", " + maxLength);
+        }
+        this.maxDepth = maxDepth;
+        this.maxLength = maxLength;
+        this.compact = compact;
+    }
+
+    /**
+     * Returns {@code ast} as a string.
+     */
+    public String print(Ast ast) {
+        StringBuilder builder = new StringBuilder();
+        print(ast, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Writes {@code ast} to {@code out}, returning whether the output was cut
+     * short by the length limit. An {@link IOException} from {@code out} is
+     * rethrown as an {@link UncheckedIOException}.
+     */
+    public boolean print(Ast ast, Appendable out) {
+        this.out = out;
+        this.depth = 0;
+        this.length = 0;
+        this.truncated = false;
+        try {
+            visit(ast);
+            return truncated;
+        } finally {
+            this.out = null;
+        }
+    }
+
+    @Override
+    public Void visit(Ast ast) {
+        if (truncated) {
+            return null;
+        } else if (depth >= maxDepth) {
+            write(ELLIPSIS);
+            return null;
+        }
+        depth++;
+        ast.accept(this);
+        depth--;
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        if (compact) {
+            write("Source(");
+            list(ast.getFields());
+            write(", ");
+            list(ast.getMethods());
+            write(")");
+        } else {
+            write("Ast.Source{fields=");
+            list(ast.getFields());
+            write("methods=");
+            list(ast.getMethods());
+            write("}");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Field ast) {
+        if (compact) {
+            write("Field(");
+            write(ast.getName());
+            optional(ast.getValue().orElse(null));
+            write(")");
+        } else {
+            write("Ast.Field{name='");
+            write(ast.getName());
+            write("', value=");
+            optional(ast.getValue().orElse(null));
+            write("}");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Method ast) {
+        if (compact) {
+            write("Method(");
+            write(ast.getName());
+            write(", ");
+            write(ast.getParameters().toString());
+            write(", ");
+            list(ast.getStatements());
+            write(")");
+        } else {
+            write("Ast.Method{name='");
+            write(ast.getName());
+            write("', parameters=");
+            write(ast.getParameters().toString());
+            write(", statements=");
+            list(ast.getStatements());
+            write("}");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Expression ast) {
+        write(compact ? "Expression(" : "Ast.Stmt.Expression{expression=");
+        visit(ast.getExpression());
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Declaration ast) {
+        write(compact ? "Declaration(" : "Ast.Stmt.Declaration{name='");
+        write(ast.getName());
+        if (!compact) {
+            write("', value=");
+        }
+        optional(ast.getValue().orElse(null));
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Assignment ast) {
+        write(compact ? "Assignment(" : "Ast.Stmt.Assignment{receiver=");
+        visit(ast.getReceiver());
+        write(compact ? ", " : ", value=");
+        visit(ast.getValue());
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.If ast) {
+        write(compact ? "If(" : "Ast.Stmt.If{condition=");
+        visit(ast.getCondition());
+        write(compact ? ", " : ", thenStatements=");
+        list(ast.getThenStatements());
+        write(compact ? ", " : ", elseStatements=");
+        list(ast.getElseStatements());
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.For ast) {
+        write(compact ? "For(" : "For{name='");
+        write(ast.getName());
+        write(compact ? ", " : "', value=");
+        visit(ast.getValue());
+        write(compact ? ", " : ", statements=");
+        list(ast.getStatements());
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.While ast) {
+        write(compact ? "While(" : "Ast.Stmt.While{condition=");
+        visit(ast.getCondition());
+        write(compact ? ", " : ", statements=");
+        list(ast.getStatements());
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Return ast) {
+        write(compact ? "Return(" : "Ast.Stmt.Return{value=");
+        visit(ast.getValue());
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Error ast) {
+        write(compact ? "Error(" : "Ast.Stmt.Error{message='");
+        write(ast.getMessage());
+        write(compact ? ", " : "', index=");
+        write(Integer.toString(ast.getIndex()));
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Literal ast) {
+        Object literal = ast.getLiteral();
+        if (!compact) {
+            write("Ast.Expr.Literal{literal=");
+            write(String.valueOf(literal));
+        } else if (literal instanceof String) {
+            write("Literal(\"");
+            write((String) literal);
+            write("\"");
+        } else if (literal instanceof Character) {
+            write("Literal('");
+            write(literal.toString());
+            write("'");
+        } else {
+            write("Literal(");
+            write(String.valueOf(literal));
+        }
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Group ast) {
+        write(compact ? "Group(" : "Ast.Expr.Group{expression=");
+        visit(ast.getExpression());
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Binary ast) {
+        write(compact ? "Binary(" : "Ast.Expr.Binary{operator='");
+        write(ast.getOperator());
+        write(compact ? ", " : "', left=");
+        visit(ast.getLeft());
+        write(compact ? ", " : ", right=");
+        visit(ast.getRight());
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Access ast) {
+        if (compact) {
+            write("Access(");
+            receiver(ast.getReceiver().orElse(null));
+            write(ast.getName());
+        } else {
+            write("Ast.Expr.Access{receiver=");
+            optional(ast.getReceiver().orElse(null));
+            write(", name='");
+            write(ast.getName());
+            write("'");
+        }
+        close();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Function ast) {
+        if (compact) {
+            write("Function(");
+            receiver(ast.getReceiver().orElse(null));
+            write(ast.getName());
+            write(", ");
+        } else {
+            write("Ast.Expr.Function{receiver=");
+            optional(ast.getReceiver().orElse(null));
+            write(", name='");
+            write(ast.getName());
+            write("', arguments=");
+        }
+        list(ast.getArguments());
+        close();
+        return null;
+    }
+
+    /**
+     * Writes an optional child, as {@code Optional[...]} in the standard
+     * format or as {@code , ...} if present in the compact format.
+     */
+    private void optional(Ast ast) {
+        if (compact) {
+            if (ast != null) {
+                write(", ");
+                visit(ast);
+            }
+        } else if (ast != null) {
+            write("Optional[");
+            visit(ast);
+            write("]");
+        } else {
+            write("Optional.empty");
+        }
+    }
+
+    /**
+     * Writes a receiver followed by a separator in the compact format.
+     */
+    private void receiver(Ast ast) {
+        if (ast != null) {
+            visit(ast);
+            write(", ");
+        }
+    }
+
+    private void list(List<? extends Ast> list) {
+        write("[");
+        for (int i = 0; i < list.size() && !truncated; i++) {
+            if (i > 0) {
+                write(", ");
+            }
+            visit(list.get(i));
+        }
+        write("]");
+    }
+
+    private void close() {
+        write(compact ? ")" : "}");
+    }
+
+    private void write(String string) {
+        if (truncated) {
+            return;
+        }
+        try {
+            if (string.length() > maxLength - length) {
+                out.append(string, 0, (int) (maxLength - length)).append(ELLIPSIS);
+                length = maxLength;
+                truncated = true;
+            } else {
+                out.append(string);
+                length += string.length();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,601 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link Ast.Source} compiled to bytecode for the {@link VirtualMachine}.
+ *
+ * Each method is compiled to an {@code int[]} of instructions, each an opcode
+ * followed by its operands, which are indices into the constant pool, the
+ * globals, the method's locals or the program's methods and builtins, or
+ * jump targets. Literals and builtins are stored once per program in the
+ * constant pool, along with an {@link InlineCache} for each call and field
+ * access on a receiver. Locals are resolved to slots as in {@link Interpreter},
+ * with the parameters in the first slots, and the compiler records how many
+ * locals and how much operand stack each method needs, so the virtual machine
+ * never checks for overflow while running a method.
+ *
+ * To reduce the number of instructions dispatched, conditions are compiled
+ * to jumps (comparing and branching in a single instruction, and
+ * short-circuiting {@code AND} and {@code OR} without creating booleans),
+ * {@code WHILE} loops test their condition at the bottom, and adding a
+ * literal takes the literal as an operand. The four ordering comparisons
+ * share an instruction, taking a mask of the accepted signs, which keeps the
+ * dispatch loop small enough for the JVM to inline the operators into it.
+ *
+ * The field initializers are compiled as a method with no parameters, run
+ * once before the first call.
+ */
+public final class Bytecode {
+
+    /** Pushes {@code constants[k]}. */
+    static final int CONST = 0;
+    /** Pushes local {@code s}. */
+    static final int LOAD = 1;
+    /** Pops into local {@code s}. */
+    static final int STORE = 2;
+    /** Pushes global {@code g}. */
+    static final int GLOAD = 3;
+    /** Pops into global {@code g}. */
+    static final int GSTORE = 4;
+    /** Replaces a receiver with its field, looked up through the {@link InlineCache} {@code constants[k]}. */
+    static final int GETFIELD = 5;
+    /** Pops a value and a receiver, setting its field through the {@link InlineCache} {@code constants[k]}. */
+    static final int SETFIELD = 6;
+    /** Pops and discards a value. */
+    static final int POP = 7;
+    /** Jumps to {@code t}. */
+    static final int JUMP = 8;
+    /** Pops a boolean, jumping to {@code t} if it is false. */
+    static final int JUMP_FALSE = 9;
+    /** Pops a boolean, jumping to {@code t} if it is true. */
+    static final int JUMP_TRUE = 10;
+    static final int ADD = 11;
+    static final int SUBTRACT = 12;
+    static final int MULTIPLY = 13;
+    static final int DIVIDE = 14;
+    /** Replaces two values with whether the sign of their comparison is in the mask {@code m}. */
+    static final int COMPARE = 15;
+    /** Replaces two values with whether they are equal, or unequal if {@code n} is {@code 1}. */
+    static final int EQUAL = 16;
+    /** Calls method {@code m}, replacing its arguments with the result. */
+    static final int CALL = 17;
+    /** Calls the builtin {@code constants[k]} with {@code n} arguments. */
+    static final int BUILTIN = 18;
+    /** Calls a method with {@code n} arguments on a receiver, through the {@link InlineCache} {@code constants[k]}. */
+    static final int INVOKE = 19;
+    /** Pops a value and returns it. */
+    static final int RETURN = 20;
+    /** Replaces an iterable with its iterator. */
+    static final int ITERATE = 21;
+    /** Pops the next element of an iterator into local {@code s}, or pops the iterator and jumps to {@code t}. */
+    static final int NEXT = 22;
+    /** Replaces a value with its sum with {@code constants[k]}. */
+    static final int ADD_CONST = 23;
+    /** Pops two values, jumping to {@code t} if the sign of their comparison is in the mask {@code m}. */
+    static final int JUMP_COMPARE = 24;
+    /** Pops two values, jumping to {@code t} if they are equal, or unequal if {@code n} is {@code 1}. */
+    static final int JUMP_EQUAL = 25;
+
+    /** The masks of {@code COMPARE}, for a comparison less than, equal to or greater than zero. */
+    static final int LESS = 1;
+    static final int EQUAL_TO = 2;
+    static final int GREATER = 4;
+
+    /**
+     * A compiled method, whose locals start with its parameters.
+     */
+    static final class Method {
+
+        final String name;
+        final int arity;
+        int locals;
+        int maxStack;
+        int[] code;
+
+        private Method(String name, int arity) {
+            this.name = name;
+            this.arity = arity;
+        }
+
+    }
+
+    final Object[] constants;
+    final Method[] methods;
+    final Method initializer;
+    final int globals;
+    private final Map<String, Integer> index = new HashMap<>();
+
+    private Bytecode(Object[] constants, Method[] methods, Method initializer, int globals) {
+        this.constants = constants;
+        this.methods = methods;
+        this.initializer = initializer;
+        this.globals = globals;
+        for (int i = 0; i < methods.length; i++) {
+            index.put(methods[i].name + "/" + methods[i].arity, i);
+        }
+    }
+
+    /**
+     * Compiles {@code source}, binding calls to the builtins of {@code
+     * environment}. Throws an {@link EvaluationException} for the same errors
+     * as the {@link Interpreter} constructor.
+     */
+    public static Bytecode compile(Ast.Source source, Environment environment) {
+        return new Compiler(environment).compile(source);
+    }
+
+    /**
+     * Returns the method with the given name and arity, or {@code null}.
+     */
+    Method getMethod(String name, int arity) {
+        Integer i = index.get(name + "/" + arity);
+        return i != null ? methods[i] : null;
+    }
+
+    /**
+     * Returns the total number of ints of code in the program.
+     */
+    public int getCodeSize() {
+        int size = initializer.code.length;
+        for (Method method : methods) {
+            size += method.code.length;
+        }
+        return size;
+    }
+
+    private static final class Compiler implements Ast.Visitor<Void> {
+
+        private static final Map<String, Integer> MASKS = Map.of(
+                "<", LESS, "<=", LESS | EQUAL_TO, ">", GREATER, ">=", GREATER | EQUAL_TO);
+
+        private final Environment environment;
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> constantIndices = new HashMap<>();
+        private final Map<String, Integer> methodIndices = new HashMap<>();
+        private final List<Method> methods = new ArrayList<>();
+        private final Map<String, Integer> globalSlots = new HashMap<>();
+        private final ArrayDeque<Map<String, Integer>> scopes = new ArrayDeque<>();
+
+        private int[] code = new int[64];
+        private int size;
+        private int depth;
+        private int maxDepth;
+        private int next;
+        private int max;
+
+        private Compiler(Environment environment) {
+            this.environment = environment;
+        }
+
+        private Bytecode compile(Ast.Source source) {
+            for (Ast.Method method : source.getMethods()) {
+                String key = method.getName() + "/" + method.getParameters().size();
+                if (methodIndices.putIfAbsent(key, methods.size()) != null) {
+                    throw new EvaluationException("The method " + key + " is already defined.");
+                }
+                methods.add(new Method(method.getName(), method.getParameters().size()));
+            }
+            Method initializer = new Method("<fields>", 0);
+            begin();
+            for (Ast.Field field : source.getFields()) {
+                visit(field);
+            }
+            end(initializer);
+            for (int i = 0; i < source.getMethods().size(); i++) {
+                Ast.Method ast = source.getMethods().get(i);
+                begin();
+                scopes.push(new HashMap<>());
+                for (String parameter : ast.getParameters()) {
+                    declare(parameter);
+                }
+                statements(ast.getStatements());
+                scopes.pop();
+                end(methods.get(i));
+            }
+            return new Bytecode(constants.toArray(), methods.toArray(new Method[0]), initializer, globalSlots.size());
+        }
+
+        private void begin() {
+            size = 0;
+            depth = 0;
+            maxDepth = 0;
+            next = 0;
+            max = 0;
+        }
+
+        /**
+         * Ends the current method with a {@code RETURN} of {@code NIL}.
+         */
+        private void end(Method method) {
+            emit(CONST, constant(null), 1);
+            emit(RETURN, -1);
+            method.code = Arrays.copyOf(code, size);
+            method.locals = max;
+            method.maxStack = maxDepth;
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            expression(ast.getValue().orElse(null));
+            int slot = globalSlots.size();
+            if (globalSlots.putIfAbsent(ast.getName(), slot) != null) {
+                throw new EvaluationException("The field " + ast.getName() + " is already defined.");
+            }
+            emit(GSTORE, slot, -1);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            visit(ast.getExpression());
+            emit(POP, -1);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            expression(ast.getValue().orElse(null));
+            emit(STORE, declare(ast.getName()), -1);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            if (!(ast.getReceiver() instanceof Ast.Expr.Access)) {
+                throw new EvaluationException("Expected an access as the receiver of an assignment.");
+            }
+            Ast.Expr.Access receiver = (Ast.Expr.Access) ast.getReceiver();
+            if (receiver.getReceiver().isPresent()) {
+                visit(receiver.getReceiver().get());
+                visit(ast.getValue());
+                emit(SETFIELD, constant(new InlineCache(receiver.getName())), -2);
+                return null;
+            }
+            visit(ast.getValue());
+            Integer slot = local(receiver.getName());
+            if (slot != null) {
+                emit(STORE, slot, -1);
+            } else {
+                emit(GSTORE, global(receiver.getName()), -1);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            List<Integer> otherwise = condition(ast.getCondition(), false, -1);
+            block(ast.getThenStatements());
+            int end = jump(JUMP, 0);
+            otherwise.forEach(this::patch);
+            block(ast.getElseStatements());
+            patch(end);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            visit(ast.getValue());
+            emit(ITERATE, 0);
+            int start = next;
+            scopes.push(new HashMap<>());
+            int slot = declare(ast.getName());
+            int loop = size;
+            emit(NEXT, slot, 0, 0);
+            int exit = size - 1;
+            statements(ast.getStatements());
+            emit(JUMP, loop, 0);
+            code[exit] = size;
+            scopes.pop();
+            next = start;
+            depth--;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            int test = jump(JUMP, 0);
+            int body = size;
+            block(ast.getStatements());
+            patch(test);
+            condition(ast.getCondition(), true, body);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            visit(ast.getValue());
+            emit(RETURN, -1);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Error ast) {
+            throw new EvaluationException("Cannot evaluate a statement which failed to parse: " + ast.getMessage());
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            emit(CONST, constant(ast.getLiteral()), 1);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            String operator = ast.getOperator();
+            if (operator.equals("AND") || operator.equals("OR")) {
+                // Both operands are checked to be booleans by the jumps, and
+                // the result is pushed as a constant.
+                int jump = operator.equals("AND") ? JUMP_FALSE : JUMP_TRUE;
+                visit(ast.getLeft());
+                int left = jump(jump, -1);
+                visit(ast.getRight());
+                int right = jump(jump, -1);
+                emit(CONST, constant(operator.equals("OR") ? Boolean.FALSE : Boolean.TRUE), 1);
+                int end = jump(JUMP, 0);
+                patch(left);
+                patch(right);
+                depth--;
+                emit(CONST, constant(operator.equals("OR") ? Boolean.TRUE : Boolean.FALSE), 1);
+                patch(end);
+                return null;
+            }
+            visit(ast.getLeft());
+            if (operator.equals("+") && ast.getRight() instanceof Ast.Expr.Literal) {
+                emit(ADD_CONST, constant(((Ast.Expr.Literal) ast.getRight()).getLiteral()), 0);
+                return null;
+            }
+            visit(ast.getRight());
+            switch (operator) {
+                case "<":
+                case "<=":
+                case ">":
+                case ">=":
+                    emit(COMPARE, MASKS.get(operator), -1);
+                    break;
+                case "==":
+                    emit(EQUAL, 0, -1);
+                    break;
+                case "!=":
+                    emit(EQUAL, 1, -1);
+                    break;
+                case "+":
+                    emit(ADD, -1);
+                    break;
+                case "-":
+                    emit(SUBTRACT, -1);
+                    break;
+                case "*":
+                    emit(MULTIPLY, -1);
+                    break;
+                case "/":
+                    emit(DIVIDE, -1);
+                    break;
+                default:
+                    throw new EvaluationException("Unknown operator " + operator + ".");
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            if (ast.getReceiver().isPresent()) {
+                visit(ast.getReceiver().get());
+                emit(GETFIELD, constant(new InlineCache(ast.getName())), 0);
+                return null;
+            }
+            Integer slot = local(ast.getName());
+            if (slot != null) {
+                emit(LOAD, slot, 1);
+            } else {
+                emit(GLOAD, global(ast.getName()), 1);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            int arity = ast.getArguments().size();
+            if (ast.getReceiver().isPresent()) {
+                visit(ast.getReceiver().get());
+                ast.getArguments().forEach(this::visit);
+                emit(INVOKE, constant(new InlineCache(ast.getName())), arity, -arity);
+                return null;
+            }
+            ast.getArguments().forEach(this::visit);
+            Integer method = methodIndices.get(ast.getName() + "/" + arity);
+            if (method != null) {
+                emit(CALL, method, 1 - arity);
+                return null;
+            }
+            Environment.Function function = environment.lookup(ast.getName(), arity);
+            if (function == null) {
+                throw new EvaluationException("The function " + ast.getName() + "/" + arity + " is not defined.");
+            }
+            emit(BUILTIN, constant(function), arity, 1 - arity);
+            return null;
+        }
+
+        /**
+         * Compiles a condition to jumps to {@code target} if it evaluates to
+         * {@code when}, falling through otherwise, and returns the positions
+         * of the targets so that they can be patched if {@code target} is
+         * {@code -1}.
+         */
+        private List<Integer> condition(Ast.Expr ast, boolean when, int target) {
+            List<Integer> jumps = new ArrayList<>();
+            while (ast instanceof Ast.Expr.Group) {
+                ast = ((Ast.Expr.Group) ast).getExpression();
+            }
+            String operator = ast instanceof Ast.Expr.Binary ? ((Ast.Expr.Binary) ast).getOperator() : "";
+            if (operator.equals("AND") == when && (operator.equals("AND") || operator.equals("OR"))) {
+                // An AND jumping when true (or an OR jumping when false)
+                // needs both operands, so the left skips past the right.
+                List<Integer> skip = condition(((Ast.Expr.Binary) ast).getLeft(), !when, -1);
+                jumps.addAll(condition(((Ast.Expr.Binary) ast).getRight(), when, target));
+                skip.forEach(this::patch);
+            } else if (operator.equals("AND") || operator.equals("OR")) {
+                jumps.addAll(condition(((Ast.Expr.Binary) ast).getLeft(), when, target));
+                jumps.addAll(condition(((Ast.Expr.Binary) ast).getRight(), when, target));
+            } else if (MASKS.containsKey(operator)) {
+                // For values which can be compared at all, the comparison is
+                // false exactly when the sign is in the complement mask.
+                visit(((Ast.Expr.Binary) ast).getLeft());
+                visit(((Ast.Expr.Binary) ast).getRight());
+                int mask = MASKS.get(operator);
+                emit(JUMP_COMPARE, when ? mask : ~mask & (LESS | EQUAL_TO | GREATER), target, -2);
+                jumps.add(size - 1);
+            } else if (operator.equals("==") || operator.equals("!=")) {
+                visit(((Ast.Expr.Binary) ast).getLeft());
+                visit(((Ast.Expr.Binary) ast).getRight());
+                emit(JUMP_EQUAL, operator.equals("==") == when ? 0 : 1, target, -2);
+                jumps.add(size - 1);
+            } else {
+                visit(ast);
+                emit(when ? JUMP_TRUE : JUMP_FALSE, target, -1);
+                jumps.add(size - 1);
+            }
+            return jumps;
+        }
+
+        /**
+         * Compiles {@code ast}, or pushes {@code NIL} if it is {@code null}.
+         */
+        private void expression(Ast.Expr ast) {
+            if (ast != null) {
+                visit(ast);
+            } else {
+                emit(CONST, constant(null), 1);
+            }
+        }
+
+        private void statements(List<Ast.Stmt> statements) {
+            for (Ast.Stmt statement : statements) {
+                visit(statement);
+            }
+        }
+
+        /**
+         * Compiles a block of statements in a new scope, whose slots are
+         * reused once the block ends.
+         */
+        private void block(List<Ast.Stmt> statements) {
+            int start = next;
+            scopes.push(new HashMap<>());
+            statements(statements);
+            scopes.pop();
+            next = start;
+        }
+
+        private int declare(String name) {
+            if (scopes.peek().putIfAbsent(name, next) != null) {
+                throw new EvaluationException("The variable " + name + " is already defined in this scope.");
+            }
+            max = Math.max(max, next + 1);
+            return next++;
+        }
+
+        private Integer local(String name) {
+            for (Map<String, Integer> scope : scopes) {
+                Integer slot = scope.get(name);
+                if (slot != null) {
+                    return slot;
+                }
+            }
+            return null;
+        }
+
+        private int global(String name) {
+            Integer slot = globalSlots.get(name);
+            if (slot == null) {
+                throw new EvaluationException("The variable " + name + " is not defined.");
+            }
+            return slot;
+        }
+
+        private int constant(Object value) {
+            // Builtins are compared by identity, everything else by value
+            // (including its class, so 1 and 1.0 are distinct).
+            Object key = value instanceof Environment.Function ? new IdentityKey(value) : value == null ? IdentityKey.NULL : value;
+            Integer index = constantIndices.get(key);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                constantIndices.put(key, index);
+            }
+            return index;
+        }
+
+        /**
+         * Emits a jump with a target to be patched, returning the position
+         * of the target.
+         */
+        private int jump(int opcode, int effect) {
+            emit(opcode, 0, effect);
+            return size - 1;
+        }
+
+        private void patch(int position) {
+            code[position] = size;
+        }
+
+        /**
+         * Emits an instruction, the last argument being its effect on the
+         * depth of the operand stack.
+         */
+        private void emit(int... instruction) {
+            int length = instruction.length - 1;
+            if (size + length > code.length) {
+                code = Arrays.copyOf(code, Math.max(2 * code.length, size + length));
+            }
+            System.arraycopy(instruction, 0, code, size, length);
+            size += length;
+            depth += instruction[length];
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+    }
+
+    private static final class IdentityKey {
+
+        private static final IdentityKey NULL = new IdentityKey(null);
+
+        private final Object value;
+
+        private IdentityKey(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IdentityKey && value == ((IdentityKey) obj).value;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(value);
+        }
+
+    }
+
+}
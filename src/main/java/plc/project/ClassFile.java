@@ -0,0 +1,611 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A minimal writer for JVM class files, supporting just what {@link Jit}
+ * needs: static fields, and static methods using a small set of opcodes.
+ *
+ * Classes are written as version 49 (Java 5), the last version which does
+ * not require a {@code StackMapTable}, so the verifier infers the types of
+ * locals and the operand stack itself. The maximum stack depth of each
+ * method is computed as instructions are added, from the effect of each
+ * opcode, and jumps are patched once their labels are bound. Jumps are added
+ * with 16-bit offsets, and those which turn out to be too far are widened
+ * when the method is written: a {@code GOTO} becomes a {@code GOTO_W}, and a
+ * conditional jump becomes the opposite condition skipping over a {@code
+ * GOTO_W}.
+ *
+ * Code which does not fit the limits of a class file, a method longer than
+ * 64KB or more constants than the pool holds, is reported as a {@link
+ * LimitException}.
+ */
+final class ClassFile {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int LCONST_0 = 0x09;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int LLOAD = 0x16;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int LSTORE = 0x37;
+    static final int ASTORE = 0x3A;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP2 = 0x5C;
+    static final int LCMP = 0x94;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IFLT = 0x9B;
+    static final int IFGE = 0x9C;
+    static final int IFGT = 0x9D;
+    static final int IFLE = 0x9E;
+    static final int GOTO = 0xA7;
+    static final int ARETURN = 0xB0;
+    static final int RETURN = 0xB1;
+    static final int GETSTATIC = 0xB2;
+    static final int PUTSTATIC = 0xB3;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESTATIC = 0xB8;
+    static final int INVOKEINTERFACE = 0xB9;
+    static final int ANEWARRAY = 0xBD;
+    static final int CHECKCAST = 0xC0;
+    static final int WIDE = 0xC4;
+    static final int GOTO_W = 0xC8;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOutput = new DataOutputStream(pool);
+    private final Map<Object, Integer> poolIndices = new HashMap<>();
+    private int poolSize = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<Code> methods = new ArrayList<>();
+
+    /**
+     * Creates a public final class with the given internal name, such as
+     * {@code plc/project/Program}, extending {@link Object}.
+     */
+    ClassFile(String name) {
+        this.thisClass = classConstant(name);
+        this.superClass = classConstant("java/lang/Object");
+    }
+
+    void field(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeShort(access);
+            output.writeShort(utf8(name));
+            output.writeShort(utf8(descriptor));
+            output.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * Starts a method, whose instructions are added to the returned code.
+     */
+    Code method(int access, String name, String descriptor) {
+        Code code = new Code(access, utf8(name), utf8(descriptor));
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            int codeName = utf8("Code");
+            output.writeInt(0xCAFEBABE);
+            output.writeShort(0);
+            output.writeShort(49);
+            output.writeShort(poolSize);
+            pool.writeTo(output);
+            output.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            output.writeShort(thisClass);
+            output.writeShort(superClass);
+            output.writeShort(0);
+            output.writeShort(fields.size());
+            for (byte[] field : fields) {
+                output.write(field);
+            }
+            output.writeShort(methods.size());
+            for (Code method : methods) {
+                method.write(output, codeName);
+            }
+            output.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private int utf8(String value) {
+        return constant("U" + value, output -> {
+            output.writeByte(CONSTANT_UTF8);
+            output.writeUTF(value);
+        });
+    }
+
+    private int classConstant(String name) {
+        int utf8 = utf8(name);
+        return constant("C" + name, output -> {
+            output.writeByte(CONSTANT_CLASS);
+            output.writeShort(utf8);
+        });
+    }
+
+    private int stringConstant(String value) {
+        int utf8 = utf8(value);
+        return constant("S" + value, output -> {
+            output.writeByte(CONSTANT_STRING);
+            output.writeShort(utf8);
+        });
+    }
+
+    private int longConstant(long value) {
+        // A long takes two entries of the pool.
+        int index = constant(value, output -> {
+            output.writeByte(CONSTANT_LONG);
+            output.writeLong(value);
+        });
+        if (index == poolSize - 1) {
+            poolSize++;
+        }
+        return index;
+    }
+
+    private int memberConstant(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classConstant(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + " " + descriptor, output -> {
+            output.writeByte(CONSTANT_NAME_AND_TYPE);
+            output.writeShort(nameIndex);
+            output.writeShort(descriptorIndex);
+        });
+        return constant(tag + owner + "." + name + " " + descriptor, output -> {
+            output.writeByte(tag);
+            output.writeShort(ownerIndex);
+            output.writeShort(nameAndType);
+        });
+    }
+
+    private interface Entry {
+
+        void write(DataOutputStream output) throws IOException;
+
+    }
+
+    private int constant(Object key, Entry entry) {
+        Integer index = poolIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (poolSize >= 0xFFFE) {
+            throw new LimitException("The constant pool is full.");
+        }
+        try {
+            entry.write(poolOutput);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        poolIndices.put(key, poolSize);
+        return poolSize++;
+    }
+
+    /**
+     * Thrown when code does not fit the limits of a class file.
+     */
+    static final class LimitException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        private LimitException(String message) {
+            super(message);
+        }
+
+    }
+
+    /**
+     * A position in the code which jumps refer to before it is bound. Labels
+     * are only used at the stack depth at which they are created.
+     */
+    static final class Label {
+
+        private final int depth;
+        private int position = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+
+        private Label(int depth) {
+            this.depth = depth;
+        }
+
+    }
+
+    /**
+     * The instructions of a method. The stack depth is undefined after an
+     * unconditional jump or return until a label which was jumped to (or is
+     * the start of a loop) is bound.
+     */
+    final class Code {
+
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int depth = 0;
+        private int maxStack = 0;
+        private int maxLocals = 0;
+
+        private Code(int access, int name, int descriptor) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        /**
+         * Sets the number of locals used, including the parameters.
+         */
+        void locals(int locals) {
+            maxLocals = Math.max(maxLocals, locals);
+        }
+
+        /**
+         * Returns whether the next instruction would be reachable.
+         */
+        boolean reachable() {
+            return depth >= 0;
+        }
+
+        /**
+         * Adds an instruction without operands.
+         */
+        void op(int opcode) {
+            bytes.write(opcode);
+            switch (opcode) {
+                case ACONST_NULL:
+                case DUP:
+                    stack(1);
+                    break;
+                case DUP2:
+                case LCONST_0:
+                case LCONST_0 + 1:
+                    stack(2);
+                    break;
+                case POP:
+                case ARETURN:
+                case AALOAD:
+                    stack(-1);
+                    break;
+                case POP2:
+                    stack(-2);
+                    break;
+                case AASTORE:
+                case LCMP:
+                    stack(-3);
+                    break;
+                case RETURN:
+                    break;
+                default:
+                    if (opcode >= ICONST_0 && opcode <= ICONST_0 + 5) {
+                        stack(1);
+                        break;
+                    }
+                    throw new IllegalArgumentException("Unsupported opcode " + opcode);
+            }
+            if (opcode == ARETURN || opcode == RETURN) {
+                depth = -1;
+            }
+        }
+
+        /**
+         * Pushes an int.
+         */
+        void push(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                bytes.write(BIPUSH);
+                bytes.write(value);
+                stack(1);
+            } else {
+                bytes.write(SIPUSH);
+                u2(value);
+                stack(1);
+            }
+        }
+
+        /**
+         * Pushes a string constant.
+         */
+        void ldc(String value) {
+            bytes.write(LDC_W);
+            u2(stringConstant(value));
+            stack(1);
+        }
+
+        /**
+         * Pushes a long.
+         */
+        void push(long value) {
+            if (value == 0 || value == 1) {
+                op(LCONST_0 + (int) value);
+            } else {
+                bytes.write(LDC2_W);
+                u2(longConstant(value));
+                stack(2);
+            }
+        }
+
+        /**
+         * Pushes a class constant, given its internal name.
+         */
+        void ldcClass(String name) {
+            bytes.write(LDC_W);
+            u2(classConstant(name));
+            stack(1);
+        }
+
+        void local(int opcode, int index) {
+            if (index > 0xFF) {
+                bytes.write(WIDE);
+                bytes.write(opcode);
+                u2(index);
+            } else {
+                bytes.write(opcode);
+                bytes.write(index);
+            }
+            boolean wide = opcode == LLOAD || opcode == LSTORE;
+            stack((wide ? 2 : 1) * (opcode == ALOAD || opcode == LLOAD ? 1 : -1));
+            locals(index + (wide ? 2 : 1));
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            bytes.write(opcode);
+            u2(memberConstant(CONSTANT_FIELDREF, owner, name, descriptor));
+            stack(opcode == GETSTATIC ? 1 : -1);
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            int arguments = arguments(descriptor);
+            bytes.write(opcode);
+            if (opcode == INVOKEINTERFACE) {
+                u2(memberConstant(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor));
+                bytes.write(arguments + 1);
+                bytes.write(0);
+            } else {
+                u2(memberConstant(CONSTANT_METHODREF, owner, name, descriptor));
+            }
+            int result = descriptor.endsWith(")V") ? 0 : descriptor.endsWith(")J") ? 2 : 1;
+            stack(result - arguments - (opcode == INVOKESTATIC ? 0 : 1));
+        }
+
+        /**
+         * Adds a {@code CHECKCAST} or {@code ANEWARRAY} of a class, given its
+         * internal name.
+         */
+        void type(int opcode, String name) {
+            bytes.write(opcode);
+            u2(classConstant(name));
+        }
+
+        Label label() {
+            Label label = new Label(depth);
+            labels.add(label);
+            return label;
+        }
+
+        /**
+         * Adds a jump to {@code label}, which pops an int unless it is a
+         * {@code GOTO}.
+         */
+        void jump(int opcode, Label label) {
+            if (opcode != GOTO) {
+                stack(-1);
+            }
+            label.jumps.add(bytes.size());
+            bytes.write(opcode);
+            u2(0);
+            if (opcode == GOTO) {
+                depth = -1;
+            }
+        }
+
+        void bind(Label label) {
+            label.position = bytes.size();
+            if (depth < 0 && !label.jumps.isEmpty()) {
+                depth = label.depth;
+            }
+        }
+
+        /**
+         * Binds a label which is only jumped to later, from the end of a loop.
+         */
+        void loop(Label label) {
+            label.position = bytes.size();
+            depth = label.depth;
+        }
+
+        private void stack(int effect) {
+            if (depth < 0) {
+                throw new IllegalStateException("Unreachable code");
+            }
+            depth += effect;
+            maxStack = Math.max(maxStack, depth);
+        }
+
+        private static void write(ByteArrayOutputStream output, int value, int size) {
+            for (int shift = 8 * (size - 1); shift >= 0; shift -= 8) {
+                output.write(value >>> shift);
+            }
+        }
+
+        private void u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+        }
+
+        /**
+         * Returns the code with every jump pointing at its label, widening
+         * the jumps whose offset does not fit in 16 bits. Widening a jump
+         * moves the code after it, which can push other jumps out of range,
+         * so jumps are widened until none more need to be.
+         */
+        private byte[] link() {
+            TreeMap<Integer, Label> sorted = new TreeMap<>();
+            for (Label label : labels) {
+                if (label.position < 0 && !label.jumps.isEmpty()) {
+                    throw new IllegalStateException("Invalid jump.");
+                }
+                for (int jump : label.jumps) {
+                    sorted.put(jump, label);
+                }
+            }
+            int count = sorted.size();
+            int[] jumps = new int[count];
+            Label[] targets = new Label[count];
+            int index = 0;
+            for (Map.Entry<Integer, Label> entry : sorted.entrySet()) {
+                jumps[index] = entry.getKey();
+                targets[index++] = entry.getValue();
+            }
+            byte[] code = bytes.toByteArray();
+            // The growth of the code before each jump (and after the last).
+            int[] growth = new int[count + 1];
+            boolean[] wide = new boolean[count];
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int i = 0; i < count; i++) {
+                    growth[i + 1] = growth[i] + (wide[i] ? (code[jumps[i]] & 0xFF) == GOTO ? 2 : 5 : 0);
+                }
+                for (int i = 0; i < count; i++) {
+                    int offset = moved(targets[i].position, jumps, growth) - (jumps[i] + growth[i]);
+                    if (!wide[i] && offset != (short) offset) {
+                        wide[i] = true;
+                        changed = true;
+                    }
+                }
+            }
+            ByteArrayOutputStream linked = new ByteArrayOutputStream(code.length + growth[count]);
+            int copied = 0;
+            for (int i = 0; i < count; i++) {
+                linked.write(code, copied, jumps[i] - copied);
+                int opcode = code[jumps[i]] & 0xFF;
+                int position = jumps[i] + growth[i];
+                int target = moved(targets[i].position, jumps, growth);
+                if (!wide[i]) {
+                    linked.write(opcode);
+                    write(linked, target - position, 2);
+                } else if (opcode == GOTO) {
+                    linked.write(GOTO_W);
+                    write(linked, target - position, 4);
+                } else {
+                    // The opposite condition of IFEQ to IFLE is the opcode
+                    // paired with it, skipping this instruction and a GOTO_W.
+                    linked.write(IFEQ + ((opcode - IFEQ) ^ 1));
+                    write(linked, 8, 2);
+                    linked.write(GOTO_W);
+                    write(linked, target - (position + 3), 4);
+                }
+                copied = jumps[i] + 3;
+            }
+            linked.write(code, copied, code.length - copied);
+            return linked.toByteArray();
+        }
+
+        private void write(DataOutputStream output, int codeName) throws IOException {
+            byte[] code = link();
+            if (code.length > 0xFFFF) {
+                throw new LimitException("The method is too large.");
+            }
+            output.writeShort(access);
+            output.writeShort(name);
+            output.writeShort(descriptor);
+            output.writeShort(1);
+            output.writeShort(codeName);
+            output.writeInt(12 + code.length);
+            output.writeShort(maxStack);
+            output.writeShort(maxLocals);
+            output.writeInt(code.length);
+            output.write(code);
+            output.writeShort(0);
+            output.writeShort(0);
+        }
+
+    }
+
+    /**
+     * Returns where a position in the code is moved to once the jumps before
+     * it have grown by {@code growth}, indexed as the sorted {@code jumps}.
+     */
+    private static int moved(int position, int[] jumps, int[] growth) {
+        int low = 0;
+        int high = jumps.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (jumps[middle] < position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return position + growth[low];
+    }
+
+    /**
+     * Returns the number of argument slots of a descriptor which only uses
+     * references, {@code int}, {@code long} and {@code boolean}.
+     */
+    private static int arguments(String descriptor) {
+        int count = 0;
+        for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+            char c = descriptor.charAt(i);
+            while (c == '[') {
+                c = descriptor.charAt(++i);
+            }
+            if (c == 'L') {
+                i = descriptor.indexOf(';', i);
+            } else if (c == 'J' || c == 'D') {
+                count++;
+            }
+            count++;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,567 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * The runtime shared by the evaluators of a program: the builtin functions,
+ * where output goes, and the semantics of values and operators.
+ *
+ * Values are plain Java objects. {@code NIL} is {@code null}, booleans are
+ * {@link Boolean}s, integers are {@link BigInteger}s, decimals are {@link
+ * BigDecimal}s, and characters and strings are {@link Character}s and {@link
+ * String}s. Builtins may return any other object, such as the {@link Range}
+ * from {@code range} or the {@link List} from {@code list}.
+ *
+ * Calls and accesses with a receiver, as in {@code obj.name(args)} and {@code
+ * obj.name}, are dispatched by reflection to the public methods and fields
+ * of the receiver's class. Integer arguments are converted to {@code int} and
+ * {@code long} parameters where they fit, and primitive and boxed numbers
+ * returned are converted back to integers and decimals, so that for example
+ * {@code list.get(0)} and {@code list.size()} behave as expected.
+ *
+ * The default builtins are {@code print(value)}, which writes a value and a
+ * newline to the output, {@code range(start, end)}, which returns the
+ * integers from {@code start} (inclusive) to {@code end} (exclusive), and
+ * {@code list(values...)}, which returns a mutable list of its arguments.
+ */
+public final class Environment {
+
+    /**
+     * A builtin function, called with its evaluated arguments.
+     */
+    public interface Function {
+
+        Object invoke(Object[] arguments);
+
+    }
+
+    /**
+     * The integers from {@code start} (inclusive) to {@code end} (exclusive),
+     * iterated in increasing order.
+     */
+    public static final class Range implements Iterable<BigInteger> {
+
+        private final BigInteger start;
+        private final BigInteger end;
+
+        public Range(BigInteger start, BigInteger end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public BigInteger getStart() {
+            return start;
+        }
+
+        public BigInteger getEnd() {
+            return end;
+        }
+
+        @Override
+        public Iterator<BigInteger> iterator() {
+            return new Iterator<>() {
+
+                private BigInteger next = start;
+
+                @Override
+                public boolean hasNext() {
+                    return next.compareTo(end) < 0;
+                }
+
+                @Override
+                public BigInteger next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    BigInteger current = next;
+                    next = next.add(BigInteger.ONE);
+                    return current;
+                }
+
+            };
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Range &&
+                    start.equals(((Range) obj).start) &&
+                    end.equals(((Range) obj).end);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return "Range{" +
+                    "start=" + start +
+                    ", end=" + end +
+                    '}';
+        }
+
+    }
+
+    private final Appendable out;
+    private final Map<String, Function> functions = new HashMap<>();
+
+    /**
+     * Creates an environment with the default builtins, printing to {@link
+     * System#out}.
+     */
+    public Environment() {
+        this(System.out);
+    }
+
+    /**
+     * Creates an environment with the default builtins, printing to {@code
+     * out}.
+     */
+    public Environment(Appendable out) {
+        this.out = out;
+        define("print", 1, arguments -> {
+            print(toString(arguments[0]));
+            return null;
+        });
+        define("range", 2, arguments -> new Range(
+                requireType(BigInteger.class, arguments[0]),
+                requireType(BigInteger.class, arguments[1])));
+        define("list", -1, arguments -> new ArrayList<>(Arrays.asList(arguments)));
+    }
+
+    /**
+     * Defines a builtin function taking {@code arity} arguments, or any
+     * number of arguments if {@code arity} is {@code -1}, replacing any
+     * previous definition. A builtin with a fixed arity takes precedence over
+     * one with any arity, and a method defined by a program with the same
+     * name and arity takes precedence over both.
+     */
+    public void define(String name, int arity, Function function) {
+        if (arity < -1) {
+            throw new IllegalArgumentException("Invalid arity " + arity);
+        }
+        functions.put(name + "/" + (arity < 0 ? "*" : arity), function);
+    }
+
+    /**
+     * Returns the builtin function with the given name which accepts {@code
+     * arity} arguments, or {@code null} if there is none.
+     */
+    public Function lookup(String name, int arity) {
+        Function function = functions.get(name + "/" + arity);
+        return function != null ? function : functions.get(name + "/*");
+    }
+
+    /**
+     * Writes {@code line} and a newline to the output.
+     */
+    public void print(String line) {
+        try {
+            out.append(line).append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns {@code value} cast to {@code type}, throwing an {@link
+     * EvaluationException} if it is not an instance.
+     */
+    public static <T> T requireType(Class<T> type, Object value) {
+        if (!type.isInstance(value)) {
+            throw new EvaluationException("Expected type " + type.getName() + ", received " + typeName(value) + ".");
+        }
+        return type.cast(value);
+    }
+
+    /**
+     * Returns {@code value} as written by {@code print}: {@code NIL}, {@code
+     * TRUE} and {@code FALSE} for those values, the elements of an iterable
+     * in brackets, and the {@link Object#toString()} of anything else.
+     */
+    public static String toString(Object value) {
+        if (value == null) {
+            return "NIL";
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? "TRUE" : "FALSE";
+        } else if (value instanceof List) {
+            StringBuilder builder = new StringBuilder("[");
+            for (Object element : (List<?>) value) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(toString(element));
+            }
+            return builder.append(']').toString();
+        }
+        return value.toString();
+    }
+
+    /**
+     * Returns the sum of two integers or two decimals, or the concatenation
+     * of the values (as by {@link #toString(Object)}) if either is a string.
+     */
+    public static Object add(Object left, Object right) {
+        if (left instanceof String || right instanceof String) {
+            return toString(left) + toString(right);
+        } else if (left instanceof BigInteger && right instanceof BigInteger) {
+            return ((BigInteger) left).add((BigInteger) right);
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            return ((BigDecimal) left).add((BigDecimal) right);
+        }
+        throw numeric("+", left, right);
+    }
+
+    public static Object subtract(Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            return ((BigInteger) left).subtract((BigInteger) right);
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            return ((BigDecimal) left).subtract((BigDecimal) right);
+        }
+        throw numeric("-", left, right);
+    }
+
+    public static Object multiply(Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            return ((BigInteger) left).multiply((BigInteger) right);
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            return ((BigDecimal) left).multiply((BigDecimal) right);
+        }
+        throw numeric("*", left, right);
+    }
+
+    /**
+     * Returns the quotient of two integers, truncated toward zero, or of two
+     * decimals, rounded half even to the scale of {@code left}.
+     */
+    public static Object divide(Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            if (((BigInteger) right).signum() == 0) {
+                throw new EvaluationException("Division by zero.");
+            }
+            return ((BigInteger) left).divide((BigInteger) right);
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            if (((BigDecimal) right).signum() == 0) {
+                throw new EvaluationException("Division by zero.");
+            }
+            return ((BigDecimal) left).divide((BigDecimal) right, RoundingMode.HALF_EVEN);
+        }
+        throw numeric("/", left, right);
+    }
+
+    /**
+     * Compares two values of the same comparable type, such as two integers
+     * or two strings.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static int compare(Object left, Object right) {
+        if (!(left instanceof Comparable) || right == null || left.getClass() != right.getClass()) {
+            throw new EvaluationException("Expected comparable operands of the same type, received "
+                    + typeName(left) + " and " + typeName(right) + ".");
+        }
+        return ((Comparable) left).compareTo(right);
+    }
+
+    /**
+     * Returns the result of calling the public method {@code name} of {@code
+     * receiver} with {@code arguments}.
+     */
+    public static Object invoke(Object receiver, String name, Object[] arguments) {
+        Method method = findMethod(receiver, name, arguments);
+        if (method == null) {
+            throw new EvaluationException("The method " + name + "/" + arguments.length
+                    + " is not defined on type " + typeName(receiver) + ".");
+        }
+        return invoke(method, receiver, arguments);
+    }
+
+    /**
+     * Returns the public method {@code name} of the receiver's class which
+     * accepts {@code arguments}, preferring one which needs no conversions,
+     * or {@code null} if there is none. The method is declared by a public
+     * class or interface, so it can be invoked even if the receiver's class
+     * is not public.
+     */
+    public static Method findMethod(Object receiver, String name, Object[] arguments) {
+        if (receiver == null) {
+            throw new EvaluationException("Expected a receiver, received NIL.");
+        }
+        Method converting = null;
+        for (Method method : receiver.getClass().getMethods()) {
+            if (!method.getName().equals(name) || method.getParameterCount() != arguments.length) {
+                continue;
+            }
+            int accepts = accepts(method.getParameterTypes(), arguments);
+            if (accepts == EXACT) {
+                return accessible(receiver.getClass(), method);
+            } else if (accepts == CONVERTED && converting == null) {
+                converting = method;
+            }
+        }
+        return converting != null ? accessible(receiver.getClass(), converting) : null;
+    }
+
+    /**
+     * Invokes a method found by {@link #findMethod(Object, String, Object[])},
+     * converting the arguments and result.
+     */
+    public static Object invoke(Method method, Object receiver, Object[] arguments) {
+        Class<?>[] types = method.getParameterTypes();
+        Object[] converted = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            converted[i] = convert(types[i], arguments[i]);
+        }
+        try {
+            return normalize(method.invoke(receiver, converted));
+        } catch (InvocationTargetException e) {
+            throw new EvaluationException("The method " + method.getName() + " failed: " + e.getCause(), e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new EvaluationException("The method " + method.getName() + " is not accessible.", e);
+        }
+    }
+
+    /**
+     * Returns the value of the public field {@code name} of {@code receiver},
+     * or the result of its public getter ({@code getName} or {@code isName}).
+     */
+    public static Object getField(Object receiver, String name) {
+        Member getter = findGetter(receiver, name);
+        if (getter == null) {
+            throw new EvaluationException("The field " + name + " is not defined on type " + typeName(receiver) + ".");
+        }
+        return get(getter, receiver);
+    }
+
+    /**
+     * Sets the public, non-final field {@code name} of {@code receiver}, or
+     * calls its public setter ({@code setName}).
+     */
+    public static void setField(Object receiver, String name, Object value) {
+        Member setter = findSetter(receiver, name, value);
+        if (setter == null) {
+            throw new EvaluationException("The field " + name + " is not assignable on type " + typeName(receiver) + ".");
+        }
+        set(setter, receiver, value);
+    }
+
+    /**
+     * Returns the public field {@code name} of the receiver's class, or else
+     * its public getter, or {@code null} if there is neither.
+     */
+    static Member findGetter(Object receiver, String name) {
+        Field field = findField(receiver, name);
+        if (field != null) {
+            return field;
+        }
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (String getter : new String[] {"get" + suffix, "is" + suffix}) {
+            Method method = findMethod(receiver, getter, new Object[0]);
+            if (method != null) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of a field or getter found by {@link
+     * #findGetter(Object, String)}.
+     */
+    static Object get(Member getter, Object receiver) {
+        if (getter instanceof Method) {
+            return invoke((Method) getter, receiver, new Object[0]);
+        }
+        try {
+            return normalize(((Field) getter).get(receiver));
+        } catch (IllegalAccessException e) {
+            throw new EvaluationException("The field " + getter.getName() + " is not accessible.", e);
+        }
+    }
+
+    /**
+     * Returns the public, non-final field {@code name} of the receiver's
+     * class, or else its public setter accepting {@code value}, or {@code
+     * null} if there is neither.
+     */
+    static Member findSetter(Object receiver, String name, Object value) {
+        Field field = findField(receiver, name);
+        if (field != null && !Modifier.isFinal(field.getModifiers())) {
+            return field;
+        }
+        return findMethod(receiver, "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1), new Object[] {value});
+    }
+
+    /**
+     * Assigns a field or calls a setter found by {@link #findSetter(Object,
+     * String, Object)}.
+     */
+    static void set(Member setter, Object receiver, Object value) {
+        if (setter instanceof Method) {
+            invoke((Method) setter, receiver, new Object[] {value});
+            return;
+        }
+        Field field = (Field) setter;
+        try {
+            field.set(receiver, convert(field.getType(), value));
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            throw new EvaluationException("The field " + field.getName() + " cannot be assigned " + typeName(value) + ".", e);
+        }
+    }
+
+    /**
+     * Returns whether a method found by {@link #findMethod(Object, String,
+     * Object[])} accepts arguments of the same classes as {@code arguments}
+     * without conversions, in which case it would be found for any of them.
+     */
+    static boolean isExact(Method method, Object[] arguments) {
+        return accepts(method.getParameterTypes(), arguments) == EXACT;
+    }
+
+    /**
+     * Returns whether {@code method} accepts {@code arguments}, possibly
+     * with conversions.
+     */
+    static boolean accepts(Method method, Object[] arguments) {
+        return accepts(method.getParameterTypes(), arguments) != REJECTED;
+    }
+
+    private static Field findField(Object receiver, String name) {
+        if (receiver == null) {
+            throw new EvaluationException("Expected a receiver, received NIL.");
+        }
+        try {
+            Field field = receiver.getClass().getField(name);
+            return Modifier.isPublic(field.getDeclaringClass().getModifiers()) ? field : null;
+        } catch (NoSuchFieldException e) {
+            return null;
+        }
+    }
+
+    private static final int REJECTED = 0;
+    private static final int CONVERTED = 1;
+    private static final int EXACT = 2;
+
+    private static int accepts(Class<?>[] types, Object[] arguments) {
+        int result = EXACT;
+        for (int i = 0; i < types.length; i++) {
+            Class<?> type = types[i];
+            Object argument = arguments[i];
+            if (argument == null ? !type.isPrimitive() : box(type).isInstance(argument)) {
+                continue;
+            } else if (argument instanceof BigInteger && (type == int.class || type == Integer.class)
+                    && ((BigInteger) argument).bitLength() < 32) {
+                result = CONVERTED;
+            } else if (argument instanceof BigInteger && (type == long.class || type == Long.class)
+                    && ((BigInteger) argument).bitLength() < 64) {
+                result = CONVERTED;
+            } else if (argument instanceof BigDecimal && (type == double.class || type == Double.class)) {
+                result = CONVERTED;
+            } else {
+                return REJECTED;
+            }
+        }
+        return result;
+    }
+
+    private static Object convert(Class<?> type, Object value) {
+        if (value instanceof BigInteger && (type == int.class || type == Integer.class)) {
+            return ((BigInteger) value).intValueExact();
+        } else if (value instanceof BigInteger && (type == long.class || type == Long.class)) {
+            return ((BigInteger) value).longValueExact();
+        } else if (value instanceof BigDecimal && (type == double.class || type == Double.class)) {
+            return ((BigDecimal) value).doubleValue();
+        }
+        return value;
+    }
+
+    /**
+     * Converts a value returned from Java to a value of the language.
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return BigInteger.valueOf(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            return BigDecimal.valueOf(((Number) value).doubleValue());
+        }
+        return value;
+    }
+
+    private static Class<?> box(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == char.class) {
+            return Character.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        }
+        return Byte.class;
+    }
+
+    /**
+     * Returns {@code method} if its declaring class is public, and otherwise
+     * the same method as declared by a public superclass or interface of
+     * {@code type}, or {@code null} if there is none.
+     */
+    private static Method accessible(Class<?> type, Method method) {
+        if (Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            return method;
+        }
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            if (Modifier.isPublic(current.getModifiers())) {
+                try {
+                    Method found = current.getMethod(method.getName(), method.getParameterTypes());
+                    if (Modifier.isPublic(found.getDeclaringClass().getModifiers())) {
+                        return found;
+                    }
+                } catch (NoSuchMethodException ignored) {
+                    // Not declared by this class, try its interfaces.
+                }
+            }
+            for (Class<?> parent : current.getInterfaces()) {
+                Method found = accessible(parent, method);
+                if (found != null && Modifier.isPublic(found.getDeclaringClass().getModifiers())) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static EvaluationException numeric(String operator, Object left, Object right) {
+        return new EvaluationException("Expected numeric operands of the same type for " + operator
+                + ", received " + typeName(left) + " and " + typeName(right) + ".");
+    }
+
+    private static String typeName(Object value) {
+        return value == null ? "NIL" : value.getClass().getName();
+    }
+
+}
@@ -0,0 +1,816 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact alternative to {@link Ast} which stores a whole tree in a few
+ * primitive arrays instead of one object per node. Each node is an {@code
+ * int} id with a kind, a first child, a next sibling (both {@code -1} if
+ * absent), and a payload, which indexes a table of the distinct names,
+ * operators and literal values in the program.
+ *
+ * The tree is built from the events of a {@link StreamingParser} by a {@link
+ * Builder}, so neither the token list nor any {@link Ast} object is created
+ * along the way. Ids are assigned in post-order, so children always have
+ * smaller ids than their parents and the root is the last node.
+ *
+ * Nodes are read through view objects (see {@link #getSource()}) which mirror
+ * the getters of the corresponding {@link Ast} classes and are created on
+ * demand; {@link Node#toAst()} converts any subtree to an {@link Ast}. The
+ * layout of children for each kind is:
+ *
+ * <ul>
+ *     <li>{@link #SOURCE}: fields and methods, in source order.</li>
+ *     <li>{@link #FIELD}, {@link #DECLARATION}: the value, if any.</li>
+ *     <li>{@link #METHOD}: a {@link #PARAMETER} for each parameter, then the
+ *     statements.</li>
+ *     <li>{@link #IF}: the condition, then a {@link #BLOCK} each for the then
+ *     and else statements.</li>
+ *     <li>{@link #FOR}, {@link #WHILE}: the value or condition, then the
+ *     statements.</li>
+ *     <li>{@link #ACCESS}, {@link #FUNCTION}: the receiver if {@link
+ *     #hasReceiver(int)}, then any arguments.</li>
+ *     <li>All others: their operands in the order of the {@link Ast}
+ *     constructor.</li>
+ * </ul>
+ */
+public final class FlatAst {
+
+    public static final int SOURCE = 0;
+    public static final int FIELD = 1;
+    public static final int METHOD = 2;
+    public static final int PARAMETER = 3;
+    public static final int BLOCK = 4;
+    public static final int EXPRESSION = 5;
+    public static final int DECLARATION = 6;
+    public static final int ASSIGNMENT = 7;
+    public static final int IF = 8;
+    public static final int FOR = 9;
+    public static final int WHILE = 10;
+    public static final int RETURN = 11;
+    public static final int LITERAL = 12;
+    public static final int GROUP = 13;
+    public static final int BINARY = 14;
+    public static final int ACCESS = 15;
+    public static final int FUNCTION = 16;
+
+    /**
+     * Set in the stored kind of an access or function with a receiver.
+     */
+    private static final int RECEIVER = 0x40;
+
+    private final byte[] kinds;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] payload;
+    private final Object[] constants;
+
+    private FlatAst(byte[] kinds, int[] firstChild, int[] nextSibling, int[] payload, Object[] constants) {
+        this.kinds = kinds;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.payload = payload;
+        this.constants = constants;
+    }
+
+    /**
+     * Parses the tokens from {@code lexer} into a flat tree.
+     */
+    public static FlatAst parse(Lexer lexer) throws ParseException {
+        Builder builder = new Builder();
+        new StreamingParser(lexer, builder).parseSource();
+        return builder.build();
+    }
+
+    /**
+     * Parses {@code tokens} into a flat tree.
+     */
+    public static FlatAst parse(List<Token> tokens) throws ParseException {
+        Builder builder = new Builder();
+        new StreamingParser(tokens, builder).parseSource();
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int size() {
+        return kinds.length;
+    }
+
+    /**
+     * Returns the id of the {@link #SOURCE} node.
+     */
+    public int getRoot() {
+        return kinds.length - 1;
+    }
+
+    public int getKind(int id) {
+        return kinds[id] & ~RECEIVER;
+    }
+
+    public boolean hasReceiver(int id) {
+        return (kinds[id] & RECEIVER) != 0;
+    }
+
+    public int getFirstChild(int id) {
+        return firstChild[id];
+    }
+
+    public int getNextSibling(int id) {
+        return nextSibling[id];
+    }
+
+    /**
+     * Returns the name, operator or literal value of a node, or {@code null}
+     * for kinds without a payload.
+     */
+    public Object getPayload(int id) {
+        return payload[id] < 0 ? null : constants[payload[id]];
+    }
+
+    public Source getSource() {
+        return new Source(this, getRoot());
+    }
+
+    private String getString(int id) {
+        return (String) constants[payload[id]];
+    }
+
+    /**
+     * Returns the id of the child at {@code index}, or {@code -1}.
+     */
+    private int child(int id, int index) {
+        int child = firstChild[id];
+        for (int i = 0; i < index && child >= 0; i++) {
+            child = nextSibling[child];
+        }
+        return child;
+    }
+
+    private Expr expr(int id) {
+        switch (getKind(id)) {
+            case LITERAL:
+                return new Expr.Literal(this, id);
+            case GROUP:
+                return new Expr.Group(this, id);
+            case BINARY:
+                return new Expr.Binary(this, id);
+            case ACCESS:
+                return new Expr.Access(this, id);
+            case FUNCTION:
+                return new Expr.Function(this, id);
+            default:
+                throw new IllegalStateException("Node " + id + " is not an expression");
+        }
+    }
+
+    private Stmt stmt(int id) {
+        switch (getKind(id)) {
+            case EXPRESSION:
+                return new Stmt.Expression(this, id);
+            case DECLARATION:
+                return new Stmt.Declaration(this, id);
+            case ASSIGNMENT:
+                return new Stmt.Assignment(this, id);
+            case IF:
+                return new Stmt.If(this, id);
+            case FOR:
+                return new Stmt.For(this, id);
+            case WHILE:
+                return new Stmt.While(this, id);
+            case RETURN:
+                return new Stmt.Return(this, id);
+            default:
+                throw new IllegalStateException("Node " + id + " is not a statement");
+        }
+    }
+
+    private Optional<Expr> optionalExpr(int id) {
+        return id < 0 ? Optional.empty() : Optional.of(expr(id));
+    }
+
+    private List<Stmt> statements(int first) {
+        List<Stmt> statements = new ArrayList<>();
+        for (int child = first; child >= 0; child = nextSibling[child]) {
+            statements.add(stmt(child));
+        }
+        return statements;
+    }
+
+    private static <T extends Ast> List<T> toAstList(List<? extends Node> nodes, Class<T> type) {
+        List<T> asts = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            asts.add(type.cast(node.toAst()));
+        }
+        return asts;
+    }
+
+    /**
+     * A view of a single node, which is only a reference to the tree and the
+     * node's id. Views are equal if they refer to the same node.
+     */
+    public static abstract class Node {
+
+        protected final FlatAst tree;
+        protected final int id;
+
+        private Node(FlatAst tree, int id) {
+            this.tree = tree;
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Returns an {@link Ast} equal to the one {@link Parser} would create
+         * for this subtree.
+         */
+        public abstract Ast toAst();
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Node &&
+                    tree == ((Node) obj).tree &&
+                    id == ((Node) obj).id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return toAst().toString();
+        }
+
+    }
+
+    public static final class Source extends Node {
+
+        private Source(FlatAst tree, int id) {
+            super(tree, id);
+        }
+
+        public List<Field> getFields() {
+            List<Field> fields = new ArrayList<>();
+            for (int child = tree.firstChild[id]; child >= 0; child = tree.nextSibling[child]) {
+                if (tree.getKind(child) == FIELD) {
+                    fields.add(new Field(tree, child));
+                }
+            }
+            return fields;
+        }
+
+        public List<Method> getMethods() {
+            List<Method> methods = new ArrayList<>();
+            for (int child = tree.firstChild[id]; child >= 0; child = tree.nextSibling[child]) {
+                if (tree.getKind(child) == METHOD) {
+                    methods.add(new Method(tree, child));
+                }
+            }
+            return methods;
+        }
+
+        @Override
+        public Ast.Source toAst() {
+            return new Ast.Source(toAstList(getFields(), Ast.Field.class), toAstList(getMethods(), Ast.Method.class));
+        }
+
+    }
+
+    public static final class Field extends Node {
+
+        private Field(FlatAst tree, int id) {
+            super(tree, id);
+        }
+
+        public String getName() {
+            return tree.getString(id);
+        }
+
+        public Optional<Expr> getValue() {
+            return tree.optionalExpr(tree.firstChild[id]);
+        }
+
+        @Override
+        public Ast.Field toAst() {
+            return new Ast.Field(getName(), getValue().map(Expr::toAst));
+        }
+
+    }
+
+    public static final class Method extends Node {
+
+        private Method(FlatAst tree, int id) {
+            super(tree, id);
+        }
+
+        public String getName() {
+            return tree.getString(id);
+        }
+
+        public List<String> getParameters() {
+            List<String> parameters = new ArrayList<>();
+            for (int child = tree.firstChild[id]; child >= 0 && tree.getKind(child) == PARAMETER; child = tree.nextSibling[child]) {
+                parameters.add(tree.getString(child));
+            }
+            return parameters;
+        }
+
+        public List<Stmt> getStatements() {
+            int child = tree.firstChild[id];
+            while (child >= 0 && tree.getKind(child) == PARAMETER) {
+                child = tree.nextSibling[child];
+            }
+            return tree.statements(child);
+        }
+
+        @Override
+        public Ast.Method toAst() {
+            return new Ast.Method(getName(), getParameters(), toAstList(getStatements(), Ast.Stmt.class));
+        }
+
+    }
+
+    public static abstract class Stmt extends Node {
+
+        private Stmt(FlatAst tree, int id) {
+            super(tree, id);
+        }
+
+        @Override
+        public abstract Ast.Stmt toAst();
+
+        public static final class Expression extends Stmt {
+
+            private Expression(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public Expr getExpression() {
+                return tree.expr(tree.firstChild[id]);
+            }
+
+            @Override
+            public Ast.Stmt.Expression toAst() {
+                return new Ast.Stmt.Expression(getExpression().toAst());
+            }
+
+        }
+
+        public static final class Declaration extends Stmt {
+
+            private Declaration(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public String getName() {
+                return tree.getString(id);
+            }
+
+            public Optional<Expr> getValue() {
+                return tree.optionalExpr(tree.firstChild[id]);
+            }
+
+            @Override
+            public Ast.Stmt.Declaration toAst() {
+                return new Ast.Stmt.Declaration(getName(), getValue().map(Expr::toAst));
+            }
+
+        }
+
+        public static final class Assignment extends Stmt {
+
+            private Assignment(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public Expr getReceiver() {
+                return tree.expr(tree.child(id, 0));
+            }
+
+            public Expr getValue() {
+                return tree.expr(tree.child(id, 1));
+            }
+
+            @Override
+            public Ast.Stmt.Assignment toAst() {
+                return new Ast.Stmt.Assignment(getReceiver().toAst(), getValue().toAst());
+            }
+
+        }
+
+        public static final class If extends Stmt {
+
+            private If(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public Expr getCondition() {
+                return tree.expr(tree.child(id, 0));
+            }
+
+            public List<Stmt> getThenStatements() {
+                return tree.statements(tree.firstChild[tree.child(id, 1)]);
+            }
+
+            public List<Stmt> getElseStatements() {
+                return tree.statements(tree.firstChild[tree.child(id, 2)]);
+            }
+
+            @Override
+            public Ast.Stmt.If toAst() {
+                return new Ast.Stmt.If(getCondition().toAst(),
+                        toAstList(getThenStatements(), Ast.Stmt.class),
+                        toAstList(getElseStatements(), Ast.Stmt.class));
+            }
+
+        }
+
+        public static final class For extends Stmt {
+
+            private For(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public String getName() {
+                return tree.getString(id);
+            }
+
+            public Expr getValue() {
+                return tree.expr(tree.child(id, 0));
+            }
+
+            public List<Stmt> getStatements() {
+                return tree.statements(tree.child(id, 1));
+            }
+
+            @Override
+            public Ast.Stmt.For toAst() {
+                return new Ast.Stmt.For(getName(), getValue().toAst(), toAstList(getStatements(), Ast.Stmt.class));
+            }
+
+        }
+
+        public static final class While extends Stmt {
+
+            private While(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public Expr getCondition() {
+                return tree.expr(tree.child(id, 0));
+            }
+
+            public List<Stmt> getStatements() {
+                return tree.statements(tree.child(id, 1));
+            }
+
+            @Override
+            public Ast.Stmt.While toAst() {
+                return new Ast.Stmt.While(getCondition().toAst(), toAstList(getStatements(), Ast.Stmt.class));
+            }
+
+        }
+
+        public static final class Return extends Stmt {
+
+            private Return(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public Expr getValue() {
+                return tree.expr(tree.firstChild[id]);
+            }
+
+            @Override
+            public Ast.Stmt.Return toAst() {
+                return new Ast.Stmt.Return(getValue().toAst());
+            }
+
+        }
+
+    }
+
+    public static abstract class Expr extends Node {
+
+        private Expr(FlatAst tree, int id) {
+            super(tree, id);
+        }
+
+        @Override
+        public abstract Ast.Expr toAst();
+
+        public static final class Literal extends Expr {
+
+            private Literal(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public Object getLiteral() {
+                return tree.getPayload(id);
+            }
+
+            @Override
+            public Ast.Expr.Literal toAst() {
+                return new Ast.Expr.Literal(getLiteral());
+            }
+
+        }
+
+        public static final class Group extends Expr {
+
+            private Group(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public Expr getExpression() {
+                return tree.expr(tree.firstChild[id]);
+            }
+
+            @Override
+            public Ast.Expr.Group toAst() {
+                return new Ast.Expr.Group(getExpression().toAst());
+            }
+
+        }
+
+        public static final class Binary extends Expr {
+
+            private Binary(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public String getOperator() {
+                return tree.getString(id);
+            }
+
+            public Expr getLeft() {
+                return tree.expr(tree.child(id, 0));
+            }
+
+            public Expr getRight() {
+                return tree.expr(tree.child(id, 1));
+            }
+
+            @Override
+            public Ast.Expr.Binary toAst() {
+                return new Ast.Expr.Binary(getOperator(), getLeft().toAst(), getRight().toAst());
+            }
+
+        }
+
+        public static final class Access extends Expr {
+
+            private Access(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public Optional<Expr> getReceiver() {
+                return tree.hasReceiver(id) ? Optional.of(tree.expr(tree.firstChild[id])) : Optional.empty();
+            }
+
+            public String getName() {
+                return tree.getString(id);
+            }
+
+            @Override
+            public Ast.Expr.Access toAst() {
+                return new Ast.Expr.Access(getReceiver().map(Expr::toAst), getName());
+            }
+
+        }
+
+        public static final class Function extends Expr {
+
+            private Function(FlatAst tree, int id) {
+                super(tree, id);
+            }
+
+            public Optional<Expr> getReceiver() {
+                return tree.hasReceiver(id) ? Optional.of(tree.expr(tree.firstChild[id])) : Optional.empty();
+            }
+
+            public String getName() {
+                return tree.getString(id);
+            }
+
+            public List<Expr> getArguments() {
+                List<Expr> arguments = new ArrayList<>();
+                int child = tree.hasReceiver(id) ? tree.nextSibling[tree.firstChild[id]] : tree.firstChild[id];
+                for (; child >= 0; child = tree.nextSibling[child]) {
+                    arguments.add(tree.expr(child));
+                }
+                return arguments;
+            }
+
+            @Override
+            public Ast.Expr.Function toAst() {
+                return new Ast.Expr.Function(getReceiver().map(Expr::toAst), getName(), toAstList(getArguments(), Ast.Expr.class));
+            }
+
+        }
+
+    }
+
+    /**
+     * Builds a {@link FlatAst} from the events of a {@link StreamingParser}.
+     * Completed nodes are kept on a stack until their parent is reported,
+     * at which point they are linked as its children; the start of each
+     * statement and method (and the {@code ELSE} of an {@code IF}) is marked
+     * on a second stack so the parent knows how many children it has.
+     */
+    public static final class Builder implements ParseListener {
+
+        private byte[] kinds = new byte[64];
+        private int[] firstChild = new int[64];
+        private int[] nextSibling = new int[64];
+        private int[] payload = new int[64];
+        private int size = 0;
+
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> indices = new HashMap<>();
+
+        private int[] stack = new int[64];
+        private int top = 0;
+        private int[] marks = new int[32];
+        private int depth = 0;
+
+        /**
+         * Returns the completed tree, with all fields and methods reported so
+         * far as children of the {@link #SOURCE} node. A builder builds only
+         * a single tree.
+         */
+        public FlatAst build() {
+            if (depth != 0) {
+                throw new IllegalStateException("Incomplete method or statement");
+            }
+            create(SOURCE, -1, 0);
+            top = 0;
+            return new FlatAst(
+                    Arrays.copyOf(kinds, size),
+                    Arrays.copyOf(firstChild, size),
+                    Arrays.copyOf(nextSibling, size),
+                    Arrays.copyOf(payload, size),
+                    constants.toArray()
+            );
+        }
+
+        @Override
+        public void onField(String name, boolean initialized) {
+            push(create(FIELD, constant(name), initialized ? top - 1 : top));
+        }
+
+        @Override
+        public void onMethodStart(String name) {
+            mark();
+        }
+
+        @Override
+        public void onParameter(String name) {
+            push(create(PARAMETER, constant(name), top));
+        }
+
+        @Override
+        public void onMethodEnd(String name) {
+            int start = marks[--depth * 2];
+            push(create(METHOD, constant(name), start));
+        }
+
+        @Override
+        public void onStatementStart() {
+            mark();
+        }
+
+        @Override
+        public void onElse() {
+            marks[(depth - 1) * 2 + 1] = top;
+        }
+
+        @Override
+        public void onStatement(Kind kind, String name) {
+            depth--;
+            int start = marks[depth * 2];
+            switch (kind) {
+                case EXPRESSION:
+                    push(create(EXPRESSION, -1, start));
+                    break;
+                case DECLARATION:
+                    push(create(DECLARATION, constant(name), start));
+                    break;
+                case ASSIGNMENT:
+                    push(create(ASSIGNMENT, -1, start));
+                    break;
+                case IF:
+                    int split = marks[depth * 2 + 1] < 0 ? top : marks[depth * 2 + 1];
+                    int elseBlock = create(BLOCK, -1, split);
+                    int thenBlock = create(BLOCK, -1, start + 1);
+                    push(thenBlock);
+                    push(elseBlock);
+                    push(create(IF, -1, start));
+                    break;
+                case FOR:
+                    push(create(FOR, constant(name), start));
+                    break;
+                case WHILE:
+                    push(create(WHILE, -1, start));
+                    break;
+                case RETURN:
+                    push(create(RETURN, -1, start));
+                    break;
+                default:
+                    throw new AssertionError("Unknown statement kind: " + kind);
+            }
+        }
+
+        @Override
+        public void onLiteral(Object literal) {
+            push(create(LITERAL, constant(literal), top));
+        }
+
+        @Override
+        public void onGroup() {
+            push(create(GROUP, -1, top - 1));
+        }
+
+        @Override
+        public void onBinary(String operator) {
+            push(create(BINARY, constant(operator), top - 2));
+        }
+
+        @Override
+        public void onAccess(String name, boolean hasReceiver) {
+            push(create(hasReceiver ? ACCESS | RECEIVER : ACCESS, constant(name), hasReceiver ? top - 1 : top));
+        }
+
+        @Override
+        public void onCall(String name, boolean hasReceiver, int arguments) {
+            int start = top - arguments - (hasReceiver ? 1 : 0);
+            push(create(hasReceiver ? FUNCTION | RECEIVER : FUNCTION, constant(name), start));
+        }
+
+        /**
+         * Creates a node whose children are the nodes on the stack from
+         * {@code start} to the top, which are popped.
+         */
+        private int create(int kind, int constant, int start) {
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                firstChild = Arrays.copyOf(firstChild, size * 2);
+                nextSibling = Arrays.copyOf(nextSibling, size * 2);
+                payload = Arrays.copyOf(payload, size * 2);
+            }
+            for (int i = start; i < top - 1; i++) {
+                nextSibling[stack[i]] = stack[i + 1];
+            }
+            int id = size++;
+            kinds[id] = (byte) kind;
+            firstChild[id] = start < top ? stack[start] : -1;
+            nextSibling[id] = -1;
+            payload[id] = constant;
+            top = start;
+            return id;
+        }
+
+        private void push(int id) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top++] = id;
+        }
+
+        /**
+         * Marks the current top of the stack as the start of a method or
+         * statement, with no {@code ELSE} yet.
+         */
+        private void mark() {
+            if (depth * 2 == marks.length) {
+                marks = Arrays.copyOf(marks, depth * 4);
+            }
+            marks[depth * 2] = top;
+            marks[depth * 2 + 1] = -1;
+            depth++;
+        }
+
+        private int constant(Object value) {
+            Integer index = indices.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                indices.put(value, index);
+            }
+            return index;
+        }
+
+    }
+
+}
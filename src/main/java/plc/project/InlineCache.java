@@ -0,0 +1,177 @@
+package plc.project;
+
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+
+/**
+ * Caches the lookups of {@link Environment} at a single site of a program
+ * which calls a method, reads a field or assigns a field of a receiver, so
+ * that executing the site again with a receiver of a class seen before uses
+ * the member found before.
+ *
+ * Entries are keyed on the class of the receiver and the classes of the
+ * arguments (or of the assigned value), which determine the member found,
+ * except when the member needs its arguments converted (such as an integer
+ * passed as an {@code int}). Whether those accept their arguments depends on
+ * their values, so they are only cached if the method is not overloaded, and
+ * are checked again on every execution.
+ *
+ * A site starts out empty, is monomorphic or polymorphic while it has up to
+ * {@link #LIMIT} entries, and then becomes megamorphic, looking the member up
+ * on every execution as without a cache.
+ *
+ * Each site has its own cache, used for a single kind of operation. A cache
+ * is not thread-safe, like the programs which use it.
+ */
+final class InlineCache {
+
+    static final int LIMIT = 4;
+
+    private static final Entry[] EMPTY = new Entry[0];
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private static final class Entry {
+
+        private final Class<?> receiver;
+        private final Class<?>[] arguments;
+        private final Member member;
+        private final boolean exact;
+
+        private Entry(Class<?> receiver, Class<?>[] arguments, Member member, boolean exact) {
+            this.receiver = receiver;
+            this.arguments = arguments;
+            this.member = member;
+            this.exact = exact;
+        }
+
+        private boolean matches(Class<?> receiver, Object[] arguments) {
+            if (this.receiver != receiver || this.arguments.length != arguments.length) {
+                return false;
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                if (this.arguments[i] != (arguments[i] != null ? arguments[i].getClass() : null)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    private final String name;
+    private Entry[] entries = EMPTY;
+
+    InlineCache(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the number of entries, or {@code -1} if the site is
+     * megamorphic.
+     */
+    int size() {
+        return entries != null ? entries.length : -1;
+    }
+
+    /**
+     * As {@link Environment#invoke(Object, String, Object[])} with this
+     * site's name.
+     */
+    Object invoke(Object receiver, Object[] arguments) {
+        Entry entry = find(receiver, arguments);
+        if (entry != null && (entry.exact || Environment.accepts((Method) entry.member, arguments))) {
+            return Environment.invoke((Method) entry.member, receiver, arguments);
+        } else if (entry == null && entries != null && receiver != null) {
+            Method method = Environment.findMethod(receiver, name, arguments);
+            if (method != null) {
+                add(receiver, arguments, method);
+                return Environment.invoke(method, receiver, arguments);
+            }
+        }
+        return Environment.invoke(receiver, name, arguments);
+    }
+
+    /**
+     * As {@link Environment#getField(Object, String)} with this site's name.
+     */
+    Object getField(Object receiver) {
+        Object[] arguments = NO_ARGUMENTS;
+        Entry entry = find(receiver, arguments);
+        if (entry != null) {
+            return Environment.get(entry.member, receiver);
+        } else if (entries != null && receiver != null) {
+            Member getter = Environment.findGetter(receiver, name);
+            if (getter != null) {
+                add(receiver, arguments, getter);
+                return Environment.get(getter, receiver);
+            }
+        }
+        return Environment.getField(receiver, name);
+    }
+
+    /**
+     * As {@link Environment#setField(Object, String, Object)} with this
+     * site's name.
+     */
+    void setField(Object receiver, Object value) {
+        Object[] arguments = {value};
+        Entry entry = find(receiver, arguments);
+        if (entry != null && (entry.exact || Environment.accepts((Method) entry.member, arguments))) {
+            Environment.set(entry.member, receiver, value);
+            return;
+        } else if (entry == null && entries != null && receiver != null) {
+            Member setter = Environment.findSetter(receiver, name, value);
+            if (setter != null) {
+                add(receiver, arguments, setter);
+                Environment.set(setter, receiver, value);
+                return;
+            }
+        }
+        Environment.setField(receiver, name, value);
+    }
+
+    private Entry find(Object receiver, Object[] arguments) {
+        Entry[] entries = this.entries;
+        if (entries == null || receiver == null) {
+            return null;
+        }
+        Class<?> type = receiver.getClass();
+        for (Entry entry : entries) {
+            if (entry.matches(type, arguments)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void add(Object receiver, Object[] arguments, Member member) {
+        boolean exact = !(member instanceof Method) || Environment.isExact((Method) member, arguments);
+        if (!exact && isOverloaded((Method) member, receiver.getClass())) {
+            // Another overload might be found for other arguments of the
+            // same classes, so the lookup is not cached.
+            return;
+        } else if (entries.length == LIMIT) {
+            entries = null;
+            return;
+        }
+        Class<?>[] types = new Class<?>[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            types[i] = arguments[i] != null ? arguments[i].getClass() : null;
+        }
+        Entry[] grown = new Entry[entries.length + 1];
+        System.arraycopy(entries, 0, grown, 0, entries.length);
+        grown[entries.length] = new Entry(receiver.getClass(), types, member, exact);
+        entries = grown;
+    }
+
+    private static boolean isOverloaded(Method method, Class<?> type) {
+        int count = 0;
+        for (Method candidate : type.getMethods()) {
+            if (candidate.getName().equals(method.getName()) && candidate.getParameterCount() == method.getParameterCount()) {
+                count++;
+            }
+        }
+        return count > 1;
+    }
+
+}
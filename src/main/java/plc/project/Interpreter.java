@@ -0,0 +1,1059 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Runs an {@link Ast.Source}, evaluating its fields in order and then calling
+ * its {@code main} method with no arguments.
+ *
+ * The tree is first resolved into a tree of executable nodes, so that no
+ * names are looked up while the program runs. Fields are stored in a single
+ * array of globals. Each method invocation gets a frame, an {@code Object[]}
+ * holding the return value at index {@code 0}, the parameters from index
+ * {@code 1}, and then every local variable: the block scopes of a method are
+ * laid out in the frame when it is resolved, with sibling blocks sharing
+ * slots, so every variable reference becomes an index into either the frame
+ * or the globals. Calls to methods of the program and to the builtins of the
+ * {@link Environment} are bound to their target when resolved, and calls and
+ * field accesses on a receiver look their member up through an {@link
+ * InlineCache} for that site.
+ *
+ * Arithmetic and comparisons of integers are computed with {@code long}s as
+ * long as the values fit, so only the results of whole expressions are
+ * created as {@link BigInteger}s. Likewise, a {@code FOR} over a range of
+ * such integers counts with a long rather than an iterator.
+ *
+ * A statement returns whether it executed a {@code RETURN}, having stored the
+ * value in the frame, so returning unwinds through enclosing blocks and loops
+ * without throwing an exception.
+ *
+ * Errors which can be found without running the program, such as an
+ * undefined variable or method, a variable declared twice in the same scope,
+ * or a statement which failed to parse, are thrown as {@link
+ * EvaluationException}s by the constructor. Others, such as an operand of the
+ * wrong type, are thrown as the program runs.
+ */
+public final class Interpreter {
+
+    private final Environment environment;
+    private final Object[] globals;
+    private final Stmt[] fields;
+    private final Map<String, Method> methods = new HashMap<>();
+    private boolean initialized = false;
+
+    public Interpreter(Ast.Source source) {
+        this(source, new Environment());
+    }
+
+    public Interpreter(Ast.Source source, Environment environment) {
+        this.environment = environment;
+        this.globals = new Object[source.getFields().size()];
+        this.fields = new Stmt[source.getFields().size()];
+        new Resolver().resolve(source);
+    }
+
+    /**
+     * Evaluates the fields, if they have not been evaluated yet, and returns
+     * the result of calling {@code main} with no arguments.
+     */
+    public Object run() {
+        return call("main");
+    }
+
+    /**
+     * Evaluates the fields, if they have not been evaluated yet, and returns
+     * the result of calling the method or builtin {@code name} with {@code
+     * arguments}.
+     */
+    public Object call(String name, Object... arguments) {
+        if (!initialized) {
+            initialized = true;
+            Object[] frame = new Object[1];
+            for (Stmt field : fields) {
+                field.execute(frame);
+            }
+        }
+        Method method = methods.get(name + "/" + arguments.length);
+        if (method != null) {
+            Object[] frame = new Object[method.frameSize];
+            System.arraycopy(arguments, 0, frame, 1, arguments.length);
+            return method.invoke(frame);
+        }
+        Environment.Function function = environment.lookup(name, arguments.length);
+        if (function == null) {
+            throw new EvaluationException("The function " + name + "/" + arguments.length + " is not defined.");
+        }
+        return function.invoke(arguments.clone());
+    }
+
+    /**
+     * A method of the program, whose frame size and body are filled in once
+     * all methods are known, so calls can be bound before bodies are resolved.
+     */
+    private static final class Method {
+
+        private int frameSize;
+        private Stmt[] body;
+
+        private Object invoke(Object[] frame) {
+            executeAll(body, frame);
+            return frame[0];
+        }
+
+    }
+
+    private final class Resolver implements Ast.Visitor<Node> {
+
+        private final Map<String, Integer> globalSlots = new HashMap<>();
+        private final ArrayDeque<Map<String, Integer>> scopes = new ArrayDeque<>();
+        private final Set<Integer> counters = new HashSet<>();
+        private int next;
+        private int max;
+
+        private void resolve(Ast.Source source) {
+            visit(source);
+        }
+
+        @Override
+        public Node visit(Ast.Source ast) {
+            for (Ast.Method method : ast.getMethods()) {
+                String key = method.getName() + "/" + method.getParameters().size();
+                if (methods.putIfAbsent(key, new Method()) != null) {
+                    throw new EvaluationException("The method " + key + " is already defined.");
+                }
+            }
+            for (int i = 0; i < ast.getFields().size(); i++) {
+                fields[i] = (Stmt) visit(ast.getFields().get(i));
+            }
+            for (Ast.Method method : ast.getMethods()) {
+                visit(method);
+            }
+            return null;
+        }
+
+        @Override
+        public Node visit(Ast.Field ast) {
+            Expr value = ast.getValue().map(this::expression).orElse(null);
+            int slot = globalSlots.size();
+            if (globalSlots.putIfAbsent(ast.getName(), slot) != null) {
+                throw new EvaluationException("The field " + ast.getName() + " is already defined.");
+            }
+            return new GlobalStore(globals, slot, value);
+        }
+
+        @Override
+        public Node visit(Ast.Method ast) {
+            Method method = methods.get(ast.getName() + "/" + ast.getParameters().size());
+            next = 1;
+            max = 1;
+            scopes.push(new HashMap<>());
+            for (String parameter : ast.getParameters()) {
+                declare(parameter);
+            }
+            method.body = block(ast.getStatements(), false);
+            scopes.pop();
+            method.frameSize = max;
+            return null;
+        }
+
+        @Override
+        public Node visit(Ast.Stmt.Expression ast) {
+            return new Evaluate(expression(ast.getExpression()));
+        }
+
+        @Override
+        public Node visit(Ast.Stmt.Declaration ast) {
+            Expr value = ast.getValue().map(this::expression).orElse(null);
+            return new LocalStore(declare(ast.getName()), value);
+        }
+
+        @Override
+        public Node visit(Ast.Stmt.Assignment ast) {
+            if (!(ast.getReceiver() instanceof Ast.Expr.Access)) {
+                throw new EvaluationException("Expected an access as the receiver of an assignment.");
+            }
+            Ast.Expr.Access receiver = (Ast.Expr.Access) ast.getReceiver();
+            Expr value = expression(ast.getValue());
+            if (receiver.getReceiver().isPresent()) {
+                return new FieldStore(expression(receiver.getReceiver().get()), receiver.getName(), value);
+            }
+            Integer slot = local(receiver.getName());
+            if (slot != null) {
+                return new LocalStore(slot, value);
+            }
+            return new GlobalStore(globals, global(receiver.getName()), value);
+        }
+
+        @Override
+        public Node visit(Ast.Stmt.If ast) {
+            return new If(expression(ast.getCondition()),
+                    block(ast.getThenStatements(), true),
+                    block(ast.getElseStatements(), true));
+        }
+
+        @Override
+        public Node visit(Ast.Stmt.For ast) {
+            Expr value = expression(ast.getValue());
+            int start = next;
+            scopes.push(new HashMap<>());
+            int slot = declare(ast.getName());
+            counters.add(slot);
+            Stmt[] body = block(ast.getStatements(), false);
+            counters.remove(slot);
+            scopes.pop();
+            next = start;
+            return new For(value, slot, body);
+        }
+
+        @Override
+        public Node visit(Ast.Stmt.While ast) {
+            return new While(expression(ast.getCondition()), block(ast.getStatements(), true));
+        }
+
+        @Override
+        public Node visit(Ast.Stmt.Return ast) {
+            return new Return(expression(ast.getValue()));
+        }
+
+        @Override
+        public Node visit(Ast.Stmt.Error ast) {
+            throw new EvaluationException("Cannot evaluate a statement which failed to parse: " + ast.getMessage());
+        }
+
+        @Override
+        public Node visit(Ast.Expr.Literal ast) {
+            return new Constant(ast.getLiteral());
+        }
+
+        @Override
+        public Node visit(Ast.Expr.Group ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Node visit(Ast.Expr.Binary ast) {
+            Expr left = expression(ast.getLeft());
+            Expr right = expression(ast.getRight());
+            switch (ast.getOperator()) {
+                case "AND":
+                    return new And(left, right);
+                case "OR":
+                    return new Or(left, right);
+                case "<":
+                    return new Compare(left, right, Compare.LESS);
+                case "<=":
+                    return new Compare(left, right, Compare.LESS | Compare.EQUAL);
+                case ">":
+                    return new Compare(left, right, Compare.GREATER);
+                case ">=":
+                    return new Compare(left, right, Compare.GREATER | Compare.EQUAL);
+                case "==":
+                    return new Equals(left, right, false);
+                case "!=":
+                    return new Equals(left, right, true);
+                case "+":
+                    return new Add(left, right);
+                case "-":
+                    return new Subtract(left, right);
+                case "*":
+                    return new Multiply(left, right);
+                case "/":
+                    return new Divide(left, right);
+                default:
+                    throw new EvaluationException("Unknown operator " + ast.getOperator() + ".");
+            }
+        }
+
+        @Override
+        public Node visit(Ast.Expr.Access ast) {
+            if (ast.getReceiver().isPresent()) {
+                return new FieldLoad(expression(ast.getReceiver().get()), ast.getName());
+            }
+            Integer slot = local(ast.getName());
+            if (slot != null) {
+                return counters.contains(slot) ? new CounterLoad(slot) : new LocalLoad(slot);
+            }
+            return new GlobalLoad(globals, global(ast.getName()));
+        }
+
+        @Override
+        public Node visit(Ast.Expr.Function ast) {
+            Expr[] arguments = expressions(ast.getArguments());
+            if (ast.getReceiver().isPresent()) {
+                return new Invoke(expression(ast.getReceiver().get()), ast.getName(), arguments);
+            }
+            Method method = methods.get(ast.getName() + "/" + arguments.length);
+            if (method != null) {
+                return new Call(method, arguments);
+            }
+            Environment.Function function = environment.lookup(ast.getName(), arguments.length);
+            if (function == null) {
+                throw new EvaluationException("The function " + ast.getName() + "/" + arguments.length + " is not defined.");
+            }
+            return new Builtin(function, arguments);
+        }
+
+        private Expr expression(Ast.Expr ast) {
+            return (Expr) visit(ast);
+        }
+
+        private Expr[] expressions(List<Ast.Expr> asts) {
+            Expr[] expressions = new Expr[asts.size()];
+            for (int i = 0; i < expressions.length; i++) {
+                expressions[i] = expression(asts.get(i));
+            }
+            return expressions;
+        }
+
+        /**
+         * Resolves a block of statements, in a new scope if {@code scoped}
+         * is {@code true}, whose slots are reused once the block ends.
+         */
+        private Stmt[] block(List<Ast.Stmt> asts, boolean scoped) {
+            int start = next;
+            if (scoped) {
+                scopes.push(new HashMap<>());
+            }
+            Stmt[] statements = new Stmt[asts.size()];
+            for (int i = 0; i < statements.length; i++) {
+                statements[i] = (Stmt) visit(asts.get(i));
+            }
+            if (scoped) {
+                scopes.pop();
+                next = start;
+            }
+            return statements;
+        }
+
+        private int declare(String name) {
+            if (scopes.peek().putIfAbsent(name, next) != null) {
+                throw new EvaluationException("The variable " + name + " is already defined in this scope.");
+            }
+            max = Math.max(max, next + 1);
+            return next++;
+        }
+
+        private Integer local(String name) {
+            for (Map<String, Integer> scope : scopes) {
+                Integer slot = scope.get(name);
+                if (slot != null) {
+                    return slot;
+                }
+            }
+            return null;
+        }
+
+        private int global(String name) {
+            Integer slot = globalSlots.get(name);
+            if (slot == null) {
+                throw new EvaluationException("The variable " + name + " is not defined.");
+            }
+            return slot;
+        }
+
+    }
+
+    /**
+     * Executes {@code statements} in order, returning {@code true} as soon as
+     * one executes a {@code RETURN}.
+     */
+    private static boolean executeAll(Stmt[] statements, Object[] frame) {
+        for (Stmt statement : statements) {
+            if (statement.execute(frame)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean condition(Expr condition, Object[] frame) {
+        return Environment.requireType(Boolean.class, condition.evaluate(frame));
+    }
+
+    private abstract static class Node {}
+
+    private abstract static class Stmt extends Node {
+
+        /**
+         * Executes this statement, returning {@code true} if it executed a
+         * {@code RETURN}, whose value is then in {@code frame[0]}.
+         */
+        abstract boolean execute(Object[] frame);
+
+    }
+
+    /**
+     * The result of {@link Expr#evaluateLong(Object[])} for a value which is
+     * not an integer fitting in a long (or is {@link Long#MIN_VALUE} itself).
+     */
+    private static final long NOT_LONG = Long.MIN_VALUE;
+
+    private abstract static class Expr extends Node {
+
+        /**
+         * The value of the last evaluation by {@link #evaluateLong(Object[])}
+         * which returned {@link #NOT_LONG}, to be read right after it.
+         */
+        Object boxed;
+
+        abstract Object evaluate(Object[] frame);
+
+        /**
+         * Evaluates this expression, returning an integer which fits in a
+         * long as that long, and any other value as {@link #NOT_LONG} with
+         * the value stored in {@link #boxed}.
+         */
+        long evaluateLong(Object[] frame) {
+            return unbox(evaluate(frame));
+        }
+
+        final long unbox(Object value) {
+            if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+                long result = ((BigInteger) value).longValue();
+                if (result != NOT_LONG) {
+                    return result;
+                }
+            }
+            boxed = value;
+            return NOT_LONG;
+        }
+
+    }
+
+    private static final class Evaluate extends Stmt {
+
+        private final Expr expression;
+
+        private Evaluate(Expr expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        boolean execute(Object[] frame) {
+            expression.evaluate(frame);
+            return false;
+        }
+
+    }
+
+    private static final class LocalStore extends Stmt {
+
+        private final int slot;
+        private final Expr value;
+
+        private LocalStore(int slot, Expr value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        boolean execute(Object[] frame) {
+            frame[slot] = value != null ? value.evaluate(frame) : null;
+            return false;
+        }
+
+    }
+
+    private static final class GlobalStore extends Stmt {
+
+        private final Object[] globals;
+        private final int slot;
+        private final Expr value;
+
+        private GlobalStore(Object[] globals, int slot, Expr value) {
+            this.globals = globals;
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        boolean execute(Object[] frame) {
+            globals[slot] = value != null ? value.evaluate(frame) : null;
+            return false;
+        }
+
+    }
+
+    private static final class FieldStore extends Stmt {
+
+        private final Expr receiver;
+        private final InlineCache cache;
+        private final Expr value;
+
+        private FieldStore(Expr receiver, String name, Expr value) {
+            this.receiver = receiver;
+            this.cache = new InlineCache(name);
+            this.value = value;
+        }
+
+        @Override
+        boolean execute(Object[] frame) {
+            Object object = receiver.evaluate(frame);
+            cache.setField(object, value.evaluate(frame));
+            return false;
+        }
+
+    }
+
+    private static final class If extends Stmt {
+
+        private final Expr condition;
+        private final Stmt[] thenStatements;
+        private final Stmt[] elseStatements;
+
+        private If(Expr condition, Stmt[] thenStatements, Stmt[] elseStatements) {
+            this.condition = condition;
+            this.thenStatements = thenStatements;
+            this.elseStatements = elseStatements;
+        }
+
+        @Override
+        boolean execute(Object[] frame) {
+            return executeAll(condition(condition, frame) ? thenStatements : elseStatements, frame);
+        }
+
+    }
+
+    /**
+     * The value of the variable of a {@code FOR} over a range, which is
+     * updated in place on each iteration and only created as a {@link
+     * BigInteger} when used as a value by something other than arithmetic or
+     * a comparison.
+     */
+    private static final class Counter {
+
+        private long value;
+
+    }
+
+    /**
+     * Iterates a range of integers fitting in a long with a counted loop,
+     * storing a single {@link Counter} in the slot of the variable, and a
+     * random access list by index. Any other iterable, including a range too
+     * large for a long, uses its iterator.
+     */
+    private static final class For extends Stmt {
+
+        private final Expr value;
+        private final int slot;
+        private final Stmt[] body;
+
+        private For(Expr value, int slot, Stmt[] body) {
+            this.value = value;
+            this.slot = slot;
+            this.body = body;
+        }
+
+        @Override
+        boolean execute(Object[] frame) {
+            Object value = this.value.evaluate(frame);
+            if (value instanceof Environment.Range) {
+                Environment.Range range = (Environment.Range) value;
+                if (range.getStart().bitLength() < 64 && range.getEnd().bitLength() < 64) {
+                    return execute(range.getStart().longValue(), range.getEnd().longValue(), frame);
+                }
+            } else if (value instanceof List && value instanceof RandomAccess) {
+                return execute((List<?>) value, frame);
+            }
+            for (Object element : Environment.requireType(Iterable.class, value)) {
+                frame[slot] = element;
+                if (executeAll(body, frame)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean execute(long start, long end, Object[] frame) {
+            Counter counter = new Counter();
+            for (long i = start; i < end; i++) {
+                // The body may have assigned the variable, replacing the
+                // counter until the next iteration.
+                counter.value = i;
+                frame[slot] = counter;
+                if (executeAll(body, frame)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean execute(List<?> list, Object[] frame) {
+            int size = list.size();
+            for (int i = 0; i < size; i++) {
+                frame[slot] = list.get(i);
+                if (executeAll(body, frame)) {
+                    return true;
+                }
+                // As with the iterator of an ArrayList, changing the size of
+                // the list ends the loop if the next index is the new size,
+                // and is otherwise an error.
+                if (list.size() != size) {
+                    if (i + 1 == list.size()) {
+                        return false;
+                    }
+                    throw new ConcurrentModificationException();
+                }
+            }
+            return false;
+        }
+
+    }
+
+    private static final class While extends Stmt {
+
+        private final Expr condition;
+        private final Stmt[] body;
+
+        private While(Expr condition, Stmt[] body) {
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        boolean execute(Object[] frame) {
+            while (condition(condition, frame)) {
+                if (executeAll(body, frame)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    private static final class Return extends Stmt {
+
+        private final Expr value;
+
+        private Return(Expr value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean execute(Object[] frame) {
+            frame[0] = value.evaluate(frame);
+            return true;
+        }
+
+    }
+
+    private static final class Constant extends Expr {
+
+        private final Object value;
+        private final long integer;
+
+        private Constant(Object value) {
+            this.value = value;
+            this.integer = unbox(value);
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            return value;
+        }
+
+        @Override
+        long evaluateLong(Object[] frame) {
+            return integer;
+        }
+
+    }
+
+    private static final class LocalLoad extends Expr {
+
+        private final int slot;
+
+        private LocalLoad(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            return frame[slot];
+        }
+
+    }
+
+    /**
+     * Loads the variable of a {@code FOR}, which is a {@link Counter} while
+     * iterating a range unless the body assigned it.
+     */
+    private static final class CounterLoad extends Expr {
+
+        private final int slot;
+
+        private CounterLoad(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            Object value = frame[slot];
+            return value instanceof Counter ? BigInteger.valueOf(((Counter) value).value) : value;
+        }
+
+        @Override
+        long evaluateLong(Object[] frame) {
+            Object value = frame[slot];
+            if (!(value instanceof Counter)) {
+                return unbox(value);
+            }
+            long result = ((Counter) value).value;
+            if (result == NOT_LONG) {
+                boxed = BigInteger.valueOf(result);
+            }
+            return result;
+        }
+
+    }
+
+    private static final class GlobalLoad extends Expr {
+
+        private final Object[] globals;
+        private final int slot;
+
+        private GlobalLoad(Object[] globals, int slot) {
+            this.globals = globals;
+            this.slot = slot;
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            return globals[slot];
+        }
+
+    }
+
+    private static final class FieldLoad extends Expr {
+
+        private final Expr receiver;
+        private final InlineCache cache;
+
+        private FieldLoad(Expr receiver, String name) {
+            this.receiver = receiver;
+            this.cache = new InlineCache(name);
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            return cache.getField(receiver.evaluate(frame));
+        }
+
+    }
+
+    private static final class Call extends Expr {
+
+        private final Method method;
+        private final Expr[] arguments;
+
+        private Call(Method method, Expr[] arguments) {
+            this.method = method;
+            this.arguments = arguments;
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            Object[] callee = new Object[method.frameSize];
+            for (int i = 0; i < arguments.length; i++) {
+                callee[i + 1] = arguments[i].evaluate(frame);
+            }
+            return method.invoke(callee);
+        }
+
+    }
+
+    private static final class Builtin extends Expr {
+
+        private final Environment.Function function;
+        private final Expr[] arguments;
+
+        private Builtin(Environment.Function function, Expr[] arguments) {
+            this.function = function;
+            this.arguments = arguments;
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            return function.invoke(evaluateAll(arguments, frame));
+        }
+
+    }
+
+    private static final class Invoke extends Expr {
+
+        private final Expr receiver;
+        private final InlineCache cache;
+        private final Expr[] arguments;
+
+        private Invoke(Expr receiver, String name, Expr[] arguments) {
+            this.receiver = receiver;
+            this.cache = new InlineCache(name);
+            this.arguments = arguments;
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            Object object = receiver.evaluate(frame);
+            return cache.invoke(object, evaluateAll(arguments, frame));
+        }
+
+    }
+
+    private static Object[] evaluateAll(Expr[] expressions, Object[] frame) {
+        Object[] values = new Object[expressions.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = expressions[i].evaluate(frame);
+        }
+        return values;
+    }
+
+    private static final class And extends Expr {
+
+        private final Expr left;
+        private final Expr right;
+
+        private And(Expr left, Expr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            return condition(left, frame) && condition(right, frame);
+        }
+
+    }
+
+    private static final class Or extends Expr {
+
+        private final Expr left;
+        private final Expr right;
+
+        private Or(Expr left, Expr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            return condition(left, frame) || condition(right, frame);
+        }
+
+    }
+
+    private static final class Compare extends Expr {
+
+        private static final int LESS = 1;
+        private static final int EQUAL = 2;
+        private static final int GREATER = 4;
+
+        private final Expr left;
+        private final Expr right;
+        private final int accepted;
+
+        /**
+         * Creates a comparison which is true if the sign of the comparison of
+         * the operands is one of those in {@code accepted}.
+         */
+        private Compare(Expr left, Expr right, int accepted) {
+            this.left = left;
+            this.right = right;
+            this.accepted = accepted;
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            long left = this.left.evaluateLong(frame);
+            Object leftValue = this.left.boxed;
+            long right = this.right.evaluateLong(frame);
+            int comparison;
+            if (left != NOT_LONG && right != NOT_LONG) {
+                comparison = Long.compare(left, right);
+            } else {
+                comparison = Environment.compare(left != NOT_LONG ? BigInteger.valueOf(left) : leftValue,
+                        right != NOT_LONG ? BigInteger.valueOf(right) : this.right.boxed);
+            }
+            int sign = comparison < 0 ? LESS : comparison == 0 ? EQUAL : GREATER;
+            return (accepted & sign) != 0;
+        }
+
+    }
+
+    private static final class Equals extends Expr {
+
+        private final Expr left;
+        private final Expr right;
+        private final boolean negated;
+
+        private Equals(Expr left, Expr right, boolean negated) {
+            this.left = left;
+            this.right = right;
+            this.negated = negated;
+        }
+
+        @Override
+        Object evaluate(Object[] frame) {
+            long left = this.left.evaluateLong(frame);
+            Object value = left != NOT_LONG ? null : this.left.boxed;
+            long right = this.right.evaluateLong(frame);
+            if (left != NOT_LONG && right != NOT_LONG) {
+                return left == right ^ negated;
+            } else if (left != NOT_LONG || right != NOT_LONG) {
+                // An integer fitting in a long is never equal to one which
+                // does not, nor to any other value.
+                return negated;
+            }
+            return Objects.equals(value, this.right.boxed) ^ negated;
+        }
+
+    }
+
+    /**
+     * An arithmetic operator, which computes with longs while its operands
+     * are integers which fit, so that the intermediate results of a nested
+     * expression such as {@code a * b + c} are never boxed. A result which
+     * overflows is computed again as a {@link BigInteger}, and operands of
+     * other types are passed to the operator of the {@link Environment}.
+     */
+    private abstract static class Arithmetic extends Expr {
+
+        private final Expr left;
+        private final Expr right;
+
+        private Arithmetic(Expr left, Expr right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        final Object evaluate(Object[] frame) {
+            long value = evaluateLong(frame);
+            return value != NOT_LONG ? BigInteger.valueOf(value) : boxed;
+        }
+
+        @Override
+        final long evaluateLong(Object[] frame) {
+            long left = this.left.evaluateLong(frame);
+            if (left == NOT_LONG) {
+                Object value = this.left.boxed;
+                return unbox(apply(value, right.evaluate(frame)));
+            }
+            long right = this.right.evaluateLong(frame);
+            if (right == NOT_LONG) {
+                return unbox(apply(BigInteger.valueOf(left), this.right.boxed));
+            }
+            long result = apply(left, right);
+            if (result == NOT_LONG) {
+                boxed = apply(BigInteger.valueOf(left), BigInteger.valueOf(right));
+            }
+            return result;
+        }
+
+        /**
+         * Returns the result for two longs, or {@link #NOT_LONG} if it does
+         * not fit in a long or is an error.
+         */
+        abstract long apply(long left, long right);
+
+        abstract Object apply(Object left, Object right);
+
+    }
+
+    private static final class Add extends Arithmetic {
+
+        private Add(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        long apply(long left, long right) {
+            try {
+                return Math.addExact(left, right);
+            } catch (ArithmeticException e) {
+                return NOT_LONG;
+            }
+        }
+
+        @Override
+        Object apply(Object left, Object right) {
+            return Environment.add(left, right);
+        }
+
+    }
+
+    private static final class Subtract extends Arithmetic {
+
+        private Subtract(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        long apply(long left, long right) {
+            try {
+                return Math.subtractExact(left, right);
+            } catch (ArithmeticException e) {
+                return NOT_LONG;
+            }
+        }
+
+        @Override
+        Object apply(Object left, Object right) {
+            return Environment.subtract(left, right);
+        }
+
+    }
+
+    private static final class Multiply extends Arithmetic {
+
+        private Multiply(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        long apply(long left, long right) {
+            try {
+                return Math.multiplyExact(left, right);
+            } catch (ArithmeticException e) {
+                return NOT_LONG;
+            }
+        }
+
+        @Override
+        Object apply(Object left, Object right) {
+            return Environment.multiply(left, right);
+        }
+
+    }
+
+    private static final class Divide extends Arithmetic {
+
+        private Divide(Expr left, Expr right) {
+            super(left, right);
+        }
+
+        @Override
+        long apply(long left, long right) {
+            // Division by zero is reported by the Environment. Since left is
+            // never Long.MIN_VALUE, the quotient always fits, and Java
+            // truncates toward zero as BigInteger does.
+            return right != 0 ? left / right : NOT_LONG;
+        }
+
+        @Override
+        Object apply(Object left, Object right) {
+            return Environment.divide(left, right);
+        }
+
+    }
+
+}
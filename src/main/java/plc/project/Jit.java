@@ -0,0 +1,831 @@
+package plc.project;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An {@link Ast.Source} compiled to JVM bytecode, with the same results and
+ * errors as the {@link Interpreter}.
+ *
+ * The program is compiled to a single class, defined as a hidden class so it
+ * can be unloaded as soon as this object is unreachable. Each method becomes
+ * a static method taking and returning {@code Object}s, with its locals in
+ * JVM locals, and each field becomes a static field, so calls, accesses and
+ * jumps are ordinary JVM instructions which the JIT compiler of the JVM can
+ * inline and optimize. Operators call the helpers of {@link Environment}, and
+ * conditions are compiled to branches on primitive results, without creating
+ * booleans. Calls and field accesses on a receiver go through an {@link
+ * InlineCache} for each site. Literals, builtins and caches are stored in
+ * static fields, set once the class is defined.
+ *
+ * As in the {@link Interpreter}, arithmetic and comparisons of integers are
+ * computed with {@code long}s on the JVM stack as long as the values fit. An
+ * operation whose operands are not such integers, or whose result overflows,
+ * is computed again from the boxed operands by the {@link Environment}, so
+ * only the results of whole expressions are created as {@link BigInteger}s.
+ *
+ * The field initializers are compiled as a method with no parameters, run
+ * once before the first call.
+ *
+ * A program which does not fit the limits of a class file, such as a method
+ * compiling to more than 64KB of bytecode, is run by a {@link VirtualMachine}
+ * instead.
+ */
+public final class Jit {
+
+    private static final String CLASS = "plc/project/Program";
+    private static final String JIT = "plc/project/Jit";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String ENVIRONMENT = "plc/project/Environment";
+    private static final String FUNCTION = "plc/project/Environment$Function";
+    private static final String CACHE = "plc/project/InlineCache";
+    private static final String LONG_BINARY = "(J" + OBJECT + "J" + OBJECT + ")";
+
+    /**
+     * The long pushed for a value which is not an integer fitting in a long
+     * (or is {@link Long#MIN_VALUE} itself).
+     */
+    private static final long NOT_LONG = Long.MIN_VALUE;
+
+    private final MethodHandle initializer;
+    private final Map<String, MethodHandle> methods;
+    private final VirtualMachine fallback;
+    private boolean initialized = false;
+
+    private Jit(MethodHandle initializer, Map<String, MethodHandle> methods) {
+        this.initializer = initializer;
+        this.methods = methods;
+        this.fallback = null;
+    }
+
+    private Jit(VirtualMachine fallback) {
+        this.initializer = null;
+        this.methods = null;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Compiles {@code source}, binding calls to the builtins of {@code
+     * environment}. Throws an {@link EvaluationException} for the same errors
+     * as the {@link Interpreter} constructor.
+     */
+    public static Jit compile(Ast.Source source, Environment environment) {
+        Compiler compiler = new Compiler(environment);
+        byte[] bytes;
+        try {
+            bytes = compiler.compile(source);
+        } catch (ClassFile.LimitException e) {
+            return new Jit(new VirtualMachine(Bytecode.compile(source, environment)));
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            Class<?> type = lookup.lookupClass();
+            for (int i = 0; i < compiler.constants.size(); i++) {
+                lookup.findStaticSetter(type, "k" + i, Object.class).invoke(compiler.constants.get(i));
+            }
+            Map<String, MethodHandle> methods = new HashMap<>();
+            for (int i = 0; i < source.getMethods().size(); i++) {
+                Ast.Method method = source.getMethods().get(i);
+                int arity = method.getParameters().size();
+                methods.put(method.getName() + "/" + arity, lookup.findStatic(type, "m" + i, MethodType.genericMethodType(arity)));
+            }
+            return new Jit(lookup.findStatic(type, "init", MethodType.methodType(void.class)), methods);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Evaluates the fields, if they have not been evaluated yet, and returns
+     * the result of calling {@code main} with no arguments.
+     */
+    public Object run() {
+        return call("main");
+    }
+
+    /**
+     * Evaluates the fields, if they have not been evaluated yet, and returns
+     * the result of calling the method {@code name} with {@code arguments}.
+     */
+    public Object call(String name, Object... arguments) {
+        if (fallback != null) {
+            return fallback.call(name, arguments);
+        }
+        try {
+            if (!initialized) {
+                initialized = true;
+                initializer.invokeExact();
+            }
+            MethodHandle method = methods.get(name + "/" + arguments.length);
+            if (method == null) {
+                throw new EvaluationException("The function " + name + "/" + arguments.length + " is not defined.");
+            }
+            return method.invokeWithArguments(arguments);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns whether the program was compiled to JVM bytecode, rather than
+     * falling back to a {@link VirtualMachine}.
+     */
+    boolean isCompiled() {
+        return fallback == null;
+    }
+
+    /*
+     * The helpers below are called by the compiled code for the long path of
+     * arithmetic and comparisons, mirroring the nodes of the Interpreter.
+     */
+
+    static long unbox(Object value) {
+        if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+            return ((BigInteger) value).longValue();
+        }
+        return NOT_LONG;
+    }
+
+    static Object box(long value, Object boxed) {
+        return value != NOT_LONG ? BigInteger.valueOf(value) : boxed;
+    }
+
+    static long add(long left, long right) {
+        if (left == NOT_LONG || right == NOT_LONG) {
+            return NOT_LONG;
+        }
+        try {
+            return Math.addExact(left, right);
+        } catch (ArithmeticException e) {
+            return NOT_LONG;
+        }
+    }
+
+    static Object add(long left, Object leftBoxed, long right, Object rightBoxed) {
+        return Environment.add(box(left, leftBoxed), box(right, rightBoxed));
+    }
+
+    static long subtract(long left, long right) {
+        if (left == NOT_LONG || right == NOT_LONG) {
+            return NOT_LONG;
+        }
+        try {
+            return Math.subtractExact(left, right);
+        } catch (ArithmeticException e) {
+            return NOT_LONG;
+        }
+    }
+
+    static Object subtract(long left, Object leftBoxed, long right, Object rightBoxed) {
+        return Environment.subtract(box(left, leftBoxed), box(right, rightBoxed));
+    }
+
+    static long multiply(long left, long right) {
+        if (left == NOT_LONG || right == NOT_LONG) {
+            return NOT_LONG;
+        }
+        try {
+            return Math.multiplyExact(left, right);
+        } catch (ArithmeticException e) {
+            return NOT_LONG;
+        }
+    }
+
+    static Object multiply(long left, Object leftBoxed, long right, Object rightBoxed) {
+        return Environment.multiply(box(left, leftBoxed), box(right, rightBoxed));
+    }
+
+    static long divide(long left, long right) {
+        // Division by zero is reported by the Environment.
+        return left != NOT_LONG && right != NOT_LONG && right != 0 ? left / right : NOT_LONG;
+    }
+
+    static Object divide(long left, Object leftBoxed, long right, Object rightBoxed) {
+        return Environment.divide(box(left, leftBoxed), box(right, rightBoxed));
+    }
+
+    static int compare(long left, Object leftBoxed, long right, Object rightBoxed) {
+        if (left != NOT_LONG && right != NOT_LONG) {
+            return Long.compare(left, right);
+        }
+        return Environment.compare(box(left, leftBoxed), box(right, rightBoxed));
+    }
+
+    static boolean equals(long left, Object leftBoxed, long right, Object rightBoxed) {
+        if (left != NOT_LONG && right != NOT_LONG) {
+            return left == right;
+        } else if (left != NOT_LONG || right != NOT_LONG) {
+            // An integer fitting in a long is never equal to one which does
+            // not, nor to any other value.
+            return false;
+        }
+        return Objects.equals(leftBoxed, rightBoxed);
+    }
+
+    private static final class Compiler implements Ast.Visitor<Void> {
+
+        private final Environment environment;
+        private final ClassFile file = new ClassFile(CLASS);
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> constantIndices = new HashMap<>();
+        private final Map<Object, Integer> functionIndices = new IdentityHashMap<>();
+        private final Map<String, Integer> methodIndices = new HashMap<>();
+        private final Map<String, Integer> globalSlots = new HashMap<>();
+        private final ArrayDeque<Map<String, Integer>> scopes = new ArrayDeque<>();
+
+        private ClassFile.Code code;
+        private int next;
+
+        private Compiler(Environment environment) {
+            this.environment = environment;
+        }
+
+        private byte[] compile(Ast.Source source) {
+            for (int i = 0; i < source.getMethods().size(); i++) {
+                Ast.Method method = source.getMethods().get(i);
+                String key = method.getName() + "/" + method.getParameters().size();
+                if (methodIndices.putIfAbsent(key, i) != null) {
+                    throw new EvaluationException("The method " + key + " is already defined.");
+                }
+            }
+            begin("init", "()V");
+            for (Ast.Field field : source.getFields()) {
+                visit(field);
+            }
+            code.op(ClassFile.RETURN);
+            for (int i = 0; i < source.getMethods().size(); i++) {
+                Ast.Method ast = source.getMethods().get(i);
+                begin("m" + i, MethodType.genericMethodType(ast.getParameters().size()).toMethodDescriptorString());
+                scopes.push(new HashMap<>());
+                for (String parameter : ast.getParameters()) {
+                    declare(parameter);
+                }
+                statements(ast.getStatements());
+                scopes.pop();
+                if (code.reachable()) {
+                    code.op(ClassFile.ACONST_NULL);
+                    code.op(ClassFile.ARETURN);
+                }
+            }
+            for (int i = 0; i < globalSlots.size(); i++) {
+                file.field(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, "g" + i, OBJECT);
+            }
+            for (int i = 0; i < constants.size(); i++) {
+                file.field(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, "k" + i, OBJECT);
+            }
+            return file.toByteArray();
+        }
+
+        private void begin(String name, String descriptor) {
+            code = file.method(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, name, descriptor);
+            next = 0;
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            expression(ast.getValue().orElse(null));
+            int slot = globalSlots.size();
+            if (globalSlots.putIfAbsent(ast.getName(), slot) != null) {
+                throw new EvaluationException("The field " + ast.getName() + " is already defined.");
+            }
+            code.field(ClassFile.PUTSTATIC, CLASS, "g" + slot, OBJECT);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            visit(ast.getExpression());
+            code.op(ClassFile.POP);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            expression(ast.getValue().orElse(null));
+            code.local(ClassFile.ASTORE, declare(ast.getName()));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            if (!(ast.getReceiver() instanceof Ast.Expr.Access)) {
+                throw new EvaluationException("Expected an access as the receiver of an assignment.");
+            }
+            Ast.Expr.Access receiver = (Ast.Expr.Access) ast.getReceiver();
+            if (receiver.getReceiver().isPresent()) {
+                cache(receiver.getName());
+                visit(receiver.getReceiver().get());
+                visit(ast.getValue());
+                code.invoke(ClassFile.INVOKEVIRTUAL, CACHE, "setField", "(" + OBJECT + OBJECT + ")V");
+                return null;
+            }
+            visit(ast.getValue());
+            Integer slot = local(receiver.getName());
+            if (slot != null) {
+                code.local(ClassFile.ASTORE, slot);
+            } else {
+                code.field(ClassFile.PUTSTATIC, CLASS, "g" + global(receiver.getName()), OBJECT);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            ClassFile.Label otherwise = code.label();
+            ClassFile.Label end = code.label();
+            condition(ast.getCondition(), false, otherwise);
+            block(ast.getThenStatements());
+            if (code.reachable()) {
+                code.jump(ClassFile.GOTO, end);
+            }
+            code.bind(otherwise);
+            block(ast.getElseStatements());
+            code.bind(end);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            code.ldcClass("java/lang/Iterable");
+            visit(ast.getValue());
+            code.invoke(ClassFile.INVOKESTATIC, ENVIRONMENT, "requireType", "(Ljava/lang/Class;" + OBJECT + ")" + OBJECT);
+            code.type(ClassFile.CHECKCAST, "java/lang/Iterable");
+            code.invoke(ClassFile.INVOKEINTERFACE, "java/lang/Iterable", "iterator", "()Ljava/util/Iterator;");
+            int start = next;
+            scopes.push(new HashMap<>());
+            // The iterator is kept in a local which is not visible by name.
+            int iterator = declare(" iterator");
+            int slot = declare(ast.getName());
+            code.local(ClassFile.ASTORE, iterator);
+            ClassFile.Label loop = code.label();
+            ClassFile.Label exit = code.label();
+            code.bind(loop);
+            code.local(ClassFile.ALOAD, iterator);
+            code.invoke(ClassFile.INVOKEINTERFACE, "java/util/Iterator", "hasNext", "()Z");
+            code.jump(ClassFile.IFEQ, exit);
+            code.local(ClassFile.ALOAD, iterator);
+            code.invoke(ClassFile.INVOKEINTERFACE, "java/util/Iterator", "next", "()" + OBJECT);
+            code.local(ClassFile.ASTORE, slot);
+            statements(ast.getStatements());
+            if (code.reachable()) {
+                code.jump(ClassFile.GOTO, loop);
+            }
+            code.bind(exit);
+            scopes.pop();
+            next = start;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            ClassFile.Label test = code.label();
+            ClassFile.Label body = code.label();
+            code.jump(ClassFile.GOTO, test);
+            code.loop(body);
+            block(ast.getStatements());
+            code.bind(test);
+            condition(ast.getCondition(), true, body);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            visit(ast.getValue());
+            code.op(ClassFile.ARETURN);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Error ast) {
+            throw new EvaluationException("Cannot evaluate a statement which failed to parse: " + ast.getMessage());
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            Object literal = ast.getLiteral();
+            if (literal == null) {
+                code.op(ClassFile.ACONST_NULL);
+            } else if (literal instanceof Boolean) {
+                code.field(ClassFile.GETSTATIC, "java/lang/Boolean", (Boolean) literal ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+            } else if (literal instanceof String) {
+                code.ldc((String) literal);
+            } else {
+                code.field(ClassFile.GETSTATIC, CLASS, "k" + constant(literal), OBJECT);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            String operator = ast.getOperator();
+            switch (operator) {
+                case "AND":
+                case "OR":
+                case "<":
+                case "<=":
+                case ">":
+                case ">=":
+                case "==":
+                case "!=": {
+                    ClassFile.Label otherwise = code.label();
+                    ClassFile.Label end = code.label();
+                    condition(ast, false, otherwise);
+                    code.field(ClassFile.GETSTATIC, "java/lang/Boolean", "TRUE", "Ljava/lang/Boolean;");
+                    code.jump(ClassFile.GOTO, end);
+                    code.bind(otherwise);
+                    code.field(ClassFile.GETSTATIC, "java/lang/Boolean", "FALSE", "Ljava/lang/Boolean;");
+                    code.bind(end);
+                    return null;
+                }
+                case "+":
+                case "-":
+                case "*":
+                case "/": {
+                    int start = next;
+                    load(integer(ast));
+                    code.invoke(ClassFile.INVOKESTATIC, JIT, "box", "(J" + OBJECT + ")" + OBJECT);
+                    next = start;
+                    return null;
+                }
+                default:
+                    throw new EvaluationException("Unknown operator " + operator + ".");
+            }
+        }
+
+        /**
+         * Compiles {@code ast} to push a long, as {@link
+         * Interpreter}'s {@code evaluateLong}: an arithmetic operator computes
+         * with the longs of its operands, and a value which is not an integer
+         * fitting in a long pushes {@code NOT_LONG}, with the value stored in
+         * the returned local. Returns {@code -1} if there is no such local,
+         * for a literal which always fits.
+         *
+         * The locals used are allocated above {@link #next}, which the caller
+         * restores once the result is used.
+         */
+        private int integer(Ast.Expr ast) {
+            while (ast instanceof Ast.Expr.Group) {
+                ast = ((Ast.Expr.Group) ast).getExpression();
+            }
+            if (ast instanceof Ast.Expr.Literal && ((Ast.Expr.Literal) ast).isLong()
+                    && ((Ast.Expr.Literal) ast).getLong() != NOT_LONG) {
+                code.push(((Ast.Expr.Literal) ast).getLong());
+                return -1;
+            }
+            String helper = arithmetic(ast);
+            int boxed = temporary(1);
+            if (helper == null) {
+                visit(ast);
+                code.op(ClassFile.DUP);
+                code.local(ClassFile.ASTORE, boxed);
+                code.invoke(ClassFile.INVOKESTATIC, JIT, "unbox", "(" + OBJECT + ")J");
+                return boxed;
+            }
+            // The verifier requires the local to be set on every path.
+            code.op(ClassFile.ACONST_NULL);
+            code.local(ClassFile.ASTORE, boxed);
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            int leftBoxed = integer(binary.getLeft());
+            int left = temporary(2);
+            code.local(ClassFile.LSTORE, left);
+            int rightBoxed = integer(binary.getRight());
+            int right = temporary(2);
+            code.local(ClassFile.LSTORE, right);
+            code.local(ClassFile.LLOAD, left);
+            code.local(ClassFile.LLOAD, right);
+            code.invoke(ClassFile.INVOKESTATIC, JIT, helper, "(JJ)J");
+            ClassFile.Label done = code.label();
+            code.op(ClassFile.DUP2);
+            code.push(NOT_LONG);
+            code.op(ClassFile.LCMP);
+            code.jump(ClassFile.IFNE, done);
+            // The operands are not both longs, or the result overflowed, so
+            // it is computed again from the boxed operands.
+            code.op(ClassFile.POP2);
+            code.local(ClassFile.LLOAD, left);
+            load(leftBoxed);
+            code.local(ClassFile.LLOAD, right);
+            load(rightBoxed);
+            code.invoke(ClassFile.INVOKESTATIC, JIT, helper, LONG_BINARY + OBJECT);
+            code.op(ClassFile.DUP);
+            code.local(ClassFile.ASTORE, boxed);
+            code.invoke(ClassFile.INVOKESTATIC, JIT, "unbox", "(" + OBJECT + ")J");
+            code.bind(done);
+            return boxed;
+        }
+
+        /**
+         * Pushes the value stored by {@link #integer(Ast.Expr)} in {@code
+         * local}, or {@code NIL} if there is no such local.
+         */
+        private void load(int local) {
+            if (local < 0) {
+                code.op(ClassFile.ACONST_NULL);
+            } else {
+                code.local(ClassFile.ALOAD, local);
+            }
+        }
+
+        /**
+         * Compiles the operands of a comparison with {@link
+         * #integer(Ast.Expr)}, calling the helper of {@link Jit} with both.
+         */
+        private void operands(Ast.Expr.Binary ast, String helper, String result) {
+            int start = next;
+            load(integer(ast.getLeft()));
+            load(integer(ast.getRight()));
+            code.invoke(ClassFile.INVOKESTATIC, JIT, helper, LONG_BINARY + result);
+            next = start;
+        }
+
+        /**
+         * Returns the helper of an arithmetic operator, or {@code null}.
+         */
+        private static String arithmetic(Ast.Expr ast) {
+            switch (ast instanceof Ast.Expr.Binary ? ((Ast.Expr.Binary) ast).getOperator() : "") {
+                case "+":
+                    return "add";
+                case "-":
+                    return "subtract";
+                case "*":
+                    return "multiply";
+                case "/":
+                    return "divide";
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Returns whether {@code ast} is an integer literal or arithmetic,
+         * which is likely an integer.
+         */
+        private static boolean isInteger(Ast.Expr ast) {
+            while (ast instanceof Ast.Expr.Group) {
+                ast = ((Ast.Expr.Group) ast).getExpression();
+            }
+            return ast instanceof Ast.Expr.Literal && ((Ast.Expr.Literal) ast).isLong() || arithmetic(ast) != null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            if (ast.getReceiver().isPresent()) {
+                cache(ast.getName());
+                visit(ast.getReceiver().get());
+                code.invoke(ClassFile.INVOKEVIRTUAL, CACHE, "getField", "(" + OBJECT + ")" + OBJECT);
+                return null;
+            }
+            Integer slot = local(ast.getName());
+            if (slot != null) {
+                code.local(ClassFile.ALOAD, slot);
+            } else {
+                code.field(ClassFile.GETSTATIC, CLASS, "g" + global(ast.getName()), OBJECT);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            int arity = ast.getArguments().size();
+            if (ast.getReceiver().isPresent()) {
+                cache(ast.getName());
+                visit(ast.getReceiver().get());
+                array(ast.getArguments());
+                code.invoke(ClassFile.INVOKEVIRTUAL, CACHE, "invoke", "(" + OBJECT + "[" + OBJECT + ")" + OBJECT);
+                return null;
+            }
+            Integer method = methodIndices.get(ast.getName() + "/" + arity);
+            if (method != null) {
+                ast.getArguments().forEach(this::visit);
+                code.invoke(ClassFile.INVOKESTATIC, CLASS, "m" + method, MethodType.genericMethodType(arity).toMethodDescriptorString());
+                return null;
+            }
+            Environment.Function function = environment.lookup(ast.getName(), arity);
+            if (function == null) {
+                throw new EvaluationException("The function " + ast.getName() + "/" + arity + " is not defined.");
+            }
+            code.field(ClassFile.GETSTATIC, CLASS, "k" + constant(function), OBJECT);
+            code.type(ClassFile.CHECKCAST, FUNCTION);
+            array(ast.getArguments());
+            code.invoke(ClassFile.INVOKEINTERFACE, FUNCTION, "invoke", "([" + OBJECT + ")" + OBJECT);
+            return null;
+        }
+
+        /**
+         * Pushes a new {@link InlineCache} for a site using {@code name}.
+         */
+        private void cache(String name) {
+            code.field(ClassFile.GETSTATIC, CLASS, "k" + constant(new InlineCache(name)), OBJECT);
+            code.type(ClassFile.CHECKCAST, CACHE);
+        }
+
+        /**
+         * Pushes a new {@code Object[]} of the values of {@code arguments}.
+         */
+        private void array(List<Ast.Expr> arguments) {
+            code.push(arguments.size());
+            code.type(ClassFile.ANEWARRAY, "java/lang/Object");
+            for (int i = 0; i < arguments.size(); i++) {
+                code.op(ClassFile.DUP);
+                code.push(i);
+                visit(arguments.get(i));
+                code.op(ClassFile.AASTORE);
+            }
+        }
+
+        /**
+         * Compiles a condition to a jump to {@code target} if it evaluates to
+         * {@code when}, falling through otherwise.
+         */
+        private void condition(Ast.Expr ast, boolean when, ClassFile.Label target) {
+            while (ast instanceof Ast.Expr.Group) {
+                ast = ((Ast.Expr.Group) ast).getExpression();
+            }
+            String operator = ast instanceof Ast.Expr.Binary ? ((Ast.Expr.Binary) ast).getOperator() : "";
+            if (operator.equals("AND") == when && (operator.equals("AND") || operator.equals("OR"))) {
+                // An AND jumping when true (or an OR jumping when false)
+                // needs both operands, so the left skips past the right.
+                ClassFile.Label skip = code.label();
+                condition(((Ast.Expr.Binary) ast).getLeft(), !when, skip);
+                condition(((Ast.Expr.Binary) ast).getRight(), when, target);
+                code.bind(skip);
+            } else if (operator.equals("AND") || operator.equals("OR")) {
+                condition(((Ast.Expr.Binary) ast).getLeft(), when, target);
+                condition(((Ast.Expr.Binary) ast).getRight(), when, target);
+            } else if (operator.equals("==") || operator.equals("!=")) {
+                Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+                if (isInteger(binary.getLeft()) || isInteger(binary.getRight())) {
+                    operands(binary, "equals", "Z");
+                } else {
+                    visit(binary.getLeft());
+                    visit(binary.getRight());
+                    code.invoke(ClassFile.INVOKESTATIC, "java/util/Objects", "equals", "(" + OBJECT + OBJECT + ")Z");
+                }
+                code.jump(operator.equals("==") == when ? ClassFile.IFNE : ClassFile.IFEQ, target);
+            } else if (operator.matches("[<>]=?")) {
+                operands((Ast.Expr.Binary) ast, "compare", "I");
+                code.jump(compare(when ? operator : negate(operator)), target);
+            } else {
+                code.ldcClass("java/lang/Boolean");
+                visit(ast);
+                code.invoke(ClassFile.INVOKESTATIC, ENVIRONMENT, "requireType", "(Ljava/lang/Class;" + OBJECT + ")" + OBJECT);
+                code.type(ClassFile.CHECKCAST, "java/lang/Boolean");
+                code.invoke(ClassFile.INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z");
+                code.jump(when ? ClassFile.IFNE : ClassFile.IFEQ, target);
+            }
+        }
+
+        private static String negate(String operator) {
+            switch (operator) {
+                case "<":
+                    return ">=";
+                case "<=":
+                    return ">";
+                case ">":
+                    return "<=";
+                default:
+                    return "<";
+            }
+        }
+
+        /**
+         * Returns the opcode jumping if the result of a comparison satisfies
+         * {@code operator}.
+         */
+        private static int compare(String operator) {
+            switch (operator) {
+                case "<":
+                    return ClassFile.IFLT;
+                case "<=":
+                    return ClassFile.IFLE;
+                case ">":
+                    return ClassFile.IFGT;
+                default:
+                    return ClassFile.IFGE;
+            }
+        }
+
+        /**
+         * Compiles {@code ast}, or pushes {@code NIL} if it is {@code null}.
+         */
+        private void expression(Ast.Expr ast) {
+            if (ast != null) {
+                visit(ast);
+            } else {
+                code.op(ClassFile.ACONST_NULL);
+            }
+        }
+
+        /**
+         * Compiles statements until one which cannot complete normally, after
+         * which the rest are unreachable and only checked.
+         */
+        private void statements(List<Ast.Stmt> statements) {
+            for (Ast.Stmt statement : statements) {
+                if (!code.reachable()) {
+                    // The JVM rejects code which is unreachable, so later
+                    // statements are compiled to a separate method which is
+                    // discarded, to still report their errors.
+                    ClassFile.Code reachable = code;
+                    code = new ClassFile(CLASS).method(ClassFile.ACC_STATIC, "unreachable", "()V");
+                    visit(statement);
+                    code = reachable;
+                    continue;
+                }
+                visit(statement);
+            }
+        }
+
+        /**
+         * Compiles a block of statements in a new scope, whose locals are
+         * reused once the block ends.
+         */
+        private void block(List<Ast.Stmt> statements) {
+            int start = next;
+            scopes.push(new HashMap<>());
+            statements(statements);
+            scopes.pop();
+            next = start;
+        }
+
+        /**
+         * Returns the first of {@code size} locals which are not visible by
+         * name, allocated above the variables in scope.
+         */
+        private int temporary(int size) {
+            int slot = next;
+            next += size;
+            code.locals(next);
+            return slot;
+        }
+
+        private int declare(String name) {
+            if (scopes.peek().putIfAbsent(name, next) != null) {
+                throw new EvaluationException("The variable " + name + " is already defined in this scope.");
+            }
+            code.locals(next + 1);
+            return next++;
+        }
+
+        private Integer local(String name) {
+            for (Map<String, Integer> scope : scopes) {
+                Integer slot = scope.get(name);
+                if (slot != null) {
+                    return slot;
+                }
+            }
+            return null;
+        }
+
+        private int global(String name) {
+            Integer slot = globalSlots.get(name);
+            if (slot == null) {
+                throw new EvaluationException("The variable " + name + " is not defined.");
+            }
+            return slot;
+        }
+
+        private int constant(Object value) {
+            // Builtins are compared by identity, everything else by value
+            // (including its class, so 1 and 1.0 are distinct).
+            Map<Object, Integer> indices = value instanceof Environment.Function ? functionIndices : constantIndices;
+            Integer index = indices.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                indices.put(value, index);
+            }
+            return index;
+        }
+
+    }
+
+}
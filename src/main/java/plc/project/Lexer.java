@@ -31,21 +31,26 @@ public final class Lexer {
      */
     public List<Token> lex() {
         List<Token> tokens = new ArrayList<>();
-        while (chars.has(0)) {
-
-            while (peek("\\s")) {
-                match("\\s");
-                chars.skip();
-            }
-
-            if (chars.has(0)) {
-                tokens.add(lexToken());
-            }
+        for (Token token = lexNext(); token != null; token = lexNext()) {
+            tokens.add(token);
         }
         return tokens;
 
     }
 
+    /**
+     * Skips whitespace and lexes the next token, returning {@code null} once
+     * the input is exhausted. Unlike {@link #lex()}, this allows tokens to be
+     * consumed one at a time without materializing the whole list.
+     */
+    public Token lexNext() {
+        while (peek("\\s")) {
+            match("\\s");
+            chars.skip();
+        }
+        return chars.has(0) ? lexToken() : null;
+    }
+
     /**
      * This method determines the type of the next token, delegating to the
      * appropriate lex method. As such, it is best for this method to not change
@@ -0,0 +1,651 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Rewrites an {@link Ast.Source} into a smaller tree which evaluates to the
+ * same results, with the same output and errors, in any evaluator.
+ *
+ * Nodes which are not changed are kept (along with their spans), so a pass
+ * over a program which has nothing to simplify returns the same instance.
+ * New nodes have no spans. Methods whose bodies have not been parsed yet are
+ * rewritten when their bodies are parsed.
+ */
+public final class Optimizer {
+
+    private Optimizer() {}
+
+    /**
+     * Folds operators over literals into literals, removes groups and
+     * removes additions of {@code 0} and multiplications and divisions by
+     * {@code 1} of integers.
+     *
+     * Operations which would fail at runtime, such as a division by zero,
+     * are kept so that they still fail. {@code AND} and {@code OR} are folded
+     * when their left operand decides the result without evaluating the
+     * right one, and strings are concatenated across a chain of additions,
+     * so {@code x + "a" + "b"} becomes {@code x + "ab"}.
+     */
+    public static Ast.Source fold(Ast.Source source) {
+        return (Ast.Source) new Folder().visit(source);
+    }
+
+    /**
+     * Removes code which can never run or whose result is never used,
+     * keeping the methods reachable from {@code main/0}.
+     */
+    public static Ast.Source eliminate(Ast.Source source) {
+        return eliminate(source, Set.of("main/0"));
+    }
+
+    /**
+     * Removes code which can never run or whose result is never used:
+     *
+     * <ul>
+     *     <li>statements after a {@code RETURN}, or after an {@code IF}
+     *     whose branches both return,</li>
+     *     <li>the branch of an {@code IF} with a literal condition which is
+     *     never taken, and a {@code WHILE} whose condition is {@code
+     *     FALSE},</li>
+     *     <li>declarations of variables which are never mentioned again in
+     *     their block and whose value is a literal, a variable or an
+     *     equality of those (which cannot fail), and</li>
+     *     <li>methods not called, directly or indirectly, from a field or
+     *     from one of the {@code entryPoints} (given as {@code
+     *     name/arity}).</li>
+     * </ul>
+     *
+     * Since the language has no private methods, methods which are called
+     * from outside of the program (such as with {@link Interpreter#call})
+     * must be given as entry points. Unlike the other changes, removing code
+     * means that static errors in it, such as an undefined variable, are no
+     * longer reported.
+     */
+    public static Ast.Source eliminate(Ast.Source source, Set<String> entryPoints) {
+        return (Ast.Source) new Eliminator(entryPoints).visit(source);
+    }
+
+    /**
+     * Folds constants, then removes the code which is dead as a result,
+     * keeping the methods reachable from {@code main/0}.
+     */
+    public static Ast.Source optimize(Ast.Source source) {
+        return eliminate(fold(source));
+    }
+
+    /**
+     * Rewrites each node bottom-up, keeping a node when none of its children
+     * changed.
+     */
+    private static class Rewriter implements Ast.Visitor<Ast> {
+
+        @Override
+        public Ast visit(Ast.Source ast) {
+            List<Ast.Field> fields = rewrite(ast.getFields());
+            List<Ast.Method> methods = rewrite(ast.getMethods());
+            if (fields == ast.getFields() && methods == ast.getMethods()) {
+                return ast;
+            }
+            return new Ast.Source(fields, methods, ast.getSpans());
+        }
+
+        @Override
+        public Ast visit(Ast.Field ast) {
+            Optional<Ast.Expr> value = ast.getValue();
+            Optional<Ast.Expr> rewritten = rewrite(value);
+            return rewritten == value ? ast : new Ast.Field(ast.getName(), rewritten);
+        }
+
+        @Override
+        public Ast visit(Ast.Method ast) {
+            if (!ast.isParsed()) {
+                return new Ast.Method(ast.getName(), ast.getParameters(), () -> statements(ast.getStatements()));
+            }
+            List<Ast.Stmt> statements = statements(ast.getStatements());
+            return statements == ast.getStatements() ? ast : new Ast.Method(ast.getName(), ast.getParameters(), statements);
+        }
+
+        @Override
+        public Ast visit(Ast.Stmt.Expression ast) {
+            Ast.Expr expression = (Ast.Expr) visit(ast.getExpression());
+            return expression == ast.getExpression() ? ast : new Ast.Stmt.Expression(expression);
+        }
+
+        @Override
+        public Ast visit(Ast.Stmt.Declaration ast) {
+            Optional<Ast.Expr> value = ast.getValue();
+            Optional<Ast.Expr> rewritten = rewrite(value);
+            return rewritten == value ? ast : new Ast.Stmt.Declaration(ast.getName(), rewritten);
+        }
+
+        @Override
+        public Ast visit(Ast.Stmt.Assignment ast) {
+            Ast.Expr receiver = (Ast.Expr) visit(ast.getReceiver());
+            Ast.Expr value = (Ast.Expr) visit(ast.getValue());
+            if (receiver == ast.getReceiver() && value == ast.getValue()) {
+                return ast;
+            }
+            return new Ast.Stmt.Assignment(receiver, value);
+        }
+
+        @Override
+        public Ast visit(Ast.Stmt.If ast) {
+            Ast.Expr condition = (Ast.Expr) visit(ast.getCondition());
+            List<Ast.Stmt> thenStatements = statements(ast.getThenStatements());
+            List<Ast.Stmt> elseStatements = statements(ast.getElseStatements());
+            if (condition == ast.getCondition() && thenStatements == ast.getThenStatements()
+                    && elseStatements == ast.getElseStatements()) {
+                return ast;
+            }
+            return new Ast.Stmt.If(condition, thenStatements, elseStatements);
+        }
+
+        @Override
+        public Ast visit(Ast.Stmt.For ast) {
+            Ast.Expr value = (Ast.Expr) visit(ast.getValue());
+            List<Ast.Stmt> statements = statements(ast.getStatements());
+            if (value == ast.getValue() && statements == ast.getStatements()) {
+                return ast;
+            }
+            return new Ast.Stmt.For(ast.getName(), value, statements);
+        }
+
+        @Override
+        public Ast visit(Ast.Stmt.While ast) {
+            Ast.Expr condition = (Ast.Expr) visit(ast.getCondition());
+            List<Ast.Stmt> statements = statements(ast.getStatements());
+            if (condition == ast.getCondition() && statements == ast.getStatements()) {
+                return ast;
+            }
+            return new Ast.Stmt.While(condition, statements);
+        }
+
+        @Override
+        public Ast visit(Ast.Stmt.Return ast) {
+            Ast.Expr value = (Ast.Expr) visit(ast.getValue());
+            return value == ast.getValue() ? ast : new Ast.Stmt.Return(value);
+        }
+
+        @Override
+        public Ast visit(Ast.Stmt.Error ast) {
+            return ast;
+        }
+
+        @Override
+        public Ast visit(Ast.Expr.Literal ast) {
+            return ast;
+        }
+
+        @Override
+        public Ast visit(Ast.Expr.Group ast) {
+            Ast.Expr expression = (Ast.Expr) visit(ast.getExpression());
+            return expression == ast.getExpression() ? ast : new Ast.Expr.Group(expression);
+        }
+
+        @Override
+        public Ast visit(Ast.Expr.Binary ast) {
+            Ast.Expr left = (Ast.Expr) visit(ast.getLeft());
+            Ast.Expr right = (Ast.Expr) visit(ast.getRight());
+            if (left == ast.getLeft() && right == ast.getRight()) {
+                return ast;
+            }
+            return new Ast.Expr.Binary(ast.getOperator(), left, right);
+        }
+
+        @Override
+        public Ast visit(Ast.Expr.Access ast) {
+            Optional<Ast.Expr> receiver = ast.getReceiver();
+            Optional<Ast.Expr> rewritten = rewrite(receiver);
+            return rewritten == receiver ? ast : new Ast.Expr.Access(rewritten, ast.getName());
+        }
+
+        @Override
+        public Ast visit(Ast.Expr.Function ast) {
+            Optional<Ast.Expr> receiver = ast.getReceiver();
+            Optional<Ast.Expr> rewritten = rewrite(receiver);
+            List<Ast.Expr> arguments = rewrite(ast.getArguments());
+            if (rewritten == receiver && arguments == ast.getArguments()) {
+                return ast;
+            }
+            return new Ast.Expr.Function(rewritten, ast.getName(), arguments);
+        }
+
+        /**
+         * Rewrites a list of statements, which a subclass may shorten.
+         */
+        List<Ast.Stmt> statements(List<Ast.Stmt> statements) {
+            return rewrite(statements);
+        }
+
+        /**
+         * Returns the list of rewritten nodes, or {@code nodes} itself if
+         * none changed.
+         */
+        @SuppressWarnings("unchecked")
+        final <T extends Ast> List<T> rewrite(List<T> nodes) {
+            List<T> rewritten = null;
+            for (int i = 0; i < nodes.size(); i++) {
+                T node = (T) visit(nodes.get(i));
+                if (rewritten == null && node != nodes.get(i)) {
+                    rewritten = new ArrayList<>(nodes.subList(0, i));
+                }
+                if (rewritten != null) {
+                    rewritten.add(node);
+                }
+            }
+            return rewritten != null ? rewritten : nodes;
+        }
+
+        /**
+         * Returns the rewritten expression, or {@code node} itself if it did
+         * not change.
+         */
+        final Optional<Ast.Expr> rewrite(Optional<Ast.Expr> node) {
+            if (node.isEmpty()) {
+                return node;
+            }
+            Ast.Expr expression = (Ast.Expr) visit(node.get());
+            return expression == node.get() ? node : Optional.of(expression);
+        }
+
+    }
+
+    private static final class Folder extends Rewriter {
+
+        @Override
+        public Ast visit(Ast.Expr.Group ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Ast visit(Ast.Expr.Binary ast) {
+            Ast.Expr left = (Ast.Expr) visit(ast.getLeft());
+            Ast.Expr right = (Ast.Expr) visit(ast.getRight());
+            String operator = ast.getOperator();
+            if (operator.equals("AND") || operator.equals("OR")) {
+                // The right operand is only evaluated (and checked to be a
+                // boolean) when the left one does not decide the result.
+                if (left instanceof Ast.Expr.Literal && ((Ast.Expr.Literal) left).getLiteral() instanceof Boolean) {
+                    boolean value = (Boolean) ((Ast.Expr.Literal) left).getLiteral();
+                    if (value == operator.equals("OR")) {
+                        return new Ast.Expr.Literal(value);
+                    } else if (right instanceof Ast.Expr.Literal && ((Ast.Expr.Literal) right).getLiteral() instanceof Boolean) {
+                        return right;
+                    }
+                }
+            } else if (left instanceof Ast.Expr.Literal && right instanceof Ast.Expr.Literal) {
+                Ast.Expr folded = fold(operator, ((Ast.Expr.Literal) left).getLiteral(), ((Ast.Expr.Literal) right).getLiteral());
+                if (folded != null) {
+                    return folded;
+                }
+            } else if (operator.equals("+") && right instanceof Ast.Expr.Literal && isConcatenation(left)) {
+                // Adding to a string always concatenates, so (x + "a") + "b"
+                // is x + ("a" + "b").
+                Ast.Expr.Binary concatenation = (Ast.Expr.Binary) left;
+                Object literal = ((Ast.Expr.Literal) concatenation.getRight()).getLiteral();
+                Object value = Environment.add(literal, ((Ast.Expr.Literal) right).getLiteral());
+                return new Ast.Expr.Binary("+", concatenation.getLeft(), new Ast.Expr.Literal(value));
+            } else if (isIdentity(operator, right, true) && isInteger(left)) {
+                return left;
+            } else if (isIdentity(operator, left, false) && isInteger(right)) {
+                return right;
+            }
+            if (left == ast.getLeft() && right == ast.getRight()) {
+                return ast;
+            }
+            return new Ast.Expr.Binary(operator, left, right);
+        }
+
+        /**
+         * Returns the literal result of an operator applied to two literals,
+         * or {@code null} if it would fail.
+         */
+        private static Ast.Expr fold(String operator, Object left, Object right) {
+            try {
+                switch (operator) {
+                    case "+":
+                        return new Ast.Expr.Literal(Environment.add(left, right));
+                    case "-":
+                        return new Ast.Expr.Literal(Environment.subtract(left, right));
+                    case "*":
+                        return new Ast.Expr.Literal(Environment.multiply(left, right));
+                    case "/":
+                        return new Ast.Expr.Literal(Environment.divide(left, right));
+                    case "<":
+                        return new Ast.Expr.Literal(Environment.compare(left, right) < 0);
+                    case "<=":
+                        return new Ast.Expr.Literal(Environment.compare(left, right) <= 0);
+                    case ">":
+                        return new Ast.Expr.Literal(Environment.compare(left, right) > 0);
+                    case ">=":
+                        return new Ast.Expr.Literal(Environment.compare(left, right) >= 0);
+                    case "==":
+                        return new Ast.Expr.Literal(Objects.equals(left, right));
+                    case "!=":
+                        return new Ast.Expr.Literal(!Objects.equals(left, right));
+                    default:
+                        return null;
+                }
+            } catch (EvaluationException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Returns whether {@code ast} is an addition of a string literal.
+         */
+        private static boolean isConcatenation(Ast.Expr ast) {
+            return ast instanceof Ast.Expr.Binary && ((Ast.Expr.Binary) ast).getOperator().equals("+")
+                    && ((Ast.Expr.Binary) ast).getRight() instanceof Ast.Expr.Literal
+                    && ((Ast.Expr.Literal) ((Ast.Expr.Binary) ast).getRight()).getLiteral() instanceof String;
+        }
+
+        /**
+         * Returns whether {@code ast} is the integer identity of {@code
+         * operator} as its right (or left) operand.
+         */
+        private static boolean isIdentity(String operator, Ast.Expr ast, boolean right) {
+            if (!(ast instanceof Ast.Expr.Literal)) {
+                return false;
+            }
+            Object literal = ((Ast.Expr.Literal) ast).getLiteral();
+            switch (operator) {
+                case "+":
+                    return BigInteger.ZERO.equals(literal);
+                case "*":
+                    return BigInteger.ONE.equals(literal);
+                case "-":
+                    return right && BigInteger.ZERO.equals(literal);
+                case "/":
+                    return right && BigInteger.ONE.equals(literal);
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Returns whether {@code ast} evaluates to an integer whenever it
+         * evaluates without error, which is what makes {@code x + 0} equal to
+         * {@code x} (rather than a concatenation, or an error for a decimal).
+         */
+        private static boolean isInteger(Ast.Expr ast) {
+            if (ast instanceof Ast.Expr.Literal) {
+                return ((Ast.Expr.Literal) ast).getLiteral() instanceof BigInteger;
+            } else if (ast instanceof Ast.Expr.Binary) {
+                Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+                switch (binary.getOperator()) {
+                    case "+":
+                        return isInteger(binary.getLeft()) && isInteger(binary.getRight());
+                    case "-":
+                    case "*":
+                    case "/":
+                        return isInteger(binary.getLeft()) || isInteger(binary.getRight());
+                    default:
+                        return false;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    private static final class Eliminator extends Rewriter {
+
+        private final Set<String> entryPoints;
+
+        private Eliminator(Set<String> entryPoints) {
+            this.entryPoints = entryPoints;
+        }
+
+        @Override
+        public Ast visit(Ast.Source ast) {
+            Map<String, Ast.Method> methods = new HashMap<>();
+            for (Ast.Method method : ast.getMethods()) {
+                methods.putIfAbsent(method.getName() + "/" + method.getParameters().size(), method);
+            }
+            References references = new References();
+            ast.getFields().forEach(references::visit);
+            ArrayDeque<String> pending = new ArrayDeque<>(entryPoints);
+            pending.addAll(references.calls);
+            Set<String> reachable = new HashSet<>();
+            while (!pending.isEmpty()) {
+                String key = pending.pop();
+                Ast.Method method = methods.get(key);
+                if (method != null && reachable.add(key)) {
+                    References callees = new References();
+                    method.getStatements().forEach(callees::visit);
+                    pending.addAll(callees.calls);
+                }
+            }
+            List<Ast.Method> retained = new ArrayList<>();
+            for (Ast.Method method : ast.getMethods()) {
+                if (reachable.contains(method.getName() + "/" + method.getParameters().size())) {
+                    retained.add(method);
+                }
+            }
+            List<Ast.Method> rewritten = rewrite(retained.size() == ast.getMethods().size() ? ast.getMethods() : retained);
+            if (rewritten == ast.getMethods()) {
+                return ast;
+            }
+            return new Ast.Source(ast.getFields(), rewritten, ast.getSpans());
+        }
+
+        @Override
+        List<Ast.Stmt> statements(List<Ast.Stmt> statements) {
+            List<Ast.Stmt> rewritten = rewrite(statements);
+            List<Ast.Stmt> live = new ArrayList<>();
+            boolean changed = rewritten != statements;
+            for (Ast.Stmt statement : rewritten) {
+                if (statement instanceof Ast.Stmt.If && isBoolean(((Ast.Stmt.If) statement).getCondition())) {
+                    Ast.Stmt.If branch = (Ast.Stmt.If) statement;
+                    boolean condition = (Boolean) ((Ast.Expr.Literal) branch.getCondition()).getLiteral();
+                    List<Ast.Stmt> taken = condition ? branch.getThenStatements() : branch.getElseStatements();
+                    if (taken.stream().noneMatch(Ast.Stmt.Declaration.class::isInstance)) {
+                        live.addAll(taken);
+                        changed = true;
+                    } else if (!condition || !branch.getElseStatements().isEmpty()) {
+                        // The declarations must stay in their own scope.
+                        live.add(new Ast.Stmt.If(new Ast.Expr.Literal(true), taken, List.of()));
+                        changed = true;
+                    } else {
+                        live.add(statement);
+                    }
+                } else if (statement instanceof Ast.Stmt.While && isBoolean(((Ast.Stmt.While) statement).getCondition())
+                        && !(Boolean) ((Ast.Expr.Literal) ((Ast.Stmt.While) statement).getCondition()).getLiteral()) {
+                    changed = true;
+                } else {
+                    live.add(statement);
+                }
+                if (!live.isEmpty() && returns(live.get(live.size() - 1))) {
+                    changed |= statement != rewritten.get(rewritten.size() - 1);
+                    break;
+                }
+            }
+            // Removing a declaration can make an earlier one unused, so the
+            // statements are scanned backwards.
+            Set<String> names = new HashSet<>();
+            for (int i = live.size() - 1; i >= 0; i--) {
+                Ast.Stmt statement = live.get(i);
+                if (statement instanceof Ast.Stmt.Declaration && !names.contains(((Ast.Stmt.Declaration) statement).getName())
+                        && ((Ast.Stmt.Declaration) statement).getValue().map(Eliminator::isPure).orElse(true)) {
+                    live.remove(i);
+                    changed = true;
+                } else {
+                    References references = new References();
+                    references.visit(statement);
+                    names.addAll(references.names);
+                }
+            }
+            return changed ? live : statements;
+        }
+
+        /**
+         * Returns whether a statement never completes normally.
+         */
+        private static boolean returns(Ast.Stmt statement) {
+            if (statement instanceof Ast.Stmt.Return) {
+                return true;
+            } else if (statement instanceof Ast.Stmt.If) {
+                Ast.Stmt.If branch = (Ast.Stmt.If) statement;
+                return returns(branch.getThenStatements()) && returns(branch.getElseStatements());
+            }
+            return false;
+        }
+
+        private static boolean returns(List<Ast.Stmt> statements) {
+            return !statements.isEmpty() && returns(statements.get(statements.size() - 1));
+        }
+
+        private static boolean isBoolean(Ast.Expr ast) {
+            return ast instanceof Ast.Expr.Literal && ((Ast.Expr.Literal) ast).getLiteral() instanceof Boolean;
+        }
+
+        /**
+         * Returns whether evaluating {@code ast} has no effects and cannot
+         * fail at runtime.
+         */
+        private static boolean isPure(Ast.Expr ast) {
+            if (ast instanceof Ast.Expr.Literal) {
+                return true;
+            } else if (ast instanceof Ast.Expr.Group) {
+                return isPure(((Ast.Expr.Group) ast).getExpression());
+            } else if (ast instanceof Ast.Expr.Access) {
+                return ((Ast.Expr.Access) ast).getReceiver().isEmpty();
+            } else if (ast instanceof Ast.Expr.Binary) {
+                Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+                return (binary.getOperator().equals("==") || binary.getOperator().equals("!="))
+                        && isPure(binary.getLeft()) && isPure(binary.getRight());
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * Collects the variable names mentioned (declared, read or assigned) and
+     * the program methods called, as {@code name/arity}, by a tree.
+     */
+    private static final class References implements Ast.Visitor<Void> {
+
+        private final Set<String> names = new HashSet<>();
+        private final Set<String> calls = new HashSet<>();
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            ast.getFields().forEach(this::visit);
+            ast.getMethods().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            names.add(ast.getName());
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            ast.getStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            names.add(ast.getName());
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            visit(ast.getReceiver());
+            return visit(ast.getValue());
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            visit(ast.getCondition());
+            ast.getThenStatements().forEach(this::visit);
+            ast.getElseStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            names.add(ast.getName());
+            visit(ast.getValue());
+            ast.getStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            visit(ast.getCondition());
+            ast.getStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            return visit(ast.getValue());
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Error ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            visit(ast.getLeft());
+            return visit(ast.getRight());
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            if (ast.getReceiver().isPresent()) {
+                return visit(ast.getReceiver().get());
+            }
+            names.add(ast.getName());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            if (ast.getReceiver().isPresent()) {
+                visit(ast.getReceiver().get());
+            } else {
+                calls.add(ast.getName() + "/" + ast.getArguments().size());
+            }
+            ast.getArguments().forEach(this::visit);
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,166 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Runs an analysis over an {@link Ast.Source} in parallel on a {@link
+ * ForkJoinPool}, combining the results with a reducer.
+ *
+ * The tree is split into work units, each field and each method, and the
+ * analysis is applied to every unit, typically as {@code ast -> ast.accept(new
+ * SomeVisitor())} so that visitors, which are not thread-safe, are never
+ * shared between units.
+ *
+ * Given a {@code header} analysis, a method with more than {@code threshold}
+ * statements is split further: the header analysis is applied to the method
+ * itself, and is responsible for the method but not its statements, and the
+ * analysis is applied to each of the statements. Both are given the nodes of
+ * the tree, so analyses may look nodes up by identity, such as in a {@link
+ * SpanTable}. For the result not to depend on the threshold, the analysis of
+ * a method must equal the reduction of its header analysis and the analysis
+ * of each statement, which is the case for passes written in the style of
+ * {@link Ast.Walker}.
+ *
+ * Results are reduced in source order (all fields, then all methods) with a
+ * fixed shape for a given tree and threshold, regardless of how work is
+ * scheduled, so the result is deterministic as long as the reducer is
+ * associative; it need not be commutative. Method bodies created in outline
+ * mode are parsed by the worker which analyzes them.
+ */
+public final class ParallelTraversal<R> {
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final Function<? super Ast, ? extends R> analysis;
+    private final Function<? super Ast.Method, ? extends R> header;
+    private final R identity;
+    private final BinaryOperator<R> reducer;
+
+    /**
+     * Creates a traversal on the common pool which does not split methods.
+     */
+    public ParallelTraversal(Function<? super Ast, ? extends R> analysis, R identity, BinaryOperator<R> reducer) {
+        this(ForkJoinPool.commonPool(), analysis, identity, reducer);
+    }
+
+    /**
+     * Creates a traversal on {@code pool} which does not split methods.
+     */
+    public ParallelTraversal(ForkJoinPool pool, Function<? super Ast, ? extends R> analysis, R identity, BinaryOperator<R> reducer) {
+        this(pool, Integer.MAX_VALUE, analysis, null, identity, reducer);
+    }
+
+    /**
+     * Creates a traversal on {@code pool} which splits methods with more than
+     * {@code threshold} statements, using {@code header} for the method.
+     */
+    public ParallelTraversal(ForkJoinPool pool, int threshold, Function<? super Ast, ? extends R> analysis,
+                             Function<? super Ast.Method, ? extends R> header, R identity, BinaryOperator<R> reducer) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Invalid threshold " + threshold);
+        }
+        this.pool = pool;
+        this.threshold = threshold;
+        this.analysis = analysis;
+        this.header = header;
+        this.identity = identity;
+        this.reducer = reducer;
+    }
+
+    /**
+     * Returns the reduction of the analysis of every unit of {@code source},
+     * or the identity if there are none.
+     */
+    public R traverse(Ast.Source source) {
+        List<Ast> members = new ArrayList<>(source.getFields().size() + source.getMethods().size());
+        members.addAll(source.getFields());
+        members.addAll(source.getMethods());
+        if (members.isEmpty()) {
+            return identity;
+        }
+        return pool.invoke(new MembersTask(members, 0, members.size()));
+    }
+
+    /**
+     * Analyzes the fields and methods from {@code start} (inclusive) to
+     * {@code end} (exclusive), splitting the range in half until it holds a
+     * single member.
+     */
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private final class MembersTask extends RecursiveTask<R> {
+
+        private final List<Ast> members;
+        private final int start;
+        private final int end;
+
+        private MembersTask(List<Ast> members, int start, int end) {
+            this.members = members;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected R compute() {
+            if (end - start > 1) {
+                int middle = (start + end) >>> 1;
+                MembersTask left = new MembersTask(members, start, middle);
+                left.fork();
+                R right = new MembersTask(members, middle, end).compute();
+                return reducer.apply(left.join(), right);
+            }
+            Ast member = members.get(start);
+            if (header != null && member instanceof Ast.Method) {
+                Ast.Method method = (Ast.Method) member;
+                List<Ast.Stmt> statements = method.getStatements();
+                if (statements.size() > threshold) {
+                    R result = header.apply(method);
+                    return reducer.apply(result, new StatementsTask(statements, 0, statements.size()).compute());
+                }
+            }
+            return analysis.apply(member);
+        }
+
+    }
+
+    /**
+     * Analyzes the statements from {@code start} (inclusive) to {@code end}
+     * (exclusive), splitting the range in half while it holds more than
+     * {@code threshold} statements.
+     */
+    @SuppressWarnings("serial") // Tasks are never serialized.
+    private final class StatementsTask extends RecursiveTask<R> {
+
+        private final List<Ast.Stmt> statements;
+        private final int start;
+        private final int end;
+
+        private StatementsTask(List<Ast.Stmt> statements, int start, int end) {
+            this.statements = statements;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected R compute() {
+            if (end - start > threshold) {
+                int middle = (start + end) >>> 1;
+                StatementsTask left = new StatementsTask(statements, start, middle);
+                left.fork();
+                R right = new StatementsTask(statements, middle, end).compute();
+                return reducer.apply(left.join(), right);
+            }
+            R result = analysis.apply(statements.get(start));
+            for (int i = start + 1; i < end; i++) {
+                result = reducer.apply(result, analysis.apply(statements.get(i)));
+            }
+            return result;
+        }
+
+    }
+
+}
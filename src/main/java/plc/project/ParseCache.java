@@ -0,0 +1,199 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A content-addressed cache of parse results. Sources are keyed by the
+ * SHA-256 hash of their text, so an unchanged source is returned from the
+ * cache without calling {@link Lexer#lex()} or {@link Parser#parseSource()}
+ * regardless of where it came from.
+ *
+ * Results are kept in memory in a least-recently-used map holding at most
+ * {@code capacity} entries. If a directory is given, results are also stored
+ * there (one file per hash, written with {@link AstCodec}, spans included) so
+ * they survive across processes; a file that cannot be read, such as one
+ * written in an older format, is treated as a miss and replaced, and a result
+ * that cannot be written is only kept in memory.
+ *
+ * Cached trees are shared between callers and must not be modified. All
+ * methods are safe to call from multiple threads.
+ */
+public final class ParseCache {
+
+    private final Map<String, Ast.Source> memory;
+    private final Path directory;
+
+    private long memoryHits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+
+    public ParseCache(int capacity) {
+        this(capacity, null);
+    }
+
+    public ParseCache(int capacity, Path directory) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity " + capacity);
+        }
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Ast.Source> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the parsed AST for {@code input}, lexing and parsing it only if
+     * it is not in the cache. Inputs that fail to parse are not cached.
+     */
+    public Ast.Source parse(String input) throws ParseException {
+        String key = hash(input);
+        synchronized (this) {
+            Ast.Source cached = memory.get(key);
+            if (cached != null) {
+                memoryHits++;
+                return cached;
+            }
+        }
+        Ast.Source source = directory != null ? load(key) : null;
+        boolean stored = source != null;
+        if (source == null) {
+            source = new Parser(new Lexer(input).lex()).parseSource();
+        }
+        synchronized (this) {
+            if (stored) {
+                diskHits++;
+            } else {
+                misses++;
+            }
+            memory.put(key, source);
+        }
+        if (!stored && directory != null) {
+            store(key, source);
+        }
+        return source;
+    }
+
+    /**
+     * Returns the number of lookups answered from memory.
+     */
+    public synchronized long getMemoryHits() {
+        return memoryHits;
+    }
+
+    /**
+     * Returns the number of lookups answered from the disk store.
+     */
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * Returns the number of lookups which required lexing and parsing.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of lookups answered from either memory or disk, or
+     * {@code 0} if there have been no lookups.
+     */
+    public synchronized double getHitRatio() {
+        long lookups = memoryHits + diskHits + misses;
+        return lookups == 0 ? 0 : (double) (memoryHits + diskHits) / lookups;
+    }
+
+    /**
+     * Returns the number of entries currently held in memory.
+     */
+    public synchronized int size() {
+        return memory.size();
+    }
+
+    /**
+     * Removes all entries from memory, leaving the disk store and statistics
+     * intact.
+     */
+    public synchronized void clear() {
+        memory.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ParseCache{" +
+                "size=" + memory.size() +
+                ", memoryHits=" + memoryHits +
+                ", diskHits=" + diskHits +
+                ", misses=" + misses +
+                ", hitRatio=" + getHitRatio() +
+                '}';
+    }
+
+    private Ast.Source load(String key) {
+        Path file = directory.resolve(key + ".ast");
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (InputStream input = Files.newInputStream(file)) {
+            return AstCodec.read(input);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the entry to a temporary file which is then moved into place, so
+     * concurrent readers never observe a partially written entry. As with
+     * {@link #load(String)}, the disk store is best-effort: if the entry
+     * cannot be written, it is dropped.
+     */
+    private void store(String key, Ast.Source source) {
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            try (OutputStream output = Files.newOutputStream(temporary)) {
+                AstCodec.write(source, output);
+            }
+            Files.move(temporary, directory.resolve(key + ".ast"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                if (temporary != null) {
+                    Files.deleteIfExists(temporary);
+                }
+            } catch (IOException ignored) {
+                // The temporary file is left behind, and never read.
+            }
+        }
+    }
+
+    private static String hash(String input) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is required to be supported", e);
+        }
+        byte[] bytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+}
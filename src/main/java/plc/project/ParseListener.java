@@ -0,0 +1,98 @@
+package plc.project;
+
+/**
+ * Receives the events emitted by a {@link StreamingParser} as it consumes
+ * tokens. All methods default to doing nothing, so implementations only
+ * override the events they care about.
+ *
+ * Events follow the structure of the AST. Expressions are reported in
+ * post-order, meaning the events for a node's receiver, operands, and
+ * arguments always come before the event for the node itself. Statements are
+ * bracketed by {@link #onStatementStart()} and {@link #onStatement(Kind,
+ * String)}, with the events for any nested expressions and statements in
+ * between (and {@link #onElse()} separating the branches of an {@code IF}).
+ */
+public interface ParseListener {
+
+    /**
+     * The kinds of statement reported by {@link #onStatement(Kind, String)},
+     * corresponding to the subclasses of {@link Ast.Stmt}.
+     */
+    enum Kind {
+        EXPRESSION,
+        DECLARATION,
+        ASSIGNMENT,
+        IF,
+        FOR,
+        WHILE,
+        RETURN
+    }
+
+    /**
+     * Called after a field has been parsed. If {@code initialized} is true, the
+     * events for its value immediately precede this one.
+     */
+    default void onField(String name, boolean initialized) {}
+
+    /**
+     * Called after the name of a method has been parsed, before any of its
+     * parameters.
+     */
+    default void onMethodStart(String name) {}
+
+    /**
+     * Called for each parameter of the current method, in order.
+     */
+    default void onParameter(String name) {}
+
+    /**
+     * Called after the {@code END} of the current method.
+     */
+    default void onMethodEnd(String name) {}
+
+    /**
+     * Called before the first token of each statement.
+     */
+    default void onStatementStart() {}
+
+    /**
+     * Called when an {@code IF} statement moves on to its {@code ELSE} block.
+     */
+    default void onElse() {}
+
+    /**
+     * Called after a statement has been parsed. The {@code name} is the
+     * variable of a {@link Kind#DECLARATION} or {@link Kind#FOR} and is
+     * {@code null} for all other kinds.
+     */
+    default void onStatement(Kind kind, String name) {}
+
+    /**
+     * Called for a literal, with the same value as {@link
+     * Ast.Expr.Literal#getLiteral()}.
+     */
+    default void onLiteral(Object literal) {}
+
+    /**
+     * Called after the expression inside a group.
+     */
+    default void onGroup() {}
+
+    /**
+     * Called after the left and right operands of a binary expression.
+     */
+    default void onBinary(String operator) {}
+
+    /**
+     * Called for a variable or field access, after the receiver if there is
+     * one.
+     */
+    default void onAccess(String name, boolean hasReceiver) {}
+
+    /**
+     * Called for a function or method call, after the receiver (if there is
+     * one) and the {@code arguments} argument expressions.
+     */
+    default void onCall(String name, boolean hasReceiver, int arguments) {}
+
+}
@@ -3,6 +3,8 @@ package plc.project;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,34 +20,131 @@ import java.util.Optional;
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have it's own function, and reference to other rules correspond
  * to calling that functions.
+ *
+ * By default the first syntax error aborts parsing with a {@link
+ * ParseException}. With {@link Option#RECOVER}, errors are instead recorded
+ * (see {@link #getErrors()}), the token stream is synchronized to the next
+ * {@code ;}, {@code END}, {@code LET} or {@code DEF}, and parsing continues.
+ * Statements that failed to parse are replaced by {@link Ast.Stmt.Error}.
+ *
+ * With {@link Option#OUTLINE}, method bodies are not parsed up front. The
+ * parser only skips to the {@code END} matching the method's {@code DO},
+ * counting nested {@code DO ... END} blocks, and the statements are parsed
+ * from the recorded token range on the first call to {@link
+ * Ast.Method#getStatements()}. Syntax errors in a body are therefore reported
+ * by that call rather than by {@link #parseSource()}, or when recovering are
+ * added to {@link #getErrors()} once the body is parsed.
+ *
+ * The source span of every node created is recorded in a {@link SpanTable},
+ * available from {@link #getSpans()} and {@link Ast.Source#getSpans()}. Nodes
+ * are created through an {@link AstFactory}, which may share structurally
+ * equal subtrees.
  */
 public final class Parser {
 
+    /**
+     * Optional parser behaviors, passed to {@link #Parser(List, Option...)}.
+     */
+    public enum Option {
+        RECOVER,
+        OUTLINE
+    }
+
+    /**
+     * The length of the longest number literal (including a sign, but not a
+     * decimal point) which always fits in a {@code long}, and is parsed
+     * without creating a {@link BigInteger} or {@link BigDecimal}.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
     private final TokenStream tokens;
+    private final boolean recover;
+    private final boolean outline;
+    private final List<ParseException> errors = new ArrayList<>();
+    private final SpanTable spans = new SpanTable();
+    private final AstFactory factory;
 
     //TODO: I need to change the way I use peek when I want to check for multiple options.
     //I believe I should be using Regex instead of a ',' becasue that chekcs for multiple things in a row.
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this(tokens, new Option[0]);
+    }
+
+    public Parser(List<Token> tokens, Option... options) {
+        this(tokens, new AstFactory(), options);
+    }
+
+    /**
+     * Creates a parser which creates nodes through {@code factory}, such as
+     * an interning {@link AstFactory} shared between parsers.
+     */
+    public Parser(List<Token> tokens, AstFactory factory, Option... options) {
+        this.tokens = new TokenStream(tokens, 0, tokens.size());
+        this.recover = Arrays.asList(options).contains(Option.RECOVER);
+        this.outline = Arrays.asList(options).contains(Option.OUTLINE);
+        this.factory = factory;
+    }
+
+    /**
+     * Creates a parser for the deferred body of a method in outline mode,
+     * limited to the tokens from {@code start} (inclusive) to {@code end}
+     * (exclusive). Tokens before {@code start} remain visible for error
+     * indices, as they would be when parsing the whole input.
+     */
+    private Parser(List<Token> tokens, int start, int end, boolean recover, AstFactory factory) {
+        this.tokens = new TokenStream(tokens, start, end);
+        this.recover = recover;
+        this.outline = false;
+        this.factory = factory;
+    }
+
+    /**
+     * Returns a snapshot of the errors recorded while recovering, in source
+     * order. This is always empty unless the parser was created with {@link
+     * Option#RECOVER}. In outline mode, the errors of a method body are only
+     * included once the body has been parsed.
+     */
+    public List<ParseException> getErrors() {
+        synchronized (errors) {
+            return List.copyOf(errors);
+        }
+    }
+
+    /**
+     * Returns the spans of the nodes created by this parser so far.
+     */
+    public SpanTable getSpans() {
+        return spans;
     }
 
     /**
      * Parses the {@code source} rule.
      */
     public Ast.Source parseSource() throws ParseException {
+        int offset = currentOffset();
         List<Ast.Field> fields = new ArrayList<>();
         List<Ast.Method> methods = new ArrayList<>();
         while (tokens.has(0)) {
-            if (peek("LET")) {
-                fields.add(parseField());
-            } else if (peek("DEF")) {
-                methods.add(parseMethod());
-            } else {
-                throw new ParseException("Expected LET or DEF", tokens.get(0).getIndex());
+            int start = tokens.index;
+            try {
+                if (peek("LET")) {
+                    fields.add(parseField());
+                } else if (peek("DEF")) {
+                    methods.add(parseMethod());
+                } else {
+                    throw new ParseException("Expected LET or DEF", currentOffset());
+                }
+            } catch (ParseException e) {
+                recoverFrom(e, start);
+                // Nothing is open at the top level, so an END the rule was
+                // synchronized to is part of the same error.
+                while (peek("END")) {
+                    tokens.advance();
+                }
             }
         }
 
-        return new Ast.Source(fields, methods);
+        return span(factory.source(fields, methods, spans), offset);
     }
 
     /**
@@ -53,6 +152,7 @@ public final class Parser {
      * next tokens start a field, aka {@code LET}.
      */
     public Ast.Field parseField() throws ParseException {
+        int start = currentOffset();
         match("LET");
         Optional<Ast.Expr> value = Optional.empty();
         if (peek(Token.Type.IDENTIFIER)) {
@@ -63,16 +163,15 @@ public final class Parser {
                 Ast.Expr expression = parseExpression();
                 value = Optional.of(expression);
             }
-            System.out.println(peek(";"));
             if (peek(";")) {
                 match(";");
-                return new Ast.Field(name, value);
+                return span(factory.field(name, value), start);
             } else {
-                throw new ParseException("Expected ;", tokens.get(0).getIndex());
+                throw new ParseException("Expected ;", currentOffset());
             }
         }
         else {
-            throw new ParseException("Expected IDENTIFIER", tokens.get(0).getIndex());
+            throw new ParseException("Expected IDENTIFIER", currentOffset());
         }
     }
 
@@ -81,26 +180,27 @@ public final class Parser {
      * next tokens start a method, aka {@code DEF}.
      */
     public Ast.Method parseMethod() throws ParseException {
+        int start = currentOffset();
         match("DEF");
 
         if (!peek(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Expected IDENTIFIER", tokens.get(0).getIndex());
+            throw new ParseException("Expected IDENTIFIER", currentOffset());
         }
         String name = tokens.get(0).getLiteral();
         match(Token.Type.IDENTIFIER);
         List<String> parameters = new ArrayList<>();
         if (!peek("(")) {
-            throw new ParseException("Expected (", tokens.get(0).getIndex());
+            throw new ParseException("Expected (", currentOffset());
         }
         match("(");
         while(!peek(")")) {
             if (!peek(Token.Type.IDENTIFIER)) {
-                throw new ParseException("Expected IDENTIFIER", tokens.get(0).getIndex());
+                throw new ParseException("Expected IDENTIFIER", currentOffset());
             }
             parameters.add(tokens.get(0).getLiteral());
             match(Token.Type.IDENTIFIER);
             if (peek(",", ")")) {
-                throw new ParseException("Can't end with ,", tokens.get(0).getIndex());
+                throw new ParseException("Can't end with ,", currentOffset());
             }
             if (peek(",")) {
                 match(",");
@@ -109,18 +209,162 @@ public final class Parser {
         match(")");
 
         if (!peek("DO")) {
-            throw new ParseException("Expected DO", tokens.get(0).getIndex());
+            throw new ParseException("Expected DO", currentOffset());
         }
 
-        List<Ast.Stmt> statements = new ArrayList<>();
         match("DO");
-        while (!peek("END")) {
-            statements.add(parseStatement());
+        if (outline) {
+            List<Token> source = tokens.tokens;
+            int bodyStart = tokens.index;
+            skipBlock();
+            int bodyEnd = tokens.index;
+            expectEnd();
+            boolean recover = this.recover;
+            SpanTable spans = this.spans;
+            List<ParseException> errors = this.errors;
+            AstFactory factory = this.factory;
+            return span(factory.method(name, parameters, () -> {
+                Parser body = new Parser(source, bodyStart, bodyEnd, recover, factory);
+                List<Ast.Stmt> statements = body.parseBlock("END");
+                spans.merge(body.spans);
+                if (!body.errors.isEmpty()) {
+                    synchronized (errors) {
+                        errors.addAll(body.errors);
+                        errors.sort(Comparator.comparingInt(ParseException::getIndex));
+                    }
+                }
+                return statements;
+            }), start);
         }
+        List<Ast.Stmt> statements = parseBlock("END");
+        expectEnd();
+
+        return span(factory.method(name, parameters, statements), start);
+    }
 
-        match("END");
+    /**
+     * Skips the contents of a {@code DO} block up to (but not including) its
+     * matching {@code END}, tracking the depth of nested blocks. A {@code DEF}
+     * also stops the skip, since it can only mean an {@code END} is missing.
+     */
+    private void skipBlock() {
+        int depth = 0;
+        while (tokens.has(0) && !peek("DEF") && (depth > 0 || !peek("END"))) {
+            if (peek("DO")) {
+                depth++;
+            } else if (peek("END")) {
+                depth--;
+            }
+            tokens.advance();
+        }
+    }
 
-        return new Ast.Method(name, parameters, statements);
+    /**
+     * Parses statements until one of the given {@code terminators} (or the end
+     * of input) is reached, without consuming the terminator. When recovering,
+     * a statement that fails to parse is replaced by an {@link Ast.Stmt.Error}
+     * and a {@code DEF} also ends the block, since it can never start a
+     * statement and most likely means an {@code END} is missing.
+     */
+    private List<Ast.Stmt> parseBlock(String... terminators) throws ParseException {
+        List<Ast.Stmt> statements = new ArrayList<>();
+        while (tokens.has(0) && !peekAny(terminators) && !(recover && peek("DEF"))) {
+            int start = tokens.index;
+            int offset = currentOffset();
+            try {
+                statements.add(parseStatement());
+            } catch (ParseException e) {
+                recoverFrom(e, start);
+                statements.add(span(factory.errorStatement(e.getMessage(), e.getIndex()), offset));
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Matches the {@code END} closing a block. When recovering, a missing
+     * {@code END} is recorded rather than discarding the enclosing node.
+     */
+    private void expectEnd() throws ParseException {
+        if (!match("END")) {
+            ParseException error = new ParseException("Expected END", currentOffset());
+            if (!recover) {
+                throw error;
+            }
+            errors.add(error);
+        }
+    }
+
+    /**
+     * Records {@code error} and synchronizes the token stream, rethrowing the
+     * error if the parser is not recovering. {@code start} is the stream index
+     * at which the failed rule began and is used to guarantee progress.
+     */
+    private void recoverFrom(ParseException error, int start) throws ParseException {
+        if (!recover) {
+            throw error;
+        }
+        errors.add(error);
+        synchronize();
+        if (tokens.index == start) {
+            tokens.advance();
+        }
+    }
+
+    /**
+     * Skips tokens until a synchronization point: just past a {@code ;} or
+     * past the {@code END} closing a {@code DO} block opened while skipping, or
+     * just before a {@code LET}, {@code DEF}, {@code ELSE} or unmatched {@code
+     * END}. Nested {@code DO ... END} blocks are skipped as a whole.
+     */
+    private void synchronize() {
+        int depth = 0;
+        while (tokens.has(0)) {
+            if (peek("DEF") || (depth == 0 && peekAny("LET", "ELSE", "END"))) {
+                return;
+            } else if (peek("DO")) {
+                depth++;
+            } else if (peek("END")) {
+                depth--;
+                if (depth == 0) {
+                    tokens.advance();
+                    return;
+                }
+            } else if (depth == 0 && peek(";")) {
+                tokens.advance();
+                return;
+            }
+            tokens.advance();
+        }
+    }
+
+    /**
+     * Returns the character offset of the current position, which is the
+     * start of the next token or, once the input is exhausted, just past the
+     * previous token. This is also the index reported for errors.
+     */
+    private int currentOffset() {
+        return tokens.has(0) ? tokens.get(0).getIndex() : previousEnd();
+    }
+
+    /**
+     * Returns the character offset just past the previously consumed token.
+     */
+    private int previousEnd() {
+        if (tokens.index == 0) {
+            return 0;
+        }
+        Token previous = tokens.get(-1);
+        return previous.getIndex() + previous.getLiteral().length();
+    }
+
+    /**
+     * Records the span of {@code node} from {@code start} to the end of the
+     * previously consumed token, returning the node.
+     */
+    private <T extends Ast> T span(T node, int start) {
+        spans.record(node, start, previousEnd());
+        return node;
     }
 
     /**
@@ -129,6 +373,7 @@ public final class Parser {
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Stmt parseStatement() throws ParseException {
+        int start = currentOffset();
         if (peek("LET")) {
             return parseDeclarationStatement();
         } else if (peek("IF")) {
@@ -148,27 +393,24 @@ public final class Parser {
                 Ast.Expr value = parseExpression();
                 if(peek(";")){
                     match(";");
-                    return new Ast.Stmt.Assignment(expr, value);
+                    return span(factory.assignmentStatement(expr, value), start);
                 }else{
-`                    System.out.println("hahaha");
-                    throw new ParseException("Needed a ; at the end", tokens.get(0).getIndex());
+                    throw new ParseException("Needed a ; at the end", currentOffset());
                 }
 //                return new Ast.Stmt.Assignment(expr, value);
             }
 
             if(peek(";")){
                 match(";");
-                return new Ast.Stmt.Expression(expr);
+                return span(factory.expressionStatement(expr), start);
             }else{
-                System.out.println("hehehe");
-                throw new ParseException("Needed a ; at the end", 0);
+                throw new ParseException("Needed a ; at the end", currentOffset());
             }
         }
         else {
 //            System.out.println("HERE");
 //            System.out.println(tokens.get(-1).getLiteral());
-            System.out.println(tokens.get(-1).getLiteral().length() + tokens.get(-1).getIndex());
-            throw new ParseException("Expected LET, IF, FOR, WHILE, RETURN, or IDENTIFIER", tokens.get(-1).getLiteral().length() + tokens.get(-1).getIndex());
+            throw new ParseException("Expected LET, IF, FOR, WHILE, RETURN, or IDENTIFIER", previousEnd());
         }
     }
 
@@ -178,29 +420,28 @@ public final class Parser {
      * statement, aka {@code LET}.
      */
     public Ast.Stmt.Declaration parseDeclarationStatement() throws ParseException {
+        int start = currentOffset();
         match("LET");
 
         if (!peek(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Expected IDENTIFIER", tokens.get(0).getIndex());
+            throw new ParseException("Expected IDENTIFIER", currentOffset());
         }
 
         String name = tokens.get(0).getLiteral();
         match(Token.Type.IDENTIFIER);
 
 //        if (!peek("=")) {
-//            throw new ParseException("Expected =", tokens.get(0).getIndex());
+//            throw new ParseException("Expected =", currentOffset());
 //        }
 
         Optional<Ast.Expr> value = Optional.empty();
         if (match("=")) {
             value = Optional.of(parseExpression());
         }
-        System.out.println(tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-//        System.out.println(tokens.get(0).getIndex());
         if(match(";")){
-            return new Ast.Stmt.Declaration(name, value);
+            return span(factory.declarationStatement(name, value), start);
         }else{
-            throw new ParseException("Expected ;", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+            throw new ParseException("Expected ;", previousEnd());
         }
     }
 
@@ -210,29 +451,24 @@ public final class Parser {
      * {@code IF}.
      */
     public Ast.Stmt.If parseIfStatement() throws ParseException {
+        int start = currentOffset();
         match("IF");
         Ast.Expr condition = parseExpression();
         if (!peek("DO")) {
-            throw new ParseException("Expected DO", tokens.get(0).getIndex());
+            throw new ParseException("Expected DO", currentOffset());
         }
         match("DO");
-        List<Ast.Stmt> statements = new ArrayList<>();
-        while (!peek("ELSE") && !peek("END")) {
-            statements.add(parseStatement());
-        }
+        List<Ast.Stmt> statements = parseBlock("ELSE", "END");
 
         if (match("ELSE")) {
 //            match("ELSE");
-            List<Ast.Stmt> elseStatements = new ArrayList<>();
-            while (!peek("END")) {
-                elseStatements.add(parseStatement());
-            }
-            match("END");
-            return new Ast.Stmt.If(condition, statements, elseStatements);
+            List<Ast.Stmt> elseStatements = parseBlock("END");
+            expectEnd();
+            return span(factory.ifStatement(condition, statements, elseStatements), start);
         }
 
-        match("END");
-        return new Ast.Stmt.If(condition, statements, new ArrayList<>());
+        expectEnd();
+        return span(factory.ifStatement(condition, statements, new ArrayList<>()), start);
     }
 
     /**
@@ -241,33 +477,31 @@ public final class Parser {
      * {@code FOR}.
      */
     public Ast.Stmt.For parseForStatement() throws ParseException {
+        int start = currentOffset();
         match("FOR");
 
         if (!peek(Token.Type.IDENTIFIER)) {
-            throw new ParseException("Expected IDENTIFIER", tokens.get(0).getIndex());
+            throw new ParseException("Expected IDENTIFIER", currentOffset());
         }
         String name = tokens.get(0).getLiteral();
         match(Token.Type.IDENTIFIER);
 
         if (!peek("IN")) {
-            throw new ParseException("Expected IN", tokens.get(0).getIndex());
+            throw new ParseException("Expected IN", currentOffset());
         }
         match("IN");
 
         Ast.Expr value = parseExpression();
 
         if (!peek("DO")) {
-            throw new ParseException("Expected DO", tokens.get(0).getIndex());
+            throw new ParseException("Expected DO", currentOffset());
         }
         match("DO");
 
-        List<Ast.Stmt> statements = new ArrayList<>();
-        while (!peek("END")) {
-            statements.add(parseStatement());
-        }
+        List<Ast.Stmt> statements = parseBlock("END");
 
-        match("END");
-        return new Ast.Stmt.For(name, value, statements);
+        expectEnd();
+        return span(factory.forStatement(name, value, statements), start);
     }
 
     /**
@@ -276,29 +510,17 @@ public final class Parser {
      * {@code WHILE}.
      */
     public Ast.Stmt.While parseWhileStatement() throws ParseException {
+        int start = currentOffset();
         match("WHILE");
         Ast.Expr condition = parseExpression();
         if (!peek("DO")) {
-            throw new ParseException("Expected DO", tokens.get(0).getIndex());
+            throw new ParseException("Expected DO", currentOffset());
         }
-        System.out.println("here");
         match("DO");
-        System.out.println("here");
-        List<Ast.Stmt> statements = new ArrayList<>();
-        while (!peek("END")) { // ||
-            System.out.println(peek("."));
-            statements.add(parseStatement());
-            System.out.println(peek("END"));
-//            if(token)
-        }
+        List<Ast.Stmt> statements = parseBlock("END");
 
-        System.out.println("here");
-        if (!peek("END")) {
-            System.out.println("here");
-            throw new ParseException("Expected END", 1);
-        }
-        match("END");
-        return new Ast.Stmt.While(condition, statements);
+        expectEnd();
+        return span(factory.whileStatement(condition, statements), start);
     }
 
     /**
@@ -307,10 +529,11 @@ public final class Parser {
      * {@code RETURN}.
      */
     public Ast.Stmt.Return parseReturnStatement() throws ParseException {
+        int start = currentOffset();
         match("RETURN");
         Ast.Expr value = parseExpression();
         match(";");
-        return new Ast.Stmt.Return(value);
+        return span(factory.returnStatement(value), start);
     }
 
     /**
@@ -324,12 +547,13 @@ public final class Parser {
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expr parseLogicalExpression() throws ParseException {
+        int start = currentOffset();
         Ast.Expr recurse = parseEqualityExpression();
         while (true) {
             if (match("AND")) {
-                recurse = new Ast.Expr.Binary("AND", recurse, parseEqualityExpression());
+                recurse = span(factory.binary("AND", recurse, parseEqualityExpression()), start);
             } else if (match("OR")) {
-                recurse = new Ast.Expr.Binary("OR", recurse, parseEqualityExpression());
+                recurse = span(factory.binary("OR", recurse, parseEqualityExpression()), start);
             } else {
                 break;
             }
@@ -341,22 +565,23 @@ public final class Parser {
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expr parseEqualityExpression() throws ParseException {
+        int start = currentOffset();
         //Base case
         Ast.Expr recurse = parseAdditiveExpression();
         //recurse of a kind
         while (true) {
             if (match("<")) {
-                recurse = new Ast.Expr.Binary("<", recurse, parseAdditiveExpression());
+                recurse = span(factory.binary("<", recurse, parseAdditiveExpression()), start);
             } else if (match("<=")) {
-                recurse = new Ast.Expr.Binary("<=", recurse, parseAdditiveExpression());
+                recurse = span(factory.binary("<=", recurse, parseAdditiveExpression()), start);
             } else if (match(">")) {
-                recurse = new Ast.Expr.Binary(">", recurse, parseAdditiveExpression());
+                recurse = span(factory.binary(">", recurse, parseAdditiveExpression()), start);
             } else if (match(">=")) {
-                recurse = new Ast.Expr.Binary(">=", recurse, parseAdditiveExpression());
+                recurse = span(factory.binary(">=", recurse, parseAdditiveExpression()), start);
             } else if (match("==")) {
-                recurse = new Ast.Expr.Binary("==", recurse, parseAdditiveExpression());
+                recurse = span(factory.binary("==", recurse, parseAdditiveExpression()), start);
             } else if (match("!=")) {
-                recurse = new Ast.Expr.Binary("!=", recurse, parseAdditiveExpression());
+                recurse = span(factory.binary("!=", recurse, parseAdditiveExpression()), start);
             } else {
                 break;
             }
@@ -369,14 +594,15 @@ public final class Parser {
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expr parseAdditiveExpression() throws ParseException {
+        int start = currentOffset();
         Ast.Expr recursive = parseMultiplicativeExpression();
         while (true) {
             if (match("+")) {
                 Ast.Expr right = parseMultiplicativeExpression();
-                recursive = new Ast.Expr.Binary("+", recursive, right);
+                recursive = span(factory.binary("+", recursive, right), start);
             } else if (match("-")) {
                 Ast.Expr right = parseMultiplicativeExpression();
-                recursive = new Ast.Expr.Binary("-", recursive, right);
+                recursive = span(factory.binary("-", recursive, right), start);
             } else {
                 break;
             }
@@ -387,14 +613,15 @@ public final class Parser {
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expr parseMultiplicativeExpression() throws ParseException {
+        int start = currentOffset();
         Ast.Expr recursive = parseSecondaryExpression();
         while (true) {
             if (match("*")) {
                 Ast.Expr right = parseSecondaryExpression();
-                recursive = new Ast.Expr.Binary("*", recursive, right);
+                recursive = span(factory.binary("*", recursive, right), start);
             } else if (match("/")) {
                 Ast.Expr right = parseSecondaryExpression();
-                recursive = new Ast.Expr.Binary("/", recursive, right);
+                recursive = span(factory.binary("/", recursive, right), start);
             } else {
                 break;
             }
@@ -406,11 +633,12 @@ public final class Parser {
      * Parses the {@code secondary-expression} rule.
      */
     public Ast.Expr parseSecondaryExpression() throws ParseException {
+        int start = currentOffset();
         Ast.Expr recursive = parsePrimaryExpression();
         while (peek(".")) {
             match(".");
             if (!peek(Token.Type.IDENTIFIER)) {
-                throw new ParseException("Expected IDENTIFIER", tokens.get(0).getIndex());
+                throw new ParseException("Expected IDENTIFIER", currentOffset());
             }
             String name = tokens.get(0).getLiteral();
             match(Token.Type.IDENTIFIER);
@@ -423,18 +651,18 @@ public final class Parser {
                 while (!peek(")")) {
                     expressions.add(parseExpression());
                     if (peek(",", ")")) {
-                        throw new ParseException("Can't end call with ,", tokens.get(0).getIndex());
+                        throw new ParseException("Can't end call with ,", currentOffset());
                     }
                     if (peek(",")) {
                         match(",");
                     }
                 }
                 match(")");
-                recursive = new Ast.Expr.Function(Optional.of(recursive), name, expressions);
+                recursive = span(factory.function(Optional.of(recursive), name, expressions), start);
             }
             else {
                 //It's an access.
-                recursive = new Ast.Expr.Access(Optional.of(recursive), name);
+                recursive = span(factory.access(Optional.of(recursive), name), start);
             }
         }
         return recursive;
@@ -447,32 +675,29 @@ public final class Parser {
      * not strictly necessary.
      */
     public Ast.Expr parsePrimaryExpression() throws ParseException {
+        int start = currentOffset();
         //If it's an expression in (
         if (match("(")) {
 //            match("(");
             Ast.Expr toReturn = parseExpression();
             if (peek(")")) {
                 match(")");
-                return new Ast.Expr.Group(toReturn);
+                return span(factory.group(toReturn), start);
             } else {
-                System.out.println(tokens.get(-1).getLiteral().length() + tokens.get(-1).getIndex());
-                System.out.println(tokens.get(-1).getLiteral().length());
-                System.out.println(tokens.get(-1).getIndex());
-                System.out.println("rwowleiwosi");
-                throw new ParseException("Expected )", tokens.get(-1).getLiteral().length() + tokens.get(-1).getIndex());
+                throw new ParseException("Expected )", previousEnd());
             }
         }
         else if (peek("NIL")) {
                 match("NIL");
-                return new Ast.Expr.Literal(null);
+                return span(factory.literal(null), start);
             }
         else if (peek("TRUE")) {
                 match("TRUE");
-                return new Ast.Expr.Literal(true);
+                return span(factory.literal(true), start);
             }
         else if (peek("FALSE")) {
                 match("FALSE");
-                return new Ast.Expr.Literal(false);
+                return span(factory.literal(false), start);
             }
         else if (peek(Token.Type.IDENTIFIER)) {
             String literal = tokens.get(0).getLiteral();
@@ -483,47 +708,55 @@ public final class Parser {
                 while (!peek(")")) {
                     expressions.add(parseExpression());
                     if (peek(",", ")")) {
-                        throw new ParseException("Can't end call with ,", tokens.get(0).getIndex());
+                        throw new ParseException("Can't end call with ,", currentOffset());
                     }
                     if (peek(",")) {
                         match(",");
                     }
                 }
                 match(")");
-                return new Ast.Expr.Function(Optional.empty(), literal, expressions);
+                return span(factory.function(Optional.empty(), literal, expressions), start);
             }
             else {
-                return new Ast.Expr.Access(Optional.empty(), literal);
+                return span(factory.access(Optional.empty(), literal), start);
             }
         }
         else if (peek(Token.Type.INTEGER)) {
             String literal = tokens.get(0).getLiteral();
             match(Token.Type.INTEGER);
-            return new Ast.Expr.Literal(new BigInteger(literal));
+            if (literal.length() <= MAX_LONG_DIGITS) {
+                return span(factory.integerLiteral(Long.parseLong(literal)), start);
+            }
+            return span(factory.literal(new BigInteger(literal)), start);
         }
         else if (peek(Token.Type.DECIMAL)) {
             String literal = tokens.get(0).getLiteral();
             match(Token.Type.DECIMAL);
-            return new Ast.Expr.Literal(new BigDecimal(literal));
+            if (literal.length() <= MAX_LONG_DIGITS + 1) {
+                int point = literal.indexOf('.');
+                long unscaled = Long.parseLong(literal.substring(0, point) + literal.substring(point + 1));
+                return span(factory.decimalLiteral(unscaled, literal.length() - point - 1), start);
+            }
+            return span(factory.literal(new BigDecimal(literal)), start);
         }
         else if (peek(Token.Type.CHARACTER)) {
             char literal = tokens.get(0).getLiteral().charAt(1);
             match(Token.Type.CHARACTER);
-            return new Ast.Expr.Literal(literal);
+            return span(factory.literal(literal), start);
         }
         else if (peek(Token.Type.STRING)) {
             String literal = tokens.get(0).getLiteral();
             literal = literal.substring(1, literal.length() - 1);
             literal = unescapeString(literal);
             match(Token.Type.STRING);
-            return new Ast.Expr.Literal(literal);
+            return span(factory.literal(literal), start);
         }
         //If it's an identifier
         else if (peek(Token.Type.IDENTIFIER)) {
             String name = tokens.get(0).getLiteral();
             match(Token.Type.IDENTIFIER);
             if (!peek("(")) {
-                return new Ast.Expr.Access(Optional.empty(), name);
+                return span(factory.access(Optional.empty(), name), start);
             }
             else {
                 List<Ast.Expr> expressions = new ArrayList<>();
@@ -531,26 +764,26 @@ public final class Parser {
                 while (!peek(")")) {
                     expressions.add(parseExpression());
                     if (peek(",", ")")) {
-                        throw new ParseException("Can't end call with ,", tokens.get(0).getIndex());
+                        throw new ParseException("Can't end call with ,", currentOffset());
                     }
                     if (peek(",")) {
                         match(",");
                     }
                 }
                 match(")");
-                return new Ast.Expr.Function(Optional.of(new Ast.Expr.Literal(name)), name, expressions);
+                return span(factory.function(Optional.of(factory.literal(name)), name, expressions), start);
             }
         }
         else {
 //            System.out.println(tokens.get(-1).getLiteral());
 //            System.out.println(tokens.get(0).getLiteral());
 //            System.out.println(tokens.get(0).getLiteral());
-            throw new ParseException("Expected IDENTIFIER, INTEGER, DECIMAL, CHARACTER, STRING, NIL, TRUE, or FALSE", tokens.get(-1).getLiteral().length() + tokens.get(-1).getIndex());
+            throw new ParseException("Expected IDENTIFIER, INTEGER, DECIMAL, CHARACTER, STRING, NIL, TRUE, or FALSE", previousEnd());
         }
 
     }
     //This is taken from StackOverflow
-    private String unescapeString(String input) {
+    static String unescapeString(String input) {
         StringBuilder result = new StringBuilder();
         for (int i = 0; i < input.length(); i++) {
             char current = input.charAt(i);
@@ -606,6 +839,20 @@ public final class Parser {
         return true;
     }
 
+    /**
+     * Returns {@code true} if the next token's literal is any one of the given
+     * {@code literals}, unlike {@link #peek(Object...)} which matches a
+     * sequence of tokens.
+     */
+    private boolean peekAny(String... literals) {
+        for (String literal : literals) {
+            if (peek(literal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * As in the lexer, returns {@code true} if {@link #peek(Object...)} is true
      * and advances the token stream.
@@ -624,17 +871,20 @@ public final class Parser {
     private static final class TokenStream {
 
         private final List<Token> tokens;
-        private int index = 0;
+        private final int end;
+        private int index;
 
-        private TokenStream(List<Token> tokens) {
+        private TokenStream(List<Token> tokens, int start, int end) {
             this.tokens = tokens;
+            this.index = start;
+            this.end = end;
         }
 
         /**
          * Returns true if there is a token at index + offset.
          */
         public boolean has(int offset) {
-            return index + offset < tokens.size();
+            return index + offset < end;
         }
 
         /**
@@ -0,0 +1,256 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/**
+ * Generates random programs which are accepted by {@link Parser}, for testing
+ * and benchmarking at sizes that would be impractical to write by hand.
+ *
+ * Programs are a sequence of fields and methods. Method bodies contain every
+ * kind of statement, with {@code IF}, {@code FOR} and {@code WHILE} nested up
+ * to {@code statementDepth} levels. Expressions use every operator, literal
+ * type, group, access and call (with and without receivers), nested up to
+ * {@code expressionDepth} levels, and parameter and argument lists and blocks
+ * have up to {@code width} elements.
+ *
+ * Output is deterministic for a given seed and configuration. Programs are
+ * syntactically valid but not meaningful: names are drawn from a small pool
+ * without regard to whether they are declared.
+ */
+public final class ProgramGenerator {
+
+    private static final String[] OPERATORS = {
+            "AND", "OR", "<", "<=", ">", ">=", "==", "!=", "+", "-", "*", "/"
+    };
+    private static final int NAMES = 16;
+
+    private final Random random;
+    private final int statementDepth;
+    private final int expressionDepth;
+    private final int width;
+    private final StringBuilder builder = new StringBuilder();
+    private int members = 0;
+
+    public ProgramGenerator(long seed) {
+        this(seed, 3, 4, 3);
+    }
+
+    public ProgramGenerator(long seed, int statementDepth, int expressionDepth, int width) {
+        if (statementDepth < 0 || expressionDepth < 0 || width < 1) {
+            throw new IllegalArgumentException("Invalid configuration");
+        }
+        this.random = new Random(seed);
+        this.statementDepth = statementDepth;
+        this.expressionDepth = expressionDepth;
+        this.width = width;
+    }
+
+    /**
+     * Returns a program of at least {@code size} characters (and rarely more
+     * than a single method beyond it).
+     */
+    public String generate(int size) {
+        StringBuilder output = new StringBuilder(size + 1024);
+        try {
+            generate(output, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toString();
+    }
+
+    /**
+     * Writes a program of at least {@code size} characters to {@code output},
+     * one field or method at a time, so arbitrarily large programs can be
+     * streamed to a file. Returns the number of characters written.
+     */
+    public long generate(Appendable output, long size) throws IOException {
+        long written = 0;
+        while (written < size) {
+            builder.setLength(0);
+            if (random.nextInt(4) == 0) {
+                generateField();
+            } else {
+                generateMethod();
+            }
+            output.append(builder);
+            written += builder.length();
+        }
+        return written;
+    }
+
+    private void generateField() {
+        builder.append("LET ").append(name("f"));
+        if (random.nextBoolean()) {
+            builder.append(" = ");
+            generateExpression(expressionDepth);
+        }
+        builder.append(";\n");
+    }
+
+    private void generateMethod() {
+        builder.append("DEF m").append(members++).append('(');
+        int parameters = random.nextInt(width + 1);
+        for (int i = 0; i < parameters; i++) {
+            builder.append(i == 0 ? "" : ", ").append('p').append(i);
+        }
+        builder.append(") DO\n");
+        generateBlock(statementDepth, 1);
+        builder.append("END\n");
+    }
+
+    private void generateBlock(int depth, int indent) {
+        int statements = 1 + random.nextInt(width + 1);
+        for (int i = 0; i < statements; i++) {
+            generateStatement(depth, indent);
+        }
+    }
+
+    private void generateStatement(int depth, int indent) {
+        indent(indent);
+        int kind = random.nextInt(depth > 0 ? 7 : 4);
+        switch (kind) {
+            case 0:
+                builder.append("LET ").append(name("v"));
+                if (random.nextInt(4) != 0) {
+                    builder.append(" = ");
+                    generateExpression(expressionDepth);
+                }
+                builder.append(";\n");
+                break;
+            case 1:
+                generateReceiver();
+                builder.append(" = ");
+                generateExpression(expressionDepth);
+                builder.append(";\n");
+                break;
+            case 2:
+                generateCall(expressionDepth);
+                builder.append(";\n");
+                break;
+            case 3:
+                builder.append("RETURN ");
+                generateExpression(expressionDepth);
+                builder.append(";\n");
+                break;
+            case 4:
+                builder.append("IF ");
+                generateExpression(expressionDepth);
+                builder.append(" DO\n");
+                generateBlock(depth - 1, indent + 1);
+                if (random.nextBoolean()) {
+                    indent(indent);
+                    builder.append("ELSE\n");
+                    generateBlock(depth - 1, indent + 1);
+                }
+                indent(indent);
+                builder.append("END\n");
+                break;
+            case 5:
+                builder.append("FOR ").append(name("i")).append(" IN ");
+                generateExpression(expressionDepth);
+                builder.append(" DO\n");
+                generateBlock(depth - 1, indent + 1);
+                indent(indent);
+                builder.append("END\n");
+                break;
+            default:
+                builder.append("WHILE ");
+                generateExpression(expressionDepth);
+                builder.append(" DO\n");
+                generateBlock(depth - 1, indent + 1);
+                indent(indent);
+                builder.append("END\n");
+                break;
+        }
+    }
+
+    private void generateExpression(int depth) {
+        if (depth == 0) {
+            generatePrimary(0);
+            return;
+        }
+        switch (random.nextInt(4)) {
+            case 0:
+            case 1:
+                generateExpression(depth - 1);
+                builder.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+                generateExpression(depth - 1);
+                break;
+            case 2:
+                builder.append('(');
+                generateExpression(depth - 1);
+                builder.append(')');
+                break;
+            default:
+                generatePrimary(depth - 1);
+                break;
+        }
+    }
+
+    private void generatePrimary(int depth) {
+        switch (random.nextInt(10)) {
+            case 0:
+                builder.append(random.nextInt(1000));
+                break;
+            case 1:
+                builder.append(random.nextInt(100)).append('.').append(random.nextInt(100));
+                break;
+            case 2:
+                builder.append('\'').append((char) ('a' + random.nextInt(26))).append('\'');
+                break;
+            case 3:
+                builder.append("\"s").append(random.nextInt(100)).append('"');
+                break;
+            case 4:
+                builder.append(random.nextBoolean() ? "TRUE" : random.nextBoolean() ? "FALSE" : "NIL");
+                break;
+            case 5:
+            case 6:
+                generateCall(depth);
+                break;
+            default:
+                generateReceiver();
+                break;
+        }
+    }
+
+    /**
+     * Generates an access, which is valid both as an expression and as the
+     * receiver of an assignment.
+     */
+    private void generateReceiver() {
+        builder.append(name("v"));
+        if (random.nextInt(3) == 0) {
+            builder.append('.').append(name("x"));
+        }
+    }
+
+    private void generateCall(int depth) {
+        if (random.nextBoolean()) {
+            builder.append(name("v")).append('.');
+        }
+        builder.append(name("g")).append('(');
+        int arguments = depth == 0 ? 0 : random.nextInt(width + 1);
+        for (int i = 0; i < arguments; i++) {
+            if (i != 0) {
+                builder.append(", ");
+            }
+            generateExpression(depth - 1);
+        }
+        builder.append(')');
+    }
+
+    private String name(String prefix) {
+        return prefix + random.nextInt(NAMES);
+    }
+
+    private void indent(int indent) {
+        for (int i = 0; i < indent; i++) {
+            builder.append("    ");
+        }
+    }
+
+}
@@ -0,0 +1,330 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Source positions for the nodes of an {@link Ast}, kept outside of the nodes
+ * themselves so the tree does not grow by two fields per node. The parser
+ * records every node it creates (children before their parents) and the
+ * table is available from {@link Ast.Source#getSpans()}.
+ *
+ * Each recorded node is assigned an id in recording order, and its start
+ * (inclusive) and end (exclusive) character offsets are packed into a single
+ * {@code int[]} at {@code 2 * id} and {@code 2 * id + 1}. Lookups by node use
+ * an identity hash index over the ids, and lookups by offset a list of the
+ * ids sorted by start, both built on first use.
+ *
+ * A node shared between positions by an interning {@link AstFactory} is
+ * recorded once per position, so its span is ambiguous: lookups by node
+ * report the span recorded first, which is not necessarily that of the
+ * occurrence the caller has in mind. The spans of each id, and {@link
+ * #find(int)}, are unaffected.
+ *
+ * Bodies parsed lazily in outline mode are appended to the table when they
+ * are parsed. All public methods are safe to call from multiple threads.
+ */
+public final class SpanTable {
+
+    private Ast[] nodes = new Ast[16];
+    private int[] offsets = new int[32];
+    private int size = 0;
+    private int[] index;
+    private int[] sorted;
+    private int[] parents;
+
+    /**
+     * Returns the number of recorded nodes; ids are {@code 0} to {@code
+     * size() - 1}.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the node with the given id.
+     */
+    public synchronized Ast getNode(int id) {
+        checkId(id);
+        return nodes[id];
+    }
+
+    /**
+     * Returns the start offset of the node with the given id.
+     */
+    public synchronized int getStart(int id) {
+        checkId(id);
+        return offsets[2 * id];
+    }
+
+    /**
+     * Returns the end offset (exclusive) of the node with the given id.
+     */
+    public synchronized int getEnd(int id) {
+        checkId(id);
+        return offsets[2 * id + 1];
+    }
+
+    /**
+     * Returns the id of {@code node}, or {@code -1} if it was not recorded.
+     */
+    public synchronized int indexOf(Ast node) {
+        if (index == null) {
+            buildIndex();
+        }
+        int mask = index.length - 1;
+        for (int slot = mix(System.identityHashCode(node)) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            if (nodes[index[slot] - 1] == node) {
+                return index[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the start offset of {@code node}, or {@code -1} if it was not
+     * recorded.
+     */
+    public synchronized int getStart(Ast node) {
+        int id = indexOf(node);
+        return id < 0 ? -1 : offsets[2 * id];
+    }
+
+    /**
+     * Returns the end offset (exclusive) of {@code node}, or {@code -1} if it
+     * was not recorded.
+     */
+    public synchronized int getEnd(Ast node) {
+        int id = indexOf(node);
+        return id < 0 ? -1 : offsets[2 * id + 1];
+    }
+
+    /**
+     * Returns the innermost node whose span contains {@code offset}, or {@code
+     * null} if there is none. Of two nodes with the same span, the one
+     * recorded first (the child) is returned.
+     */
+    public synchronized Ast find(int offset) {
+        if (sorted == null) {
+            buildSorted();
+        }
+        // The last span starting at or before the offset, and then the spans
+        // enclosing it, from the innermost, until one contains the offset.
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (offsets[2 * sorted[middle]] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low - 1; i >= 0; i = parents[i]) {
+            if (offset < offsets[2 * sorted[i] + 1]) {
+                return nodes[sorted[i]];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the span of {@code node}. This is unsynchronized, and is only
+     * used by a parser before the table is published.
+     */
+    void record(Ast node, int start, int end) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 4);
+        }
+        nodes[size] = node;
+        offsets[2 * size] = start;
+        offsets[2 * size + 1] = end;
+        size++;
+    }
+
+    /**
+     * Appends all spans from {@code other}, which is used for method bodies
+     * parsed after the table was published.
+     */
+    synchronized void merge(SpanTable other) {
+        for (int id = 0; id < other.size; id++) {
+            record(other.nodes[id], other.offsets[2 * id], other.offsets[2 * id + 1]);
+        }
+        index = null;
+        sorted = null;
+        parents = null;
+    }
+
+    /**
+     * Returns a snapshot of the spans of every recorded node, for matching
+     * each occurrence of a node in the tree to its own span.
+     */
+    synchronized Occurrences occurrences() {
+        Occurrences occurrences = new Occurrences();
+        for (int id = 0; id < size; id++) {
+            occurrences.add(nodes[id], offsets[2 * id], offsets[2 * id + 1]);
+        }
+        occurrences.spans.values().forEach(Occurrences.Spans::sort);
+        return occurrences;
+    }
+
+    /**
+     * Matches the occurrences of nodes, visited in source order, to their
+     * spans, which looking a span up by node cannot do for a node shared by
+     * an interning {@link AstFactory}. Each occurrence is matched to the next
+     * unused span of its node within the enclosing declaration (a field or a
+     * method) set by {@link #enter(long)}. Declarations never nest, and within
+     * one the occurrences of a node are visited in source order by any walk
+     * which visits children in the order of their getters.
+     *
+     * Spans are packed into a {@code long} as the start in the high and the
+     * end in the low 32 bits, with {@code -1} for a node without a span.
+     */
+    static final class Occurrences {
+
+        private final Map<Ast, Spans> spans = new IdentityHashMap<>();
+        private int low = 0;
+        private int high = Integer.MAX_VALUE;
+
+        private void add(Ast node, int start, int end) {
+            spans.computeIfAbsent(node, key -> new Spans()).add(start, end);
+        }
+
+        /**
+         * Returns the span of the next occurrence of {@code node}.
+         */
+        long next(Ast node) {
+            Spans spans = this.spans.get(node);
+            return spans == null ? -1 : spans.next(low, high);
+        }
+
+        /**
+         * Restricts the spans of the nodes visited next to those within the
+         * span of a declaration, if it has one.
+         */
+        void enter(long span) {
+            if (span != -1) {
+                low = start(span);
+                high = end(span);
+            }
+        }
+
+        /**
+         * Lifts the restriction of {@link #enter(long)} when leaving a
+         * declaration.
+         */
+        void exit() {
+            low = 0;
+            high = Integer.MAX_VALUE;
+        }
+
+        static int start(long span) {
+            return span == -1 ? -1 : (int) (span >>> 32);
+        }
+
+        static int end(long span) {
+            return span == -1 ? -1 : (int) span;
+        }
+
+        /**
+         * The spans of one node, sorted by start once all are added.
+         */
+        private static final class Spans {
+
+            private long[] spans = new long[1];
+            private int size = 0;
+            private int cursor = 0;
+
+            private void add(int start, int end) {
+                if (size == spans.length) {
+                    spans = Arrays.copyOf(spans, 2 * size);
+                }
+                spans[size++] = (long) start << 32 | end;
+            }
+
+            private void sort() {
+                Arrays.sort(spans, 0, size);
+            }
+
+            private long next(int low, int high) {
+                // The spans within one declaration are consecutive and used in
+                // order, so the cursor only has to be repositioned when moving
+                // on to another declaration.
+                if (cursor >= size || start(spans[cursor]) < low || start(spans[cursor]) >= high) {
+                    int min = 0;
+                    int max = size;
+                    while (min < max) {
+                        int middle = (min + max) >>> 1;
+                        if (start(spans[middle]) < low) {
+                            min = middle + 1;
+                        } else {
+                            max = middle;
+                        }
+                    }
+                    cursor = min;
+                }
+                if (cursor < size && start(spans[cursor]) < high) {
+                    return spans[cursor++];
+                }
+                return -1;
+            }
+
+        }
+
+    }
+
+    private void buildIndex() {
+        index = new int[Integer.highestOneBit(Math.max(size, 1) * 2) * 2];
+        int mask = index.length - 1;
+        for (int id = size - 1; id >= 0; id--) {
+            int slot = mix(System.identityHashCode(nodes[id])) & mask;
+            while (index[slot] != 0 && nodes[index[slot] - 1] != nodes[id]) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Sorts the ids by start, then longest first, then the last recorded
+     * first, so a span comes before the spans it contains and a parent before
+     * a child with the same span. Since spans are nested, each span's parent
+     * is found with a stack of the spans enclosing the previous one.
+     */
+    private void buildSorted() {
+        Integer[] ids = new Integer[size];
+        for (int id = 0; id < size; id++) {
+            ids[id] = id;
+        }
+        Arrays.sort(ids, Comparator.<Integer>comparingInt(id -> offsets[2 * id])
+                .thenComparingInt(id -> -offsets[2 * id + 1])
+                .thenComparingInt(id -> -id));
+        sorted = new int[size];
+        parents = new int[size];
+        int[] stack = new int[size];
+        int depth = 0;
+        for (int i = 0; i < size; i++) {
+            sorted[i] = ids[i];
+            int end = offsets[2 * sorted[i] + 1];
+            while (depth > 0 && offsets[2 * sorted[stack[depth - 1]] + 1] < end) {
+                depth--;
+            }
+            parents[i] = depth > 0 ? stack[depth - 1] : -1;
+            stack[depth++] = i;
+        }
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Invalid node id " + id);
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+}
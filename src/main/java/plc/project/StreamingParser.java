@@ -0,0 +1,408 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An event-based alternative to {@link Parser} which accepts the same grammar
+ * but, instead of building an {@link Ast}, reports what it sees to a {@link
+ * ParseListener} as it goes (in the style of SAX for XML).
+ *
+ * Tokens may be pulled directly from a {@link Lexer} with {@link
+ * Lexer#lexNext()}, in which case neither the token list nor the AST is ever
+ * materialized and memory use is independent of the size of the input. Only
+ * two tokens of lookahead and the previous token (for error indices) are
+ * retained at any time.
+ *
+ * As with {@link Parser}, the first syntax error throws a {@link
+ * ParseException}; events already delivered are not retracted.
+ */
+public final class StreamingParser {
+
+    private final TokenStream tokens;
+    private final ParseListener listener;
+
+    public StreamingParser(Lexer lexer, ParseListener listener) {
+        this.tokens = new TokenStream(lexer, null);
+        this.listener = listener;
+    }
+
+    public StreamingParser(List<Token> tokens, ParseListener listener) {
+        this.tokens = new TokenStream(null, tokens.iterator());
+        this.listener = listener;
+    }
+
+    /**
+     * Parses the {@code source} rule.
+     */
+    public void parseSource() throws ParseException {
+        while (tokens.has(0)) {
+            if (peek("LET")) {
+                parseField();
+            } else if (peek("DEF")) {
+                parseMethod();
+            } else {
+                throw new ParseException("Expected LET or DEF", tokens.get(0).getIndex());
+            }
+        }
+    }
+
+    /**
+     * Parses the {@code field} rule.
+     */
+    private void parseField() throws ParseException {
+        match("LET");
+        String name = require(Token.Type.IDENTIFIER, "Expected IDENTIFIER");
+        boolean initialized = match("=");
+        if (initialized) {
+            parseExpression();
+        }
+        if (!match(";")) {
+            throw new ParseException("Expected ;", errorIndex());
+        }
+        listener.onField(name, initialized);
+    }
+
+    /**
+     * Parses the {@code method} rule.
+     */
+    private void parseMethod() throws ParseException {
+        match("DEF");
+        String name = require(Token.Type.IDENTIFIER, "Expected IDENTIFIER");
+        listener.onMethodStart(name);
+        require("(", "Expected (");
+        while (!peek(")")) {
+            listener.onParameter(require(Token.Type.IDENTIFIER, "Expected IDENTIFIER"));
+            if (peek(",", ")")) {
+                throw new ParseException("Can't end with ,", tokens.get(0).getIndex());
+            }
+            match(",");
+        }
+        match(")");
+        require("DO", "Expected DO");
+        parseBlock("END");
+        require("END", "Expected END");
+        listener.onMethodEnd(name);
+    }
+
+    /**
+     * Parses statements until one of the given {@code terminators} or the end
+     * of input, without consuming the terminator.
+     */
+    private void parseBlock(String... terminators) throws ParseException {
+        while (tokens.has(0) && !peekAny(terminators)) {
+            parseStatement();
+        }
+    }
+
+    /**
+     * Parses the {@code statement} rule.
+     */
+    private void parseStatement() throws ParseException {
+        listener.onStatementStart();
+        if (match("LET")) {
+            String name = require(Token.Type.IDENTIFIER, "Expected IDENTIFIER");
+            if (match("=")) {
+                parseExpression();
+            }
+            require(";", "Expected ;");
+            listener.onStatement(ParseListener.Kind.DECLARATION, name);
+        } else if (match("IF")) {
+            parseExpression();
+            require("DO", "Expected DO");
+            parseBlock("ELSE", "END");
+            if (match("ELSE")) {
+                listener.onElse();
+                parseBlock("END");
+            }
+            require("END", "Expected END");
+            listener.onStatement(ParseListener.Kind.IF, null);
+        } else if (match("FOR")) {
+            String name = require(Token.Type.IDENTIFIER, "Expected IDENTIFIER");
+            require("IN", "Expected IN");
+            parseExpression();
+            require("DO", "Expected DO");
+            parseBlock("END");
+            require("END", "Expected END");
+            listener.onStatement(ParseListener.Kind.FOR, name);
+        } else if (match("WHILE")) {
+            parseExpression();
+            require("DO", "Expected DO");
+            parseBlock("END");
+            require("END", "Expected END");
+            listener.onStatement(ParseListener.Kind.WHILE, null);
+        } else if (match("RETURN")) {
+            parseExpression();
+            match(";");
+            listener.onStatement(ParseListener.Kind.RETURN, null);
+        } else if (peek(Token.Type.IDENTIFIER)) {
+            parseExpression();
+            ParseListener.Kind kind = ParseListener.Kind.EXPRESSION;
+            if (match("=")) {
+                parseExpression();
+                kind = ParseListener.Kind.ASSIGNMENT;
+            }
+            require(";", "Needed a ; at the end");
+            listener.onStatement(kind, null);
+        } else {
+            throw new ParseException("Expected LET, IF, FOR, WHILE, RETURN, or IDENTIFIER", previousEnd());
+        }
+    }
+
+    /**
+     * Parses the {@code expression} rule.
+     */
+    private void parseExpression() throws ParseException {
+        parseEqualityExpression();
+        while (peekAny("AND", "OR")) {
+            String operator = tokens.get(0).getLiteral();
+            tokens.advance();
+            parseEqualityExpression();
+            listener.onBinary(operator);
+        }
+    }
+
+    /**
+     * Parses the {@code equality-expression} rule.
+     */
+    private void parseEqualityExpression() throws ParseException {
+        parseAdditiveExpression();
+        while (peekAny("<", "<=", ">", ">=", "==", "!=")) {
+            String operator = tokens.get(0).getLiteral();
+            tokens.advance();
+            parseAdditiveExpression();
+            listener.onBinary(operator);
+        }
+    }
+
+    /**
+     * Parses the {@code additive-expression} rule.
+     */
+    private void parseAdditiveExpression() throws ParseException {
+        parseMultiplicativeExpression();
+        while (peekAny("+", "-")) {
+            String operator = tokens.get(0).getLiteral();
+            tokens.advance();
+            parseMultiplicativeExpression();
+            listener.onBinary(operator);
+        }
+    }
+
+    /**
+     * Parses the {@code multiplicative-expression} rule.
+     */
+    private void parseMultiplicativeExpression() throws ParseException {
+        parseSecondaryExpression();
+        while (peekAny("*", "/")) {
+            String operator = tokens.get(0).getLiteral();
+            tokens.advance();
+            parseSecondaryExpression();
+            listener.onBinary(operator);
+        }
+    }
+
+    /**
+     * Parses the {@code secondary-expression} rule.
+     */
+    private void parseSecondaryExpression() throws ParseException {
+        parsePrimaryExpression();
+        while (match(".")) {
+            String name = require(Token.Type.IDENTIFIER, "Expected IDENTIFIER");
+            if (match("(")) {
+                listener.onCall(name, true, parseArguments());
+            } else {
+                listener.onAccess(name, true);
+            }
+        }
+    }
+
+    /**
+     * Parses the {@code primary-expression} rule.
+     */
+    private void parsePrimaryExpression() throws ParseException {
+        if (match("(")) {
+            parseExpression();
+            if (!match(")")) {
+                throw new ParseException("Expected )", previousEnd());
+            }
+            listener.onGroup();
+        } else if (match("NIL")) {
+            listener.onLiteral(null);
+        } else if (match("TRUE")) {
+            listener.onLiteral(true);
+        } else if (match("FALSE")) {
+            listener.onLiteral(false);
+        } else if (peek(Token.Type.IDENTIFIER)) {
+            String name = require(Token.Type.IDENTIFIER, "Expected IDENTIFIER");
+            if (match("(")) {
+                listener.onCall(name, false, parseArguments());
+            } else {
+                listener.onAccess(name, false);
+            }
+        } else if (peek(Token.Type.INTEGER)) {
+            listener.onLiteral(new BigInteger(require(Token.Type.INTEGER, "Expected INTEGER")));
+        } else if (peek(Token.Type.DECIMAL)) {
+            listener.onLiteral(new BigDecimal(require(Token.Type.DECIMAL, "Expected DECIMAL")));
+        } else if (peek(Token.Type.CHARACTER)) {
+            listener.onLiteral(require(Token.Type.CHARACTER, "Expected CHARACTER").charAt(1));
+        } else if (peek(Token.Type.STRING)) {
+            String literal = require(Token.Type.STRING, "Expected STRING");
+            listener.onLiteral(Parser.unescapeString(literal.substring(1, literal.length() - 1)));
+        } else {
+            throw new ParseException("Expected IDENTIFIER, INTEGER, DECIMAL, CHARACTER, STRING, NIL, TRUE, or FALSE", previousEnd());
+        }
+    }
+
+    /**
+     * Parses a comma-separated argument list after the opening {@code (},
+     * including the closing {@code )}, and returns the number of arguments.
+     */
+    private int parseArguments() throws ParseException {
+        int arguments = 0;
+        while (!peek(")")) {
+            parseExpression();
+            arguments++;
+            if (peek(",", ")")) {
+                throw new ParseException("Can't end call with ,", tokens.get(0).getIndex());
+            }
+            match(",");
+        }
+        match(")");
+        return arguments;
+    }
+
+    /**
+     * Matches the given pattern, returning the matched token's literal, or
+     * throws a {@link ParseException} with the given message.
+     */
+    private String require(Object pattern, String message) throws ParseException {
+        if (!peek(pattern)) {
+            throw new ParseException(message, errorIndex());
+        }
+        String literal = tokens.get(0).getLiteral();
+        tokens.advance();
+        return literal;
+    }
+
+    /**
+     * Returns the index to report for an error at the current position, which
+     * is just past the previous token when the input is exhausted.
+     */
+    private int errorIndex() {
+        return tokens.has(0) ? tokens.get(0).getIndex() : previousEnd();
+    }
+
+    /**
+     * Returns the index just past the previous token, which {@link Parser}
+     * reports for errors where an expression or statement was expected.
+     */
+    private int previousEnd() {
+        if (tokens.previous == null) {
+            return 0;
+        }
+        return tokens.previous.getIndex() + tokens.previous.getLiteral().length();
+    }
+
+    /**
+     * Returns {@code true} if the next tokens match the given patterns, as in
+     * {@link Parser}. At most two patterns are supported.
+     */
+    private boolean peek(Object... patterns) {
+        for (int i = 0; i < patterns.length; i++) {
+            if (!tokens.has(i)) {
+                return false;
+            } else if (patterns[i] instanceof Token.Type) {
+                if (patterns[i] != tokens.get(i).getType()) {
+                    return false;
+                }
+            } else if (patterns[i] instanceof String) {
+                if (!patterns[i].equals(tokens.get(i).getLiteral())) {
+                    return false;
+                }
+            } else {
+                throw new AssertionError("Invalid pattern object: " + patterns[i].getClass());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the next token's literal is any one of the given
+     * {@code literals}.
+     */
+    private boolean peekAny(String... literals) {
+        for (String literal : literals) {
+            if (peek(literal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if {@link #peek(Object...)} is true and advances the
+     * token stream.
+     */
+    private boolean match(Object... patterns) {
+        boolean peek = peek(patterns);
+        if (peek) {
+            for (int i = 0; i < patterns.length; i++) {
+                tokens.advance();
+            }
+        }
+        return peek;
+    }
+
+    /**
+     * A window of two tokens of lookahead over either a {@link Lexer} or an
+     * iterator of tokens, plus the most recently consumed token.
+     */
+    private static final class TokenStream {
+
+        private final Lexer lexer;
+        private final Iterator<Token> iterator;
+        private final Token[] lookahead = new Token[2];
+        private int buffered = 0;
+        private Token previous;
+
+        private TokenStream(Lexer lexer, Iterator<Token> iterator) {
+            this.lexer = lexer;
+            this.iterator = iterator;
+        }
+
+        /**
+         * Returns true if there is a token at the given lookahead offset.
+         */
+        public boolean has(int offset) {
+            while (buffered <= offset) {
+                Token next = lexer != null ? lexer.lexNext() : iterator.hasNext() ? iterator.next() : null;
+                if (next == null) {
+                    return false;
+                }
+                lookahead[buffered++] = next;
+            }
+            return true;
+        }
+
+        /**
+         * Gets the token at the given lookahead offset, which must exist.
+         */
+        public Token get(int offset) {
+            return lookahead[offset];
+        }
+
+        /**
+         * Advances past the current token.
+         */
+        public void advance() {
+            previous = lookahead[0];
+            lookahead[0] = lookahead[1];
+            lookahead[1] = null;
+            buffered--;
+        }
+
+    }
+
+}
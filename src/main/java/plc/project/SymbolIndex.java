@@ -0,0 +1,331 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * An index of the definitions of and references to every name across a set
+ * of files, so that questions such as where a method is called or a field is
+ * read are answered without walking every tree again.
+ *
+ * Definitions are {@link Ast.Field}s and {@link Ast.Method}s, and references
+ * are {@link Ast.Expr.Access}es and {@link Ast.Expr.Function}s, with or
+ * without a receiver. Each name is assigned an int id when first seen, and
+ * the entries for a name are kept in a table indexed by that id, so a query
+ * costs a single string lookup. Files are likewise identified by an int id
+ * stored in each entry.
+ *
+ * Each file is indexed with {@link #update(String, Ast.Source)}, which
+ * replaces whatever was indexed for that file before, and only touches the
+ * names which occur in the old or new version of the file. Name ids are never
+ * reclaimed, which only costs an empty table slot for names which no longer
+ * occur anywhere. All public methods are safe to call from multiple threads.
+ */
+public final class SymbolIndex {
+
+    public enum Kind {
+        FIELD,
+        METHOD,
+        ACCESS,
+        FUNCTION
+    }
+
+    /**
+     * A definition of or a reference to a name in a file. Entries hold only
+     * ids and offsets, not the nodes they were collected from, so an index
+     * does not keep the trees of its files alive.
+     */
+    public final class Entry {
+
+        private final String file;
+        private final int fileId;
+        private final Kind kind;
+        private final int name;
+        private final int method;
+        private final boolean receiver;
+        private final int start;
+        private final int end;
+
+        private Entry(String file, int fileId, Kind kind, int name, int method, boolean receiver, int start, int end) {
+            this.file = file;
+            this.fileId = fileId;
+            this.kind = kind;
+            this.name = name;
+            this.method = method;
+            this.receiver = receiver;
+            this.start = start;
+            this.end = end;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Returns the name defined or referenced.
+         */
+        public String getName() {
+            return name(name);
+        }
+
+        /**
+         * Returns the name of the method containing a reference, which is
+         * {@code null} for a definition or a reference in a field's value.
+         */
+        public String getMethod() {
+            return method == -1 ? null : name(method);
+        }
+
+        /**
+         * Returns whether this is a reference with a receiver, such as {@code
+         * obj.name} or {@code obj.name()}.
+         */
+        public boolean hasReceiver() {
+            return receiver;
+        }
+
+        /**
+         * Returns the start offset of the node in its file, or {@code -1} if
+         * the source has no span for it.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Returns the end offset of the node in its file, or {@code -1} if
+         * the source has no span for it.
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry &&
+                    file.equals(((Entry) obj).file) &&
+                    kind == ((Entry) obj).kind &&
+                    name == ((Entry) obj).name &&
+                    method == ((Entry) obj).method &&
+                    receiver == ((Entry) obj).receiver &&
+                    start == ((Entry) obj).start &&
+                    end == ((Entry) obj).end;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, kind, name, start, end);
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "file='" + file + '\'' +
+                    ", kind=" + kind +
+                    ", name=" + getName() +
+                    ", start=" + start +
+                    ", end=" + end +
+                    '}';
+        }
+
+    }
+
+    private final Map<String, Integer> names = new HashMap<>();
+    private final List<String> nameList = new ArrayList<>();
+    private final List<List<Entry>> entries = new ArrayList<>();
+    private final Map<String, Integer> fileIds = new HashMap<>();
+    private final Map<String, int[]> fileNames = new HashMap<>();
+
+    /**
+     * Indexes {@code source} as the contents of {@code file}, replacing its
+     * previous contents if any.
+     */
+    public void update(String file, Ast.Source source) {
+        Collector collector = new Collector(source);
+        collector.visit(source);
+        synchronized (this) {
+            remove(file);
+            int fileId = fileIds.computeIfAbsent(file, key -> fileIds.size());
+            int[] ids = new int[collector.names.size()];
+            for (int i = 0; i < ids.length; i++) {
+                int id = id(collector.names.get(i));
+                Collected collected = collector.entries.get(i);
+                int method = collected.method == null ? -1 : id(collected.method);
+                entries.get(id).add(new Entry(file, fileId, collected.kind, id, method,
+                        collected.receiver, collected.start, collected.end));
+                ids[i] = id;
+            }
+            fileNames.put(file, Arrays.stream(ids).distinct().toArray());
+        }
+    }
+
+    /**
+     * Removes everything indexed for {@code file}, returning whether it was
+     * indexed.
+     */
+    public synchronized boolean remove(String file) {
+        int[] ids = fileNames.remove(file);
+        if (ids == null) {
+            return false;
+        }
+        int fileId = fileIds.get(file);
+        for (int id : ids) {
+            entries.get(id).removeIf(entry -> entry.fileId == fileId);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of files indexed.
+     */
+    public synchronized int size() {
+        return fileNames.size();
+    }
+
+    /**
+     * Returns the fields and methods named {@code name}, in the order their
+     * files were indexed and then in source order.
+     */
+    public List<Entry> getDefinitions(String name) {
+        return query(name, entry -> entry.kind == Kind.FIELD || entry.kind == Kind.METHOD);
+    }
+
+    /**
+     * Returns the accesses and calls of {@code name}, in the order their
+     * files were indexed and then in source order.
+     */
+    public List<Entry> getReferences(String name) {
+        return query(name, entry -> entry.kind == Kind.ACCESS || entry.kind == Kind.FUNCTION);
+    }
+
+    /**
+     * Returns the entries of the given kind for {@code name}.
+     */
+    public List<Entry> get(String name, Kind kind) {
+        return query(name, entry -> entry.kind == kind);
+    }
+
+    private synchronized List<Entry> query(String name, Predicate<Entry> filter) {
+        Integer id = names.get(name);
+        if (id == null) {
+            return List.of();
+        }
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries.get(id)) {
+            if (filter.test(entry)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the id of {@code name}, assigning the next id if it has none.
+     */
+    private int id(String name) {
+        Integer id = names.get(name);
+        if (id != null) {
+            return id;
+        }
+        int next = names.size();
+        names.put(name, next);
+        nameList.add(name);
+        entries.add(new ArrayList<>(2));
+        return next;
+    }
+
+    /**
+     * Returns the name with the given id.
+     */
+    private synchronized String name(int id) {
+        return nameList.get(id);
+    }
+
+    private static final class Collected {
+
+        private final Kind kind;
+        private final String method;
+        private final boolean receiver;
+        private final int start;
+        private final int end;
+
+        private Collected(Kind kind, String method, boolean receiver, int start, int end) {
+            this.kind = kind;
+            this.method = method;
+            this.receiver = receiver;
+            this.start = start;
+            this.end = end;
+        }
+
+    }
+
+    /**
+     * Collects the entries of a single file in source order, outside of the
+     * lock, since walking may parse method bodies in outline mode.
+     *
+     * Offsets are taken per occurrence with {@link SpanTable.Occurrences}
+     * rather than looked up by node, which is ambiguous for shared nodes.
+     */
+    private static final class Collector extends Ast.Walker {
+
+        private final SpanTable.Occurrences occurrences;
+        private final List<String> names = new ArrayList<>();
+        private final List<Collected> entries = new ArrayList<>();
+        private String method = null;
+
+        private Collector(Ast.Source source) {
+            // Parses any lazy method bodies, so their spans are recorded.
+            source.getMethods().forEach(Ast.Method::getStatements);
+            occurrences = source.getSpans().occurrences();
+        }
+
+        private long add(String name, Kind kind, Ast node, boolean receiver) {
+            long span = occurrences.next(node);
+            names.add(name);
+            entries.add(new Collected(kind, method, receiver,
+                    SpanTable.Occurrences.start(span), SpanTable.Occurrences.end(span)));
+            return span;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            occurrences.enter(add(ast.getName(), Kind.FIELD, ast, false));
+            super.visit(ast);
+            occurrences.exit();
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            occurrences.enter(add(ast.getName(), Kind.METHOD, ast, false));
+            method = ast.getName();
+            super.visit(ast);
+            method = null;
+            occurrences.exit();
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            add(ast.getName(), Kind.ACCESS, ast, ast.getReceiver().isPresent());
+            return super.visit(ast);
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            add(ast.getName(), Kind.FUNCTION, ast, ast.getReceiver().isPresent());
+            return super.visit(ast);
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Runs a program compiled to {@link Bytecode}, with the same results and
+ * errors as the {@link Interpreter}.
+ *
+ * All methods share a single {@code Object[]} stack, preallocated and grown
+ * only when a call would not fit. A method's frame holds its locals followed
+ * by its operand stack, and the arguments of a call are pushed where the
+ * callee's first locals go, so calls copy nothing. The instructions of a
+ * method are dispatched by a single {@code switch} in a loop which keeps the
+ * program counter and stack pointer in locals.
+ */
+public final class VirtualMachine {
+
+    private static final int INITIAL_STACK = 1 << 12;
+
+    private final Bytecode program;
+    private final Object[] globals;
+    private Object[] stack = new Object[INITIAL_STACK];
+    private boolean initialized = false;
+
+    public VirtualMachine(Bytecode program) {
+        this.program = program;
+        this.globals = new Object[program.globals];
+    }
+
+    /**
+     * Evaluates the fields, if they have not been evaluated yet, and returns
+     * the result of calling {@code main} with no arguments.
+     */
+    public Object run() {
+        return call("main");
+    }
+
+    /**
+     * Evaluates the fields, if they have not been evaluated yet, and returns
+     * the result of calling the method {@code name} with {@code arguments}.
+     */
+    public Object call(String name, Object... arguments) {
+        if (!initialized) {
+            initialized = true;
+            execute(program.initializer, 0);
+        }
+        Bytecode.Method method = program.getMethod(name, arguments.length);
+        if (method == null) {
+            throw new EvaluationException("The function " + name + "/" + arguments.length + " is not defined.");
+        }
+        System.arraycopy(arguments, 0, stack, 0, arguments.length);
+        return execute(method, 0);
+    }
+
+    /**
+     * Executes {@code method} with its frame starting at {@code base}, where
+     * its arguments have already been stored.
+     */
+    private Object execute(Bytecode.Method method, int base) {
+        if (base + method.locals + method.maxStack > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(2 * stack.length, base + method.locals + method.maxStack));
+        }
+        Object[] stack = this.stack;
+        Object[] constants = program.constants;
+        Object[] globals = this.globals;
+        int[] code = method.code;
+        int sp = base + method.locals;
+        int pc = 0;
+        while (true) {
+            switch (code[pc++]) {
+                case Bytecode.CONST:
+                    stack[sp++] = constants[code[pc++]];
+                    break;
+                case Bytecode.LOAD:
+                    stack[sp++] = stack[base + code[pc++]];
+                    break;
+                case Bytecode.STORE:
+                    stack[base + code[pc++]] = stack[--sp];
+                    break;
+                case Bytecode.GLOAD:
+                    stack[sp++] = globals[code[pc++]];
+                    break;
+                case Bytecode.GSTORE:
+                    globals[code[pc++]] = stack[--sp];
+                    break;
+                case Bytecode.GETFIELD:
+                    stack[sp - 1] = ((InlineCache) constants[code[pc++]]).getField(stack[sp - 1]);
+                    break;
+                case Bytecode.SETFIELD:
+                    sp -= 2;
+                    ((InlineCache) constants[code[pc++]]).setField(stack[sp], stack[sp + 1]);
+                    break;
+                case Bytecode.POP:
+                    sp--;
+                    break;
+                case Bytecode.JUMP:
+                    pc = code[pc];
+                    break;
+                case Bytecode.JUMP_FALSE:
+                    pc = Environment.requireType(Boolean.class, stack[--sp]) ? pc + 1 : code[pc];
+                    break;
+                case Bytecode.JUMP_TRUE:
+                    pc = Environment.requireType(Boolean.class, stack[--sp]) ? code[pc] : pc + 1;
+                    break;
+                case Bytecode.ADD:
+                    sp--;
+                    stack[sp - 1] = Environment.add(stack[sp - 1], stack[sp]);
+                    break;
+                case Bytecode.SUBTRACT:
+                    sp--;
+                    stack[sp - 1] = Environment.subtract(stack[sp - 1], stack[sp]);
+                    break;
+                case Bytecode.MULTIPLY:
+                    sp--;
+                    stack[sp - 1] = Environment.multiply(stack[sp - 1], stack[sp]);
+                    break;
+                case Bytecode.DIVIDE:
+                    sp--;
+                    stack[sp - 1] = Environment.divide(stack[sp - 1], stack[sp]);
+                    break;
+                case Bytecode.COMPARE:
+                    sp--;
+                    stack[sp - 1] = (sign(Environment.compare(stack[sp - 1], stack[sp])) & code[pc++]) != 0;
+                    break;
+                case Bytecode.EQUAL:
+                    sp--;
+                    stack[sp - 1] = equals(stack[sp - 1], stack[sp]) != (code[pc++] != 0);
+                    break;
+                case Bytecode.CALL: {
+                    Bytecode.Method callee = program.methods[code[pc++]];
+                    int arguments = sp - callee.arity;
+                    Object result = execute(callee, arguments);
+                    stack = this.stack;
+                    sp = arguments;
+                    stack[sp++] = result;
+                    break;
+                }
+                case Bytecode.BUILTIN: {
+                    Environment.Function function = (Environment.Function) constants[code[pc++]];
+                    int arity = code[pc++];
+                    sp -= arity;
+                    stack[sp] = function.invoke(Arrays.copyOfRange(stack, sp, sp + arity));
+                    sp++;
+                    break;
+                }
+                case Bytecode.INVOKE: {
+                    InlineCache cache = (InlineCache) constants[code[pc++]];
+                    int arity = code[pc++];
+                    sp -= arity;
+                    Object[] arguments = Arrays.copyOfRange(stack, sp, sp + arity);
+                    stack[sp - 1] = cache.invoke(stack[sp - 1], arguments);
+                    break;
+                }
+                case Bytecode.RETURN:
+                    return stack[--sp];
+                case Bytecode.ITERATE:
+                    stack[sp - 1] = Environment.requireType(Iterable.class, stack[sp - 1]).iterator();
+                    break;
+                case Bytecode.NEXT: {
+                    Iterator<?> iterator = (Iterator<?>) stack[sp - 1];
+                    if (iterator.hasNext()) {
+                        stack[base + code[pc]] = iterator.next();
+                        pc += 2;
+                    } else {
+                        sp--;
+                        pc = code[pc + 1];
+                    }
+                    break;
+                }
+                case Bytecode.ADD_CONST:
+                    stack[sp - 1] = Environment.add(stack[sp - 1], constants[code[pc++]]);
+                    break;
+                case Bytecode.JUMP_COMPARE:
+                    sp -= 2;
+                    pc = (sign(Environment.compare(stack[sp], stack[sp + 1])) & code[pc]) != 0 ? code[pc + 1] : pc + 2;
+                    break;
+                case Bytecode.JUMP_EQUAL:
+                    sp -= 2;
+                    pc = equals(stack[sp], stack[sp + 1]) != (code[pc] != 0) ? code[pc + 1] : pc + 2;
+                    break;
+                default:
+                    throw new AssertionError("Invalid opcode " + code[pc - 1] + ".");
+            }
+        }
+    }
+
+    /**
+     * Returns the {@code COMPARE} mask bit for the result of a comparison.
+     */
+    private static int sign(int comparison) {
+        return comparison < 0 ? Bytecode.LESS : comparison == 0 ? Bytecode.EQUAL_TO : Bytecode.GREATER;
+    }
+
+    private static boolean equals(Object left, Object right) {
+        return left == null ? right == null : left.equals(right);
+    }
+
+}
@@ -0,0 +1,148 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Tests that {@link AstCodec} round trips trees exactly and rejects data it
+ * did not write.
+ */
+final class AstCodecTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testLiteral(String test, Object literal) throws IOException {
+        Ast.Source source = new Ast.Source(
+                Arrays.asList(new Ast.Field("name", Optional.of(new Ast.Expr.Literal(literal)))),
+                Arrays.asList()
+        );
+        Ast.Source decoded = AstCodec.decode(AstCodec.encode(source));
+        Assertions.assertEquals(source, decoded);
+        Object value = ((Ast.Expr.Literal) decoded.getFields().get(0).getValue().get()).getLiteral();
+        Assertions.assertEquals(literal == null ? null : literal.getClass(), value == null ? null : value.getClass());
+    }
+
+    private static Stream<Arguments> testLiteral() {
+        return Stream.of(
+                Arguments.of("Nil", null),
+                Arguments.of("True", true),
+                Arguments.of("False", false),
+                Arguments.of("Zero", BigInteger.ZERO),
+                Arguments.of("Negative", BigInteger.valueOf(-12345)),
+                Arguments.of("Long Max", BigInteger.valueOf(Long.MAX_VALUE)),
+                Arguments.of("Long Min", BigInteger.valueOf(Long.MIN_VALUE)),
+                Arguments.of("Big Integer", new BigInteger("-123456789012345678901234567890")),
+                Arguments.of("Decimal", new BigDecimal("1.50")),
+                Arguments.of("Big Decimal", new BigDecimal("-98765432109876543210.0123456789")),
+                Arguments.of("Negative Scale", new BigDecimal("1E+5")),
+                Arguments.of("Character", '\u00E9'),
+                Arguments.of("String", "h\u00E9llo \u2603\n")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testGenerated(String test, long seed) throws IOException {
+        Ast.Source source = new Parser(new Lexer(new ProgramGenerator(seed).generate(50_000)).lex()).parseSource();
+        byte[] bytes = AstCodec.encode(source);
+        Assertions.assertEquals(source, AstCodec.decode(bytes));
+        Assertions.assertArrayEquals(bytes, AstCodec.encode(AstCodec.decode(bytes)));
+    }
+
+    private static Stream<Arguments> testGenerated() {
+        return Stream.of(
+                Arguments.of("Seed 0", 0L),
+                Arguments.of("Seed 1", 1L),
+                Arguments.of("Seed 2", 2L)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSpans(String test, AstFactory factory, Parser.Option[] options) throws IOException {
+        String input = new ProgramGenerator(4).generate(5_000);
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Ast.Source decoded = AstCodec.decode(AstCodec.encode(
+                new Parser(new Lexer(input).lex(), factory, options).parseSource()));
+        Assertions.assertEquals(expected, decoded);
+        SpanTable spans = decoded.getSpans();
+        for (int offset = 0; offset <= input.length(); offset++) {
+            Ast node = expected.getSpans().find(offset);
+            Assertions.assertEquals(node, spans.find(offset));
+            if (node != null) {
+                Assertions.assertEquals(expected.getSpans().getStart(node), spans.getStart(spans.find(offset)));
+                Assertions.assertEquals(expected.getSpans().getEnd(node), spans.getEnd(spans.find(offset)));
+            }
+        }
+    }
+
+    private static Stream<Arguments> testSpans() {
+        return Stream.of(
+                Arguments.of("Plain", new AstFactory(), new Parser.Option[0]),
+                Arguments.of("Interned", new AstFactory(true), new Parser.Option[0]),
+                Arguments.of("Outline", new AstFactory(), new Parser.Option[] {Parser.Option.OUTLINE})
+        );
+    }
+
+    @Test
+    void testNoSpans() throws IOException {
+        Ast.Source source = new Ast.Source(Arrays.asList(new Ast.Field("x", Optional.empty())), Arrays.asList());
+        Assertions.assertEquals(0, AstCodec.decode(AstCodec.encode(source)).getSpans().size());
+    }
+
+    @Test
+    void testErrorNode() throws IOException {
+        Parser parser = new Parser(new Lexer("DEF f() DO x = ; END").lex(), Parser.Option.RECOVER);
+        Ast.Source source = parser.parseSource();
+        Assertions.assertEquals(source, AstCodec.decode(AstCodec.encode(source)));
+    }
+
+    @Test
+    void testInvalid() {
+        byte[] bytes = AstCodec.encode(new Parser(new Lexer("LET x = 1;").lex()).parseSource());
+        Assertions.assertThrows(IOException.class, () -> AstCodec.decode(new byte[0]));
+        Assertions.assertThrows(IOException.class, () -> AstCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+        Assertions.assertThrows(IOException.class, () -> AstCodec.decode(Arrays.copyOf(bytes, bytes.length + 1)));
+
+        byte[] version = bytes.clone();
+        version[4]++;
+        Assertions.assertThrows(IOException.class, () -> AstCodec.decode(version));
+
+        byte[] magic = bytes.clone();
+        magic[0] = 'X';
+        Assertions.assertThrows(IOException.class, () -> AstCodec.decode(magic));
+    }
+
+    @Test
+    void testCorrupt() {
+        // A string table count of Integer.MAX_VALUE with no strings after it.
+        byte[] count = {'P', 'L', 'C', 'A', 1, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        Assertions.assertThrows(IOException.class, () -> AstCodec.decode(count));
+
+        // Every corruption of a single byte is either still valid or an
+        // IOException, never another exception or error.
+        byte[] bytes = AstCodec.encode(new Parser(new Lexer(new ProgramGenerator(3).generate(200)).lex()).parseSource());
+        for (int i = 0; i < bytes.length; i++) {
+            for (int value : new int[] {0, 1, 0x7F, 0x80, 0xFF}) {
+                byte[] corrupt = bytes.clone();
+                corrupt[i] = (byte) value;
+                try {
+                    AstCodec.decode(corrupt);
+                } catch (IOException e) {
+                    // Expected for most corruptions.
+                }
+            }
+        }
+    }
+
+}
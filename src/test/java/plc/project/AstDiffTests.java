@@ -0,0 +1,88 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests the edit scripts produced by {@link AstDiff}. Each edit is written as
+ * its kind and path so the expected scripts stay readable.
+ */
+final class AstDiffTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testDiff(String test, String before, String after, List<String> expected) {
+        List<String> edits = new ArrayList<>();
+        for (AstDiff.Edit edit : AstDiff.diff(parse(before), parse(after))) {
+            edits.add(edit.getKind() + " " + edit.getPath());
+        }
+        Assertions.assertEquals(expected, edits);
+    }
+
+    private static Stream<Arguments> testDiff() {
+        return Stream.of(
+                Arguments.of("Identical",
+                        "LET x = 1; DEF f() DO g(); END",
+                        "LET x = 1; DEF f() DO g(); END",
+                        Arrays.asList()
+                ),
+                Arguments.of("Fields",
+                        "LET x = 1; LET y; LET z;",
+                        "LET z; LET x = 2; LET w;",
+                        Arrays.asList("CHANGED x", "REMOVED y", "ADDED w")
+                ),
+                Arguments.of("Methods",
+                        "DEF f() DO END DEF g(a) DO END DEF h(a) DO END",
+                        "DEF h(b) DO END DEF g(a, b) DO END DEF f() DO END",
+                        Arrays.asList("REMOVED g/1", "CHANGED h/1", "ADDED g/2")
+                ),
+                Arguments.of("Statements",
+                        "DEF f() DO a(); b(); c(); d(); END",
+                        "DEF f() DO a(); x(); c(); d(); e(); END",
+                        Arrays.asList("CHANGED f/0[1]", "ADDED f/0[4]")
+                ),
+                Arguments.of("Removed Statement",
+                        "DEF f() DO a(); b(); c(); END",
+                        "DEF f() DO a(); c(); END",
+                        Arrays.asList("REMOVED f/0[1]")
+                ),
+                Arguments.of("Nested",
+                        "DEF f() DO IF c DO a(); ELSE b(); END WHILE c DO a(); END END",
+                        "DEF f() DO IF c DO a(); ELSE x(); END WHILE d DO a(); END END",
+                        Arrays.asList("CHANGED f/0[0].else[0]", "CHANGED f/0[1]")
+                )
+        );
+    }
+
+    @Test
+    void testEdit() {
+        List<AstDiff.Edit> edits = AstDiff.diff(parse("DEF f() DO a(); END"), parse("DEF f() DO a(); b(); END"));
+        Assertions.assertEquals(1, edits.size());
+        Assertions.assertNull(edits.get(0).getBefore());
+        Assertions.assertEquals(parse("DEF f() DO b(); END").getMethods().get(0).getStatements().get(0), edits.get(0).getAfter());
+    }
+
+    @Test
+    void testGenerated() {
+        String input = new ProgramGenerator(7).generate(50_000);
+        Ast.Source before = parse(input);
+        Assertions.assertEquals(Arrays.asList(), AstDiff.diff(before, parse(input)));
+        Ast.Source after = parse(input + "DEF added() DO RETURN 1; END");
+        Assertions.assertEquals(Arrays.asList(new AstDiff.Edit(
+                AstDiff.Kind.ADDED, "added/0", null, after.getMethods().get(after.getMethods().size() - 1)
+        )), AstDiff.diff(before, after));
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
@@ -0,0 +1,91 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+
+/**
+ * Tests the standard and compact formats of {@link AstPrinter} and its depth
+ * and length limits.
+ */
+final class AstPrinterTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testFormats(String test, String input, String standard, String compact) {
+        Ast.Source source = parse(input);
+        Assertions.assertEquals(standard, source.toString());
+        Assertions.assertEquals(compact, new AstPrinter(Integer.MAX_VALUE, Long.MAX_VALUE, true).print(source));
+    }
+
+    private static Stream<Arguments> testFormats() {
+        return Stream.of(
+                Arguments.of("Field",
+                        "LET x; LET y = \"s\";",
+                        "Ast.Source{fields=[Ast.Field{name='x', value=Optional.empty}, " +
+                                "Ast.Field{name='y', value=Optional[Ast.Expr.Literal{literal=s}]}]methods=[]}",
+                        "Source([Field(x), Field(y, Literal(\"s\"))], [])"
+                ),
+                Arguments.of("Method",
+                        "DEF f(a) DO obj.g('c', a + 1); FOR i IN l DO RETURN (i); END END",
+                        "Ast.Source{fields=[]methods=[Ast.Method{name='f', parameters=[a], statements=[" +
+                                "Ast.Stmt.Expression{expression=Ast.Expr.Function{receiver=Optional[Ast.Expr.Access{receiver=Optional.empty, name='obj'}], name='g', arguments=[" +
+                                "Ast.Expr.Literal{literal=c}, Ast.Expr.Binary{operator='+', left=Ast.Expr.Access{receiver=Optional.empty, name='a'}, right=Ast.Expr.Literal{literal=1}}]}}, " +
+                                "For{name='i', value=Ast.Expr.Access{receiver=Optional.empty, name='l'}, statements=[" +
+                                "Ast.Stmt.Return{value=Ast.Expr.Group{expression=Ast.Expr.Access{receiver=Optional.empty, name='i'}}}]}]}]}",
+                        "Source([], [Method(f, [a], [Expression(Function(Access(obj), g, [Literal('c'), Binary(+, Access(a), Literal(1))])), " +
+                                "For(i, Access(l), [Return(Group(Access(i)))])])])"
+                )
+        );
+    }
+
+    @Test
+    void testDepth() {
+        Ast.Source source = parse("LET x = a.b; DEF f() DO END");
+        Assertions.assertEquals("Source([Field(x, ...)], [Method(f, [], [])])", new AstPrinter(2, Long.MAX_VALUE, true).print(source));
+        Assertions.assertEquals("...", new AstPrinter(0, Long.MAX_VALUE, false).print(source));
+    }
+
+    @Test
+    void testLength() {
+        Ast.Source source = parse(new ProgramGenerator(1).generate(10_000));
+        String full = source.toString();
+        StringWriter writer = new StringWriter();
+        Assertions.assertTrue(new AstPrinter(Integer.MAX_VALUE, 100, false).print(source, writer));
+        Assertions.assertEquals(full.substring(0, 100) + "...", writer.toString());
+        Assertions.assertFalse(new AstPrinter(Integer.MAX_VALUE, full.length(), false).print(source, new StringBuilder()));
+    }
+
+    @Test
+    void testIOException() {
+        Appendable failing = new Appendable() {
+            @Override
+            public Appendable append(CharSequence csq) throws IOException {
+                throw new IOException("closed");
+            }
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) throws IOException {
+                throw new IOException("closed");
+            }
+
+            @Override
+            public Appendable append(char c) throws IOException {
+                throw new IOException("closed");
+            }
+        };
+        Assertions.assertThrows(UncheckedIOException.class, () -> new AstPrinter().print(parse("LET x;"), failing));
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
@@ -0,0 +1,138 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Tests that {@link Ast#accept(Ast.Visitor)} dispatches to the method for
+ * each node type, that {@link Ast.Walker} visits the whole tree in order, and
+ * that structural hash codes are consistent with equals, and that literals
+ * stored unboxed behave exactly like their boxed values.
+ */
+final class AstTests {
+
+    @Test
+    void testWalkerOrder() throws ParseException {
+        Ast.Source source = new Parser(new Lexer(
+                "LET x = f(1); DEF m() DO IF a DO RETURN b.c; ELSE y = (2); END END"
+        ).lex()).parseSource();
+        List<String> visited = new ArrayList<>();
+        new Ast.Walker() {
+            @Override
+            public Void visit(Ast ast) {
+                visited.add(ast.getClass().getSimpleName());
+                return super.visit(ast);
+            }
+        }.visit((Ast) source);
+        Assertions.assertEquals(Arrays.asList(
+                "Source", "Field", "Function", "Literal", "Method", "If", "Access",
+                "Return", "Access", "Access", "Assignment", "Access", "Group", "Literal"
+        ), visited);
+    }
+
+    @Test
+    void testDispatch() throws ParseException {
+        Ast.Source source = new Parser(new Lexer(
+                "DEF m() DO x.y = f(x, z); FOR i IN list DO print(i); END END"
+        ).lex()).parseSource();
+        List<String> names = new ArrayList<>();
+        source.accept(new Ast.Walker() {
+            @Override
+            public Void visit(Ast.Expr.Access ast) {
+                names.add(ast.getName());
+                return super.visit(ast);
+            }
+
+            @Override
+            public Void visit(Ast.Stmt.For ast) {
+                names.add("FOR " + ast.getName());
+                return super.visit(ast);
+            }
+        });
+        Assertions.assertEquals(Arrays.asList("y", "x", "x", "z", "FOR i", "list", "i"), names);
+    }
+
+    @Test
+    void testHashCode() throws ParseException {
+        String input = "LET x = 1 + y.z; DEF m(a) DO IF a DO RETURN f(x); END END";
+        Ast.Source first = new Parser(new Lexer(input).lex()).parseSource();
+        Ast.Source second = new Parser(new Lexer(input).lex()).parseSource();
+        Ast.Source outline = new Parser(new Lexer(input).lex(), Parser.Option.OUTLINE).parseSource();
+        Assertions.assertEquals(first.hashCode(), second.hashCode());
+        Assertions.assertEquals(first.hashCode(), outline.hashCode());
+        Assertions.assertEquals(first, outline);
+
+        Set<Ast> set = new HashSet<>();
+        set.add(first.getFields().get(0));
+        set.add(first.getMethods().get(0));
+        Assertions.assertTrue(set.contains(second.getFields().get(0)));
+        Assertions.assertTrue(set.contains(second.getMethods().get(0)));
+    }
+
+    @Test
+    void testHashCodeDistinguishesTypes() {
+        Ast.Expr value = new Ast.Expr.Access(Optional.empty(), "x");
+        Ast.Stmt expression = new Ast.Stmt.Expression(value);
+        Ast.Stmt ret = new Ast.Stmt.Return(value);
+        Assertions.assertNotEquals(expression, ret);
+        Assertions.assertNotEquals(expression.hashCode(), ret.hashCode());
+        Assertions.assertNotEquals(
+                new Ast.Expr.Binary("+", value, new Ast.Expr.Literal(null)).hashCode(),
+                new Ast.Expr.Binary("+", new Ast.Expr.Literal(null), value).hashCode()
+        );
+    }
+
+    @Test
+    void testLiteralRepresentations() {
+        Assertions.assertEquals(new Ast.Expr.Literal(BigInteger.valueOf(-42)), Ast.Expr.Literal.ofInteger(-42));
+        Assertions.assertEquals(new Ast.Expr.Literal(BigInteger.valueOf(-42)).hashCode(), Ast.Expr.Literal.ofInteger(-42).hashCode());
+        Assertions.assertEquals(new Ast.Expr.Literal(new BigDecimal("1.50")), Ast.Expr.Literal.ofDecimal(150, 2));
+        Assertions.assertNotEquals(new Ast.Expr.Literal(new BigDecimal("1.5")), Ast.Expr.Literal.ofDecimal(150, 2));
+        Assertions.assertEquals(new BigDecimal("1.50"), Ast.Expr.Literal.ofDecimal(150, 2).getLiteral());
+        Assertions.assertEquals(BigInteger.TEN, Ast.Expr.Literal.ofInteger(10).getLiteral());
+        Assertions.assertEquals("Ast.Expr.Literal{literal=1.50}", Ast.Expr.Literal.ofDecimal(150, 2).toString());
+
+        BigInteger big = BigInteger.ONE.shiftLeft(64);
+        Assertions.assertFalse(new Ast.Expr.Literal(big).isLong());
+        Assertions.assertEquals(big, new Ast.Expr.Literal(big).getLiteral());
+        Assertions.assertTrue(new Ast.Expr.Literal(BigInteger.valueOf(Long.MIN_VALUE)).isLong());
+        Assertions.assertNotEquals(new Ast.Expr.Literal('a'), new Ast.Expr.Literal("a"));
+    }
+
+    @Test
+    void testLiteralDouble() {
+        Assertions.assertEquals(0.1, Ast.Expr.Literal.ofDecimal(1, 1).getDouble());
+        Assertions.assertEquals(-2.5, Ast.Expr.Literal.ofDecimal(-25, 1).getDouble());
+        Assertions.assertEquals(1e-30, Ast.Expr.Literal.ofDecimal(1, 30).getDouble());
+        BigDecimal huge = new BigDecimal(BigInteger.ONE.shiftLeft(70), 3);
+        Assertions.assertEquals(huge.doubleValue(), new Ast.Expr.Literal(huge).getDouble());
+        Assertions.assertThrows(IllegalStateException.class, () -> Ast.Expr.Literal.ofInteger(1).getDouble());
+    }
+
+    @Test
+    void testParsedLiterals() {
+        Ast.Source source = new Parser(new Lexer(
+                "LET a = 123; LET b = -7.25; LET c = 123456789012345678901234567890; LET d = 0.000000000000000000001;"
+        ).lex()).parseSource();
+        Ast.Expr.Literal a = (Ast.Expr.Literal) source.getFields().get(0).getValue().get();
+        Ast.Expr.Literal b = (Ast.Expr.Literal) source.getFields().get(1).getValue().get();
+        Ast.Expr.Literal c = (Ast.Expr.Literal) source.getFields().get(2).getValue().get();
+        Ast.Expr.Literal d = (Ast.Expr.Literal) source.getFields().get(3).getValue().get();
+        Assertions.assertTrue(a.isLong());
+        Assertions.assertEquals(123, a.getLong());
+        Assertions.assertEquals(new BigDecimal("-7.25"), b.getLiteral());
+        Assertions.assertEquals(-7.25, b.getDouble());
+        Assertions.assertEquals(new BigInteger("123456789012345678901234567890"), c.getLiteral());
+        Assertions.assertEquals(new BigDecimal("0.000000000000000000001"), d.getLiteral());
+    }
+
+}
@@ -0,0 +1,303 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Measures the time to run loop-heavy programs with each way of executing a
+ * program, checking that they all return the same result. Run with {@code
+ * java plc.project.ExecutionBenchmark [scale]}, where the scale (by default
+ * {@code 1}) multiplies the number of iterations of each program.
+ *
+ * Each program is run repeatedly (after a warmup) until about a second has
+ * passed, and the best time is reported in milliseconds. Compilation is not
+ * included in the times.
+ *
+ * The {@code naive} column is a baseline which walks the {@link Ast} itself,
+ * looking variables up by name in a chain of hash maps and returning by
+ * throwing an exception.
+ */
+public final class ExecutionBenchmark {
+
+    private static final Map<String, String> PROGRAMS = new LinkedHashMap<>();
+    private static final Map<String, Function<Ast.Source, Supplier<Object>>> ENGINES = new LinkedHashMap<>();
+
+    static {
+        PROGRAMS.put("while", "DEF main() DO LET sum = 0; LET i = 0; WHILE i < 200000 * SCALE DO " +
+                "sum = sum + i * 2; i = i + 1; END RETURN sum; END");
+        PROGRAMS.put("for", "DEF main() DO LET sum = 0; FOR i IN range(0, 200000 * SCALE) DO " +
+                "IF i / 3 * 3 == i DO sum = sum + i; END END RETURN sum; END");
+        PROGRAMS.put("fib", "DEF fib(n) DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END " +
+                "DEF main() DO LET total = 0; FOR i IN range(0, SCALE) DO total = total + fib(20); END RETURN total; END");
+        PROGRAMS.put("fields", "LET count = 0; LET limit = 100000; " +
+                "DEF step(x) DO count = count + 1; RETURN x + 1; END " +
+                "DEF main() DO LET x = 0; WHILE x < limit * SCALE DO x = step(x); END RETURN x; END");
+        PROGRAMS.put("decimal", "DEF main() DO LET total = 0.0; LET i = 0; WHILE i < 100000 * SCALE DO " +
+                "total = total + 0.5 * 2.0; i = i + 1; END RETURN total; END");
+        PROGRAMS.put("receiver", "DEF main() DO LET total = 0; LET i = 0; WHILE i < 50000 * SCALE DO " +
+                "total = total + \"abc\".length() + \"abc\".indexOf(\"c\"); i = i + 1; END RETURN total; END");
+
+        ENGINES.put("naive", source -> () -> new NaiveInterpreter(source).run());
+        ENGINES.put("interpreter", source -> {
+            Interpreter interpreter = new Interpreter(source);
+            return interpreter::run;
+        });
+        ENGINES.put("vm", source -> {
+            VirtualMachine machine = new VirtualMachine(Bytecode.compile(source, new Environment()));
+            return machine::run;
+        });
+        ENGINES.put("jit", source -> Jit.compile(source, new Environment())::run);
+    }
+
+    public static void main(String[] args) {
+        int scale = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        StringBuilder header = new StringBuilder(String.format(Locale.ROOT, "%10s", "program"));
+        ENGINES.keySet().forEach(engine -> header.append(String.format(Locale.ROOT, " %12s", engine + " ms")));
+        System.out.println(header);
+        for (Map.Entry<String, String> program : PROGRAMS.entrySet()) {
+            String input = program.getValue().replace("SCALE", Integer.toString(scale));
+            Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+            StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%10s", program.getKey()));
+            Object expected = null;
+            for (Map.Entry<String, Function<Ast.Source, Supplier<Object>>> engine : ENGINES.entrySet()) {
+                Supplier<Object> run = engine.getValue().apply(source);
+                long best = Long.MAX_VALUE;
+                long deadline = System.nanoTime() + 1_000_000_000L;
+                Object result = null;
+                for (int i = 0; i < 3 || System.nanoTime() < deadline; i++) {
+                    long start = System.nanoTime();
+                    result = run.get();
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                if (expected == null) {
+                    expected = result;
+                } else if (!expected.equals(result)) {
+                    throw new AssertionError(engine.getKey() + " returned " + result + " for " + program.getKey()
+                            + ", expected " + expected);
+                }
+                line.append(String.format(Locale.ROOT, " %12.2f", best / 1e6));
+            }
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Evaluates a tree directly, for comparison. Fields are evaluated on
+     * every run, which is negligible for these programs.
+     */
+    private static final class NaiveInterpreter implements Ast.Visitor<Object> {
+
+        @SuppressWarnings("serial") // Only used for control flow, never serialized.
+        private static final class Return extends RuntimeException {
+
+            private final Object value;
+
+            private Return(Object value) {
+                super(null, null, false, false);
+                this.value = value;
+            }
+
+        }
+
+        private final Environment environment = new Environment();
+        private final Map<String, Ast.Method> methods = new HashMap<>();
+        private Map<String, Object> globals = new HashMap<>();
+        private List<Map<String, Object>> scopes = new ArrayList<>();
+
+        private NaiveInterpreter(Ast.Source source) {
+            for (Ast.Method method : source.getMethods()) {
+                methods.put(method.getName() + "/" + method.getParameters().size(), method);
+            }
+            visit(source);
+        }
+
+        private Object run() {
+            return call(methods.get("main/0"), new ArrayList<>());
+        }
+
+        private Object call(Ast.Method method, List<Object> arguments) {
+            List<Map<String, Object>> caller = scopes;
+            scopes = new ArrayList<>();
+            scopes.add(new HashMap<>());
+            for (int i = 0; i < arguments.size(); i++) {
+                scopes.get(0).put(method.getParameters().get(i), arguments.get(i));
+            }
+            try {
+                method.getStatements().forEach(this::visit);
+                return null;
+            } catch (Return e) {
+                return e.value;
+            } finally {
+                scopes = caller;
+            }
+        }
+
+        private void block(List<Ast.Stmt> statements) {
+            scopes.add(new HashMap<>());
+            try {
+                statements.forEach(this::visit);
+            } finally {
+                scopes.remove(scopes.size() - 1);
+            }
+        }
+
+        private Map<String, Object> scope(String name) {
+            for (int i = scopes.size() - 1; i >= 0; i--) {
+                if (scopes.get(i).containsKey(name)) {
+                    return scopes.get(i);
+                }
+            }
+            return globals;
+        }
+
+        @Override
+        public Object visit(Ast.Source ast) {
+            ast.getFields().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Object visit(Ast.Field ast) {
+            globals.put(ast.getName(), ast.getValue().map(this::visit).orElse(null));
+            return null;
+        }
+
+        @Override
+        public Object visit(Ast.Method ast) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object visit(Ast.Stmt.Expression ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Object visit(Ast.Stmt.Declaration ast) {
+            scopes.get(scopes.size() - 1).put(ast.getName(), ast.getValue().map(this::visit).orElse(null));
+            return null;
+        }
+
+        @Override
+        public Object visit(Ast.Stmt.Assignment ast) {
+            String name = ((Ast.Expr.Access) ast.getReceiver()).getName();
+            scope(name).put(name, visit(ast.getValue()));
+            return null;
+        }
+
+        @Override
+        public Object visit(Ast.Stmt.If ast) {
+            block((Boolean) visit(ast.getCondition()) ? ast.getThenStatements() : ast.getElseStatements());
+            return null;
+        }
+
+        @Override
+        public Object visit(Ast.Stmt.For ast) {
+            for (Object element : (Iterable<?>) visit(ast.getValue())) {
+                scopes.add(new HashMap<>(Map.of(ast.getName(), element)));
+                try {
+                    block(ast.getStatements());
+                } finally {
+                    scopes.remove(scopes.size() - 1);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Object visit(Ast.Stmt.While ast) {
+            while ((Boolean) visit(ast.getCondition())) {
+                block(ast.getStatements());
+            }
+            return null;
+        }
+
+        @Override
+        public Object visit(Ast.Stmt.Return ast) {
+            throw new Return(visit(ast.getValue()));
+        }
+
+        @Override
+        public Object visit(Ast.Stmt.Error ast) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object visit(Ast.Expr.Literal ast) {
+            return ast.getLiteral();
+        }
+
+        @Override
+        public Object visit(Ast.Expr.Group ast) {
+            return visit(ast.getExpression());
+        }
+
+        @Override
+        public Object visit(Ast.Expr.Binary ast) {
+            switch (ast.getOperator()) {
+                case "AND":
+                    return (Boolean) visit(ast.getLeft()) && (Boolean) visit(ast.getRight());
+                case "OR":
+                    return (Boolean) visit(ast.getLeft()) || (Boolean) visit(ast.getRight());
+                default:
+                    break;
+            }
+            Object left = visit(ast.getLeft());
+            Object right = visit(ast.getRight());
+            switch (ast.getOperator()) {
+                case "<":
+                    return Environment.compare(left, right) < 0;
+                case "<=":
+                    return Environment.compare(left, right) <= 0;
+                case ">":
+                    return Environment.compare(left, right) > 0;
+                case ">=":
+                    return Environment.compare(left, right) >= 0;
+                case "==":
+                    return Objects.equals(left, right);
+                case "!=":
+                    return !Objects.equals(left, right);
+                case "+":
+                    return Environment.add(left, right);
+                case "-":
+                    return Environment.subtract(left, right);
+                case "*":
+                    return Environment.multiply(left, right);
+                default:
+                    return Environment.divide(left, right);
+            }
+        }
+
+        @Override
+        public Object visit(Ast.Expr.Access ast) {
+            if (ast.getReceiver().isPresent()) {
+                return Environment.getField(visit(ast.getReceiver().get()), ast.getName());
+            }
+            return scope(ast.getName()).get(ast.getName());
+        }
+
+        @Override
+        public Object visit(Ast.Expr.Function ast) {
+            Object receiver = ast.getReceiver().map(this::visit).orElse(null);
+            List<Object> arguments = new ArrayList<>();
+            ast.getArguments().forEach(argument -> arguments.add(visit(argument)));
+            if (ast.getReceiver().isPresent()) {
+                return Environment.invoke(receiver, ast.getName(), arguments.toArray());
+            }
+            Ast.Method method = methods.get(ast.getName() + "/" + arguments.size());
+            if (method != null) {
+                return call(method, arguments);
+            }
+            return environment.lookup(ast.getName(), arguments.size()).invoke(arguments.toArray());
+        }
+
+    }
+
+}
@@ -0,0 +1,63 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Tests that {@link FlatAst} holds the same tree as {@link Parser} creates,
+ * both through its views and when converted back with {@link
+ * FlatAst.Node#toAst()}.
+ */
+final class FlatAstTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSource(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        FlatAst flat = FlatAst.parse(new Lexer(input));
+        Assertions.assertEquals(expected, flat.getSource().toAst());
+        Assertions.assertEquals(FlatAst.SOURCE, flat.getKind(flat.getRoot()));
+    }
+
+    private static Stream<Arguments> testSource() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Fields", "LET x; LET y = 1 + 2.5 * 'c';"),
+                Arguments.of("Method", "DEF f(a, b) DO obj.g(a, \"s\"); RETURN b.c; END"),
+                Arguments.of("If Else", "DEF f() DO IF c DO LET x; ELSE x = (NIL); END END"),
+                Arguments.of("If", "DEF f() DO IF c DO IF d DO e(); ELSE g(); END END END"),
+                Arguments.of("Loops", "DEF f() DO FOR i IN list DO WHILE i < 10 DO i = i + 1; END END END"),
+                Arguments.of("Interleaved", "DEF f() DO RETURN TRUE; END LET x = FALSE; DEF g() DO f(); END"),
+                Arguments.of("Generated", new ProgramGenerator(5).generate(20_000))
+        );
+    }
+
+    @Test
+    void testViews() {
+        FlatAst flat = FlatAst.parse(new Lexer("LET x = 1; DEF f(a) DO IF a DO obj.g(a, 2); END END").lex());
+        FlatAst.Source source = flat.getSource();
+        Assertions.assertEquals("x", source.getFields().get(0).getName());
+        Assertions.assertEquals(BigInteger.ONE,
+                ((FlatAst.Expr.Literal) source.getFields().get(0).getValue().get()).getLiteral());
+
+        FlatAst.Method method = source.getMethods().get(0);
+        Assertions.assertEquals(Arrays.asList("a"), method.getParameters());
+        FlatAst.Stmt.If statement = (FlatAst.Stmt.If) method.getStatements().get(0);
+        Assertions.assertEquals(0, statement.getElseStatements().size());
+        FlatAst.Expr.Function call = (FlatAst.Expr.Function)
+                ((FlatAst.Stmt.Expression) statement.getThenStatements().get(0)).getExpression();
+        Assertions.assertEquals("g", call.getName());
+        Assertions.assertEquals(new Ast.Expr.Access(Optional.empty(), "obj"), call.getReceiver().get().toAst());
+        Assertions.assertEquals(2, call.getArguments().size());
+        Assertions.assertEquals(call, ((FlatAst.Stmt.Expression) statement.getThenStatements().get(0)).getExpression());
+    }
+
+}
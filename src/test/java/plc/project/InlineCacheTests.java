@@ -0,0 +1,83 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+final class InlineCacheTests {
+
+    public static final class Counter {
+
+        public BigInteger count = BigInteger.ZERO;
+        private String label = "";
+
+        public String getLabel() {
+            return label;
+        }
+
+        public void setLabel(String label) {
+            this.label = label;
+        }
+
+    }
+
+    @Test
+    void testMonomorphic() {
+        InlineCache cache = new InlineCache("length");
+        Assertions.assertEquals(BigInteger.valueOf(3), cache.invoke("abc", new Object[0]));
+        Assertions.assertEquals(BigInteger.valueOf(2), cache.invoke("de", new Object[0]));
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testPolymorphic() {
+        InlineCache cache = new InlineCache("isEmpty");
+        List<Object> receivers = List.of("", new ArrayList<>(), new HashMap<>(), new HashSet<>(), new TreeSet<>());
+        for (int i = 0; i < receivers.size(); i++) {
+            Assertions.assertEquals(true, cache.invoke(receivers.get(i), new Object[0]));
+            Assertions.assertEquals(i < InlineCache.LIMIT ? i + 1 : -1, cache.size());
+        }
+        // A megamorphic site still finds the method.
+        Assertions.assertEquals(false, cache.invoke("a", new Object[0]));
+    }
+
+    @Test
+    void testConverted() {
+        InlineCache cache = new InlineCache("charAt");
+        Assertions.assertEquals('b', cache.invoke("abc", new Object[] {BigInteger.ONE}));
+        Assertions.assertEquals(1, cache.size());
+        // The cached charAt(int) does not accept an integer out of range.
+        Object[] arguments = {BigInteger.ONE.shiftLeft(40)};
+        Assertions.assertThrows(EvaluationException.class, () -> cache.invoke("abc", arguments));
+    }
+
+    @Test
+    void testOverloaded() {
+        InlineCache cache = new InlineCache("indexOf");
+        Assertions.assertEquals(BigInteger.ONE, cache.invoke("abc", new Object[] {BigInteger.valueOf('b')}));
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals(BigInteger.TWO, cache.invoke("abc", new Object[] {"c"}));
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testFields() {
+        Counter counter = new Counter();
+        InlineCache count = new InlineCache("count");
+        count.setField(counter, BigInteger.TEN);
+        Assertions.assertEquals(BigInteger.TEN, count.getField(counter));
+        InlineCache label = new InlineCache("label");
+        label.setField(counter, "a");
+        Assertions.assertEquals("a", label.getField(counter));
+        Assertions.assertEquals(2, label.size());
+        Assertions.assertThrows(EvaluationException.class, () -> label.setField(counter, BigInteger.ONE));
+        Assertions.assertThrows(EvaluationException.class, () -> label.getField(null));
+    }
+
+}
@@ -0,0 +1,183 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests programs run by {@link Interpreter}, checking the value returned by
+ * {@code main} and the output printed.
+ */
+final class InterpreterTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testRun(String test, String input, Object expected, String output) {
+        StringBuilder builder = new StringBuilder();
+        Object result = new Interpreter(parse(input), new Environment(builder)).run();
+        Assertions.assertEquals(expected, result);
+        Assertions.assertEquals(output, builder.toString());
+    }
+
+    static Stream<Arguments> testRun() {
+        return Stream.of(
+                Arguments.of("Recursion",
+                        "DEF fib(n) DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END " +
+                                "DEF main() DO RETURN fib(20); END",
+                        BigInteger.valueOf(6765), ""
+                ),
+                Arguments.of("Fields",
+                        "LET total = 0; LET step = 1; " +
+                                "DEF main() DO LET i = 0; WHILE i < 10 DO total = total + i; i = i + step; END RETURN total; END",
+                        BigInteger.valueOf(45), ""
+                ),
+                Arguments.of("For",
+                        "DEF main() DO FOR i IN range(0, 3) DO print(i); END END",
+                        null, "0\n1\n2\n"
+                ),
+                Arguments.of("Nested Return",
+                        "DEF find(n) DO FOR i IN range(0, 10) DO WHILE TRUE DO IF i == n DO RETURN i * 2; END LET x; RETURN NIL; END END RETURN -1; END " +
+                                "DEF main() DO RETURN find(0); END",
+                        BigInteger.ZERO, ""
+                ),
+                Arguments.of("Declaration Reset",
+                        "DEF main() DO FOR i IN range(0, 2) DO LET x; print(x); x = i; END END",
+                        null, "NIL\nNIL\n"
+                ),
+                Arguments.of("Block Scopes",
+                        "DEF main() DO LET x = 1; IF TRUE DO LET x = 2; print(x); END IF TRUE DO LET y = 3; print(x + y); END RETURN x; END",
+                        BigInteger.ONE, "2\n4\n"
+                ),
+                Arguments.of("Operators",
+                        "DEF main() DO print(1.0 / 3.0); print(7 / 2); print(\"a\" + 1 + TRUE); print(1 != 2 AND \"a\" < \"b\"); RETURN 2 >= 3 OR NIL == NIL; END",
+                        true, "0.3\n3\na1TRUE\nTRUE\n"
+                ),
+                Arguments.of("Short Circuit",
+                        "DEF main() DO RETURN FALSE AND undefined(); END DEF undefined() DO RETURN 1 + TRUE; END",
+                        false, ""
+                ),
+                Arguments.of("Receivers",
+                        "LET values = list(1, 2); DEF main() DO values.add(3); print(values); print(values.get(0)); print(range(1, 5).end); RETURN values.size(); END",
+                        BigInteger.valueOf(3), "[1, 2, 3]\n1\n5\n"
+                ),
+                Arguments.of("Decimal",
+                        "LET rate = 1.5; DEF main() DO RETURN rate * 2.0; END",
+                        new BigDecimal("3.00"), ""
+                ),
+                Arguments.of("Overflow",
+                        "DEF main() DO LET max = 9223372036854775807; LET min = -9223372036854775807 - 1; " +
+                                "print(max + 1); print(min - 1); print(max * max / max); print(min / -1); RETURN max + 1 > max; END",
+                        true, "9223372036854775808\n-9223372036854775809\n9223372036854775807\n9223372036854775808\n"
+                ),
+                Arguments.of("Large Integers",
+                        "DEF main() DO LET big = 100000000000000000000; print(big - big + 1 == 1); print(big == big * 1); " +
+                                "RETURN (big + 1) * 2 - big; END",
+                        new BigInteger("100000000000000000002"), "TRUE\nTRUE\n"
+                ),
+                Arguments.of("Mixed Operands",
+                        "DEF main() DO LET s = \"n\"; print(s + 2 * 3); print(1 == 1.0); RETURN 0.5 + 1.0 * 2.0; END",
+                        new BigDecimal("2.50"), "n6\nFALSE\n"
+                ),
+                Arguments.of("Range Variable",
+                        "DEF main() DO LET values = list(); FOR i IN range(0, 3) DO values.add(i); i = i * 10; print(i); END " +
+                                "FOR i IN range(2, 2) DO print(i); END RETURN values; END",
+                        Arrays.asList(BigInteger.ZERO, BigInteger.ONE, BigInteger.TWO), "0\n10\n20\n"
+                ),
+                Arguments.of("Range Boundaries",
+                        "DEF main() DO LET min = -9223372036854775807 - 1; LET max = 9223372036854775807; " +
+                                "FOR i IN range(min, min + 2) DO print(i == min); print(i - 1); END " +
+                                "FOR i IN range(max - 1, max + 2) DO print(i); END END",
+                        null, "TRUE\n-9223372036854775809\nFALSE\n-9223372036854775808\n" +
+                                "9223372036854775806\n9223372036854775807\n9223372036854775808\n"
+                ),
+                Arguments.of("List Loop",
+                        "DEF main() DO LET values = list(1, 2, 3); LET sum = 0; FOR value IN values DO sum = sum + value; END " +
+                                "FOR value IN values DO IF value == 2 DO values.remove(value); END END print(values); RETURN sum; END",
+                        BigInteger.valueOf(6), "[1, 3]\n"
+                )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testResolveError(String test, String input) {
+        Assertions.assertThrows(EvaluationException.class, () -> new Interpreter(parse(input)));
+    }
+
+    static Stream<Arguments> testResolveError() {
+        return Stream.of(
+                Arguments.of("Undefined Variable", "DEF main() DO RETURN x; END"),
+                Arguments.of("Undefined Function", "DEF main() DO RETURN f(1); END"),
+                Arguments.of("Later Field", "LET x = y; LET y = 1;"),
+                Arguments.of("Redefined Variable", "DEF main() DO LET x; LET x; END"),
+                Arguments.of("Redefined Method", "DEF f() DO END DEF f() DO END"),
+                Arguments.of("Out Of Scope", "DEF main() DO IF TRUE DO LET x = 1; END RETURN x; END"),
+                Arguments.of("Invalid Assignment", "DEF main() DO f() = 1; END DEF f() DO END")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRuntimeError(String test, String input) {
+        Interpreter interpreter = new Interpreter(parse(input), new Environment(new StringBuilder()));
+        Assertions.assertThrows(EvaluationException.class, interpreter::run);
+    }
+
+    static Stream<Arguments> testRuntimeError() {
+        return Stream.of(
+                Arguments.of("Type", "DEF main() DO RETURN 1 + TRUE; END"),
+                Arguments.of("Condition", "DEF main() DO IF 1 DO END END"),
+                Arguments.of("Division By Zero", "DEF main() DO RETURN 1 / 0; END"),
+                Arguments.of("Comparison", "DEF main() DO RETURN 1 < 1.0; END"),
+                Arguments.of("Iterable", "DEF main() DO FOR i IN 1 DO END END"),
+                Arguments.of("Missing Method", "DEF main() DO RETURN \"s\".missing(); END"),
+                Arguments.of("Missing Main", "DEF f() DO END")
+        );
+    }
+
+    @Test
+    void testCall() {
+        Interpreter interpreter = new Interpreter(parse("LET base = 10; DEF add(x, y) DO RETURN base + x + y; END"));
+        Assertions.assertEquals(BigInteger.valueOf(13), interpreter.call("add", BigInteger.ONE, BigInteger.TWO));
+        Assertions.assertEquals(Arrays.asList(BigInteger.ONE), interpreter.call("list", BigInteger.ONE));
+    }
+
+    @Test
+    void testLongBoundaries() {
+        // Integers near the limits of a long, whose results must be exactly
+        // those of BigInteger arithmetic.
+        Interpreter interpreter = new Interpreter(parse("DEF f(a, b) DO RETURN a * b + a - b / (b + 1); END " +
+                "DEF g(a, b) DO RETURN a + b; END DEF h(a, b) DO RETURN a - b < a * b; END DEF e(a, b) DO RETURN a - b == b; END"));
+        List<BigInteger> values = new ArrayList<>();
+        for (long value : new long[] {0, 1, 2, 3, Integer.MAX_VALUE, 1L << 32, Long.MAX_VALUE / 2, Long.MAX_VALUE}) {
+            values.add(BigInteger.valueOf(value));
+            values.add(BigInteger.valueOf(value).negate());
+            values.add(BigInteger.valueOf(value).negate().subtract(BigInteger.ONE));
+        }
+        values.add(BigInteger.ONE.shiftLeft(64));
+        for (BigInteger a : values) {
+            for (BigInteger b : values) {
+                Assertions.assertEquals(a.add(b), interpreter.call("g", a, b));
+                Assertions.assertEquals(a.subtract(b).compareTo(a.multiply(b)) < 0, interpreter.call("h", a, b));
+                Assertions.assertEquals(a.subtract(b).equals(b), interpreter.call("e", a, b));
+                if (!b.equals(BigInteger.ONE.negate())) {
+                    Assertions.assertEquals(a.multiply(b).add(a).subtract(b.divide(b.add(BigInteger.ONE))), interpreter.call("f", a, b));
+                }
+            }
+        }
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
@@ -0,0 +1,101 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests that programs compiled by the {@link Jit} behave as they do with the
+ * {@link Interpreter}, using the same programs as {@link InterpreterTests}.
+ */
+final class JitTests {
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testRun")
+    void testRun(String test, String input, Object expected, String output) {
+        StringBuilder builder = new StringBuilder();
+        Object result = Jit.compile(parse(input), new Environment(builder)).run();
+        Assertions.assertEquals(expected, result);
+        Assertions.assertEquals(output, builder.toString());
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testResolveError")
+    void testResolveError(String test, String input) {
+        Assertions.assertThrows(EvaluationException.class, () -> Jit.compile(parse(input), new Environment()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testRuntimeError")
+    void testRuntimeError(String test, String input) {
+        Jit program = Jit.compile(parse(input), new Environment(new StringBuilder()));
+        Assertions.assertThrows(EvaluationException.class, program::run);
+    }
+
+    @Test
+    void testCall() {
+        Jit program = Jit.compile(parse("LET base = 10; DEF add(x, y) DO RETURN base + x + y; END"), new Environment());
+        Assertions.assertEquals(BigInteger.valueOf(13), program.call("add", BigInteger.ONE, BigInteger.TWO));
+        Assertions.assertThrows(EvaluationException.class, () -> program.call("add", BigInteger.ONE));
+    }
+
+    @Test
+    void testUnreachable() {
+        // The JVM rejects unreachable code, which is still checked for errors.
+        Jit program = Jit.compile(parse("DEF f(x) DO IF x DO RETURN 1; ELSE RETURN 2; END RETURN 3; END"), new Environment());
+        Assertions.assertEquals(BigInteger.TWO, program.call("f", false));
+        Assertions.assertThrows(EvaluationException.class, () -> Jit.compile(parse("DEF f() DO RETURN 1; RETURN y; END"), new Environment()));
+    }
+
+    @Test
+    void testLongBoundaries() {
+        // Integers near the limits of a long, whose results must be exactly
+        // those of BigInteger arithmetic.
+        Jit program = Jit.compile(parse("DEF f(a, b) DO RETURN a * b + a - b / (b + 1); END " +
+                "DEF g(a, b) DO RETURN a + b; END DEF h(a, b) DO RETURN a - b < a * b; END DEF e(a, b) DO RETURN a - b == b; END"),
+                new Environment());
+        List<BigInteger> values = new ArrayList<>();
+        for (long value : new long[] {0, 1, 2, Integer.MAX_VALUE, 1L << 32, Long.MAX_VALUE / 2, Long.MAX_VALUE}) {
+            values.add(BigInteger.valueOf(value));
+            values.add(BigInteger.valueOf(value).negate());
+            values.add(BigInteger.valueOf(value).negate().subtract(BigInteger.ONE));
+        }
+        values.add(BigInteger.ONE.shiftLeft(64));
+        for (BigInteger a : values) {
+            for (BigInteger b : values) {
+                Assertions.assertEquals(a.add(b), program.call("g", a, b));
+                Assertions.assertEquals(a.subtract(b).compareTo(a.multiply(b)) < 0, program.call("h", a, b));
+                Assertions.assertEquals(a.subtract(b).equals(b), program.call("e", a, b));
+                if (!b.equals(BigInteger.ONE.negate())) {
+                    Assertions.assertEquals(a.multiply(b).add(a).subtract(b.divide(b.add(BigInteger.ONE))), program.call("f", a, b));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testLargeMethods() {
+        // Jumps over more than 32KB of code are widened, and a method over
+        // 64KB is run by the virtual machine instead.
+        for (int count : new int[] {800, 3000}) {
+            StringBuilder input = new StringBuilder("DEF main() DO LET x = 0; LET y = 0; WHILE x < 3 DO x = x + 1; ");
+            for (int i = 0; i < count; i++) {
+                input.append("y = y + x; ");
+            }
+            input.append("END RETURN y; END");
+            Jit program = Jit.compile(parse(input.toString()), new Environment());
+            Assertions.assertEquals(count < 1000, program.isCompiled());
+            Assertions.assertEquals(BigInteger.valueOf(6L * count), program.run());
+        }
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
@@ -0,0 +1,129 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+final class OptimizerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testFold(String test, String input, String expected) {
+        Assertions.assertEquals(expression(expected), expression(input, Optimizer::fold));
+    }
+
+    private static Stream<Arguments> testFold() {
+        return Stream.of(
+                Arguments.of("Arithmetic", "(1 + 2) * 3 - 4 / 2", "7"),
+                Arguments.of("Decimal", "1.5 * 2.0", "3.00"),
+                Arguments.of("Comparison", "1 < 2", "TRUE"),
+                Arguments.of("Equality", "1 == 1.0", "FALSE"),
+                Arguments.of("And", "TRUE AND FALSE", "FALSE"),
+                Arguments.of("Short Circuit", "FALSE AND x", "FALSE"),
+                Arguments.of("Unchecked Right", "TRUE AND x", "TRUE AND x"),
+                Arguments.of("Concatenation", "\"a\" + 1 + NIL", "\"a1NIL\""),
+                Arguments.of("Concatenation Chain", "x + \"a\" + 1", "x + \"a1\""),
+                Arguments.of("Group", "((x))", "x"),
+                Arguments.of("Add Zero", "x - 1 + 0", "x - 1"),
+                Arguments.of("Multiply One", "1 * (2 * x)", "2 * x"),
+                Arguments.of("Divide One", "(x / 2) / 1", "x / 2"),
+                Arguments.of("Unknown Type", "x + 0", "x + 0"),
+                Arguments.of("Concatenate Zero", "\"a\" + 0", "\"a0\""),
+                Arguments.of("Division By Zero", "1 / 0", "1 / 0"),
+                Arguments.of("Mismatched Types", "1 + 1.0", "1 + 1.0")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testRun")
+    void testFoldRun(String test, String input, Object expected, String output) {
+        StringBuilder builder = new StringBuilder();
+        Object result = new Interpreter(Optimizer.fold(parse(input)), new Environment(builder)).run();
+        Assertions.assertEquals(expected, result);
+        Assertions.assertEquals(output, builder.toString());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testEliminate(String test, String input, String expected) {
+        Assertions.assertEquals(parse(expected), Optimizer.eliminate(parse(input)));
+    }
+
+    private static Stream<Arguments> testEliminate() {
+        return Stream.of(
+                Arguments.of("After Return",
+                        "DEF main() DO RETURN 1; print(2); END",
+                        "DEF main() DO RETURN 1; END"),
+                Arguments.of("After Returning If",
+                        "DEF main() DO IF x DO RETURN 1; ELSE RETURN 2; END print(3); END",
+                        "DEF main() DO IF x DO RETURN 1; ELSE RETURN 2; END END"),
+                Arguments.of("If True",
+                        "DEF main() DO IF TRUE DO print(1); ELSE print(2); END END",
+                        "DEF main() DO print(1); END"),
+                Arguments.of("If False Declaration",
+                        "DEF main() DO IF FALSE DO print(1); ELSE LET x = f(); print(x); END END",
+                        "DEF main() DO IF TRUE DO LET x = f(); print(x); END END"),
+                Arguments.of("While False",
+                        "DEF main() DO WHILE FALSE DO print(1); END RETURN 2; END",
+                        "DEF main() DO RETURN 2; END"),
+                Arguments.of("Unused Declarations",
+                        "DEF main() DO LET x = 1; LET y = x; LET z = x == y; RETURN 2; END",
+                        "DEF main() DO RETURN 2; END"),
+                Arguments.of("Impure Declaration",
+                        "DEF main() DO LET x = f(); LET y = 1 + 1; RETURN 2; END",
+                        "DEF main() DO LET x = f(); LET y = 1 + 1; RETURN 2; END"),
+                Arguments.of("Assigned Declaration",
+                        "DEF main() DO LET x = 1; x = 2; END",
+                        "DEF main() DO LET x = 1; x = 2; END"),
+                Arguments.of("Unreachable Methods",
+                        "LET x = g(); DEF main() DO RETURN f(); END DEF f() DO RETURN 1; END DEF f(y) DO END " +
+                                "DEF g() DO RETURN 2; END DEF h() DO RETURN h(); END",
+                        "LET x = g(); DEF main() DO RETURN f(); END DEF f() DO RETURN 1; END DEF g() DO RETURN 2; END")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testRun")
+    void testOptimizeRun(String test, String input, Object expected, String output) {
+        StringBuilder builder = new StringBuilder();
+        Object result = new Interpreter(Optimizer.optimize(parse(input)), new Environment(builder)).run();
+        Assertions.assertEquals(expected, result);
+        Assertions.assertEquals(output, builder.toString());
+    }
+
+    @Test
+    void testEntryPoints() {
+        Ast.Source source = Optimizer.eliminate(parse("DEF add(x, y) DO RETURN x + y; END DEF f() DO END"), Set.of("add/2"));
+        Assertions.assertEquals(List.of("add"), source.getMethods().stream().map(Ast.Method::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testUnchanged() {
+        Ast.Source source = parse("LET x = 1; DEF f(y) DO RETURN x + y; END");
+        Assertions.assertSame(source, Optimizer.fold(source));
+        Ast.Source main = parse("DEF main() DO LET x = f(); RETURN x; END DEF f() DO RETURN 1; END");
+        Assertions.assertSame(main, Optimizer.eliminate(main));
+    }
+
+    private static Ast.Expr expression(String input) {
+        return expression(input, source -> source);
+    }
+
+    private static Ast.Expr expression(String input, UnaryOperator<Ast.Source> pass) {
+        Ast.Source source = pass.apply(parse("DEF f(x) DO RETURN " + input + "; END"));
+        return ((Ast.Stmt.Return) source.getMethods().get(0).getStatements().get(0)).getValue();
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
@@ -0,0 +1,106 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests that {@link ParallelTraversal} gives the same result as a serial walk
+ * of the tree, for any threshold and on every run.
+ */
+final class ParallelTraversalTests {
+
+    @Test
+    void testCount() {
+        Ast.Source source = new Parser(new Lexer(new ProgramGenerator(3).generate(50_000)).lex()).parseSource();
+        int expected = count(source) - 1;
+        for (int threshold : new int[] {1, 2, 64}) {
+            ParallelTraversal<Integer> traversal = new ParallelTraversal<>(
+                    ForkJoinPool.commonPool(), threshold, ParallelTraversalTests::count, method -> 1, 0, Integer::sum);
+            Assertions.assertEquals(expected, (int) traversal.traverse(source));
+        }
+    }
+
+    @Test
+    void testDeterministicOrder() {
+        String input = new ProgramGenerator(4).generate(20_000);
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        List<String> expected = names(source);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelTraversal<List<String>> traversal = new ParallelTraversal<>(
+                    pool, 1, ParallelTraversalTests::names, method -> List.of(method.getName()), List.of(), (left, right) -> {
+                        List<String> names = new ArrayList<>(left);
+                        names.addAll(right);
+                        return names;
+                    });
+            for (int i = 0; i < 5; i++) {
+                Assertions.assertEquals(expected, traversal.traverse(source));
+            }
+            Ast.Source outline = new Parser(new Lexer(input).lex(), Parser.Option.OUTLINE).parseSource();
+            Assertions.assertEquals(expected, traversal.traverse(outline));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testTreeNodes() {
+        // The header and statements analyzed are the nodes of the tree, so
+        // they have spans.
+        Ast.Source source = new Parser(new Lexer(new ProgramGenerator(5).generate(5_000)).lex()).parseSource();
+        SpanTable spans = source.getSpans();
+        ParallelTraversal<Integer> traversal = new ParallelTraversal<>(ForkJoinPool.commonPool(), 1,
+                ast -> spans.indexOf(ast) < 0 ? 1 : 0, method -> spans.indexOf(method) < 0 ? 1 : 0, 0, Integer::sum);
+        Assertions.assertEquals(0, (int) traversal.traverse(source));
+    }
+
+    @Test
+    void testEmpty() {
+        ParallelTraversal<Integer> traversal = new ParallelTraversal<>(ParallelTraversalTests::count, 0, Integer::sum);
+        Assertions.assertEquals(0, (int) traversal.traverse(new Ast.Source(List.of(), List.of())));
+    }
+
+    private static int count(Ast ast) {
+        int[] count = {0};
+        new Ast.Walker() {
+            @Override
+            public Void visit(Ast ast) {
+                count[0]++;
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        return count[0];
+    }
+
+    /**
+     * Returns the names of fields, methods and accesses in the order visited.
+     */
+    private static List<String> names(Ast ast) {
+        List<String> names = new ArrayList<>();
+        new Ast.Walker() {
+            @Override
+            public Void visit(Ast.Field ast) {
+                names.add(ast.getName());
+                return super.visit(ast);
+            }
+
+            @Override
+            public Void visit(Ast.Method ast) {
+                names.add(ast.getName());
+                return super.visit(ast);
+            }
+
+            @Override
+            public Void visit(Ast.Expr.Access ast) {
+                names.add(ast.getName());
+                return super.visit(ast);
+            }
+        }.visit(ast);
+        return names;
+    }
+
+}
@@ -0,0 +1,100 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Tests {@link ParseCache} and the {@link AstCodec} format it stores on disk.
+ */
+final class ParseCacheTests {
+
+    private static final String PROGRAM = "LET x = 1.50;\n" +
+            "DEF main(a, b) DO\n" +
+            "    IF a < b AND TRUE DO print(\"less\\t\", 'c'); ELSE RETURN NIL; END\n" +
+            "    FOR i IN list DO obj.field = obj.call(-2 * (i + 1)); END\n" +
+            "    WHILE FALSE DO LET y; END\n" +
+            "END";
+
+    @Test
+    void testCodecRoundTrip() throws IOException {
+        Ast.Source source = new Parser(new Lexer(PROGRAM).lex()).parseSource();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AstCodec.write(source, output);
+        Ast.Source read = AstCodec.read(new ByteArrayInputStream(output.toByteArray()));
+        Assertions.assertEquals(source, read);
+    }
+
+    @Test
+    void testMemoryHits() {
+        ParseCache cache = new ParseCache(2);
+        Ast.Source first = cache.parse(PROGRAM);
+        Assertions.assertSame(first, cache.parse(PROGRAM));
+        Assertions.assertEquals(1, cache.getMemoryHits());
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(0.5, cache.getHitRatio(), 1e-9);
+    }
+
+    @Test
+    void testEviction() {
+        ParseCache cache = new ParseCache(2);
+        Ast.Source a = cache.parse("LET a;");
+        cache.parse("LET b;");
+        cache.parse("LET a;");
+        cache.parse("LET c;");
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertSame(a, cache.parse("LET a;"));
+        cache.parse("LET b;");
+        Assertions.assertEquals(2, cache.getMemoryHits());
+        Assertions.assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    void testDiskStore() throws IOException {
+        Path directory = Files.createTempDirectory("parse-cache");
+        try {
+            ParseCache first = new ParseCache(8, directory);
+            Ast.Source expected = first.parse(PROGRAM);
+            Assertions.assertEquals(1, first.getMisses());
+
+            ParseCache second = new ParseCache(8, directory);
+            Ast.Source loaded = second.parse(PROGRAM);
+            Assertions.assertEquals(expected, loaded);
+            Assertions.assertEquals(1, second.getDiskHits());
+            Ast.Method method = loaded.getMethods().get(0);
+            Assertions.assertEquals(expected.getSpans().getStart(expected.getMethods().get(0)),
+                    loaded.getSpans().getStart(method));
+            Assertions.assertEquals(expected.getSpans().size(), loaded.getSpans().size());
+            Assertions.assertEquals(0, second.getMisses());
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void testUnwritableStore() throws IOException {
+        // A file where the directory should be, which cannot be written even
+        // when running with permissions to write anywhere.
+        Path file = Files.createTempFile("parse-cache", ".file");
+        try {
+            ParseCache cache = new ParseCache(8, file);
+            Ast.Source source = cache.parse(PROGRAM);
+            Assertions.assertEquals(new Parser(new Lexer(PROGRAM).lex()).parseSource(), source);
+            Assertions.assertSame(source, cache.parse(PROGRAM));
+            Assertions.assertEquals(1, cache.getMisses());
+            Assertions.assertEquals(0, Files.size(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
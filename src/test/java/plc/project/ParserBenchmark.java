@@ -0,0 +1,170 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures end-to-end lex and parse throughput and retained heap on programs
+ * from {@link ProgramGenerator}, at sizes growing by a factor of ten (by
+ * default from 1 KB to 1 GB). Run with {@code ./gradlew benchmark}, optionally
+ * passing {@code --args="<min> <max> <budget-seconds> <seed>"} with sizes in
+ * bytes or with a {@code K}, {@code M} or {@code G} suffix.
+ *
+ * Each size is lexed and parsed repeatedly (after a warmup) until about a
+ * second has passed, and the best time is reported, along with the time to
+ * decode the same tree with {@link AstCodec}. The heap retained by the tree
+ * alone (not counting the token list) is measured after a full collection,
+ * for a plain AST, for an AST parsed with an interning {@link AstFactory},
+ * and for a {@link FlatAst}. The run stops early once the next size is
+ * projected to exceed the time budget or the heap is exhausted, since the
+ * largest sizes need several gigabytes of heap (see the {@code benchmark}
+ * task in the build).
+ */
+public final class ParserBenchmark {
+
+    public static void main(String[] args) {
+        long min = args.length > 0 ? parseSize(args[0]) : 1L << 10;
+        long max = args.length > 1 ? parseSize(args[1]) : 1L << 30;
+        long budget = args.length > 2 ? Long.parseLong(args[2]) * 1_000_000_000L : 600_000_000_000L;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        System.out.println(String.format(Locale.ROOT, "%12s %10s %10s %10s %10s %12s %10s %12s %10s %12s %12s",
+                "size", "tokens", "nodes", "lex ms", "parse ms", "MB/s", "decode ms", "ast MB", "ast/src", "interned MB", "flat MB"));
+        for (long size = min; size <= max; size *= 10) {
+            Result result;
+            try {
+                result = measure(size, seed);
+            } catch (OutOfMemoryError e) {
+                System.out.println(String.format(Locale.ROOT, "%12d out of memory (max heap %d MB)",
+                        size, Runtime.getRuntime().maxMemory() >> 20));
+                break;
+            }
+            System.out.println(result);
+            if ((result.lex + result.parse) * 10 > budget) {
+                System.out.println("Stopping: the next size is projected to exceed the time budget.");
+                break;
+            }
+        }
+    }
+
+    private static Result measure(long size, long seed) {
+        if (size > Integer.MAX_VALUE - 1024) {
+            throw new OutOfMemoryError("Size exceeds the maximum String length");
+        }
+        String input = new ProgramGenerator(seed).generate((int) size);
+        long bestLex = Long.MAX_VALUE;
+        long bestParse = Long.MAX_VALUE;
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        for (int i = 0; i < 3 || System.nanoTime() < deadline; i++) {
+            long start = System.nanoTime();
+            List<Token> tokens = new Lexer(input).lex();
+            long lexed = System.nanoTime();
+            new Parser(tokens).parseSource();
+            long parsed = System.nanoTime();
+            bestLex = Math.min(bestLex, lexed - start);
+            bestParse = Math.min(bestParse, parsed - lexed);
+            if (i == 0 && parsed - start > 1_000_000_000L) {
+                break;
+            }
+        }
+
+        byte[] encoded = AstCodec.encode(new Parser(new Lexer(input).lex()).parseSource());
+        long bestDecode = Long.MAX_VALUE;
+        deadline = System.nanoTime() + 1_000_000_000L;
+        for (int i = 0; i < 3 || System.nanoTime() < deadline; i++) {
+            long start = System.nanoTime();
+            try {
+                AstCodec.decode(encoded);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bestDecode = Math.min(bestDecode, System.nanoTime() - start);
+        }
+        encoded = null;
+
+        List<Token> tokens = new Lexer(input).lex();
+        long baseline = usedHeap();
+        Ast.Source source = new Parser(tokens).parseSource();
+        long heap = usedHeap() - baseline;
+        int nodes = count(source);
+        source = null;
+
+        baseline = usedHeap();
+        Ast.Source interned = new Parser(tokens, new AstFactory(true)).parseSource();
+        long internedHeap = usedHeap() - baseline;
+        Reference.reachabilityFence(interned);
+        interned = null;
+
+        baseline = usedHeap();
+        FlatAst flat = FlatAst.parse(tokens);
+        long flatHeap = usedHeap() - baseline;
+        Reference.reachabilityFence(tokens);
+        Reference.reachabilityFence(flat);
+        return new Result(input.length(), tokens.size(), nodes, bestLex, bestParse, bestDecode, heap, internedHeap, flatHeap);
+    }
+
+    private static int count(Ast.Source source) {
+        int[] nodes = {0};
+        new Ast.Walker() {
+            @Override
+            public Void visit(Ast ast) {
+                nodes[0]++;
+                return super.visit(ast);
+            }
+        }.visit((Ast) source);
+        return nodes[0];
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long parseSize(String size) {
+        char suffix = Character.toUpperCase(size.charAt(size.length() - 1));
+        int shift = suffix == 'K' ? 10 : suffix == 'M' ? 20 : suffix == 'G' ? 30 : 0;
+        String digits = shift == 0 ? size : size.substring(0, size.length() - 1);
+        return Long.parseLong(digits) << shift;
+    }
+
+    private static final class Result {
+
+        private final long size;
+        private final int tokens;
+        private final int nodes;
+        private final long lex;
+        private final long parse;
+        private final long decode;
+        private final long heap;
+        private final long internedHeap;
+        private final long flatHeap;
+
+        private Result(long size, int tokens, int nodes, long lex, long parse, long decode, long heap, long internedHeap, long flatHeap) {
+            this.size = size;
+            this.tokens = tokens;
+            this.nodes = nodes;
+            this.lex = lex;
+            this.parse = parse;
+            this.decode = decode;
+            this.heap = heap;
+            this.internedHeap = internedHeap;
+            this.flatHeap = flatHeap;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = (lex + parse) / 1e9;
+            return String.format(Locale.ROOT, "%12d %10d %10d %10.2f %10.2f %12.2f %10.2f %12.2f %10.2f %12.2f %12.2f",
+                    size, tokens, nodes, lex / 1e6, parse / 1e6, size / 1e6 / seconds,
+                    decode / 1e6, heap / 1048576.0, (double) heap / size, internedHeap / 1048576.0, flatHeap / 1048576.0);
+        }
+
+    }
+
+}
@@ -11,7 +11,9 @@ import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -617,6 +619,207 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @Test
+    void testRecoverMultipleErrors() {
+        /* LET x = ;
+         * DEF f() DO
+         *     y = ;
+         *     print(1);
+         * END
+         * DEF g() DO RETURN 1; END
+         */
+        String input = "LET x = ;\nDEF f() DO\n    y = ;\n    print(1);\nEND\nDEF g() DO RETURN 1; END";
+        Parser parser = new Parser(new Lexer(input).lex(), Parser.Option.RECOVER);
+        Ast.Source expected = new Ast.Source(
+                Arrays.asList(),
+                Arrays.asList(
+                        new Ast.Method("f", Arrays.asList(), Arrays.asList(
+                                new Ast.Stmt.Error("Expected IDENTIFIER, INTEGER, DECIMAL, CHARACTER, STRING, NIL, TRUE, or FALSE", 28),
+                                new Ast.Stmt.Expression(new Ast.Expr.Function(Optional.empty(), "print", Arrays.asList(
+                                        new Ast.Expr.Literal(BigInteger.ONE)
+                                )))
+                        )),
+                        new Ast.Method("g", Arrays.asList(), Arrays.asList(
+                                new Ast.Stmt.Return(new Ast.Expr.Literal(BigInteger.ONE))
+                        ))
+                )
+        );
+        Assertions.assertEquals(expected, parser.parseSource());
+        Assertions.assertEquals(2, parser.getErrors().size());
+        Assertions.assertEquals(7, parser.getErrors().get(0).getIndex());
+        Assertions.assertEquals(28, parser.getErrors().get(1).getIndex());
+    }
+
+    @Test
+    void testRecoverMissingEnd() {
+        //DEF f() DO print(1);
+        List<Token> input = new Lexer("DEF f() DO print(1);").lex();
+        Assertions.assertThrows(ParseException.class, () -> new Parser(input).parseSource());
+
+        Parser parser = new Parser(input, Parser.Option.RECOVER);
+        Ast.Source expected = new Ast.Source(
+                Arrays.asList(),
+                Arrays.asList(new Ast.Method("f", Arrays.asList(), Arrays.asList(
+                        new Ast.Stmt.Expression(new Ast.Expr.Function(Optional.empty(), "print", Arrays.asList(
+                                new Ast.Expr.Literal(BigInteger.ONE)
+                        )))
+                )))
+        );
+        Assertions.assertEquals(expected, parser.parseSource());
+        Assertions.assertEquals(1, parser.getErrors().size());
+        Assertions.assertEquals(20, parser.getErrors().get(0).getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRecoverEndOfInput(String test, String input, List<Integer> indices) {
+        Parser parser = new Parser(new Lexer(input).lex(), Parser.Option.RECOVER);
+        parser.parseSource();
+        Assertions.assertEquals(indices, parser.getErrors().stream().map(ParseException::getIndex).collect(Collectors.toList()));
+    }
+
+    private static Stream<Arguments> testRecoverEndOfInput() {
+        return Stream.of(
+                Arguments.of("Parameters", "DEF f(", Arrays.asList(6)),
+                Arguments.of("Method Name", "DEF", Arrays.asList(3)),
+                Arguments.of("Field Value", "LET x =", Arrays.asList(7)),
+                Arguments.of("If Body", "DEF f() DO IF x DO", Arrays.asList(18, 18)),
+                Arguments.of("Top Level If", "IF x DO", Arrays.asList(0)),
+                Arguments.of("Declaration", "DEF f() DO LET", Arrays.asList(14, 14)),
+                Arguments.of("Group", "DEF f() DO RETURN (1", Arrays.asList(20, 20)),
+                Arguments.of("Missing Semicolon", "DEF f() DO x END", Arrays.asList(13)),
+                Arguments.of("Stray End", "LET x = 1 END LET y;", Arrays.asList(10))
+        );
+    }
+
+    @Test
+    void testOutline() {
+        String input = new ProgramGenerator(0).generate(20_000);
+        List<Token> tokens = new Lexer(input).lex();
+        Ast.Source outline = new Parser(tokens, Parser.Option.OUTLINE).parseSource();
+        Assertions.assertFalse(outline.getMethods().get(0).isParsed());
+        Assertions.assertEquals(new Parser(tokens).parseSource(), outline);
+        Assertions.assertTrue(outline.getMethods().get(0).isParsed());
+    }
+
+    @Test
+    void testOutlineDeferredError() {
+        //DEF f() DO IF x DO y = ; END END LET z;
+        List<Token> tokens = new Lexer("DEF f() DO IF x DO y = ; END END LET z;").lex();
+        Ast.Source source = new Parser(tokens, Parser.Option.OUTLINE).parseSource();
+        Assertions.assertEquals(Arrays.asList(new Ast.Field("z", Optional.empty())), source.getFields());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> source.getMethods().get(0).getStatements());
+        Assertions.assertEquals(22, exception.getIndex());
+    }
+
+    @Test
+    void testOutlineRecoverErrors() {
+        //LET a = ; DEF f() DO x = ; END DEF g() DO y = ; END LET b = ;
+        List<Token> tokens = new Lexer("LET a = ; DEF f() DO x = ; END DEF g() DO y = ; END LET b = ;").lex();
+        Parser parser = new Parser(tokens, Parser.Option.RECOVER, Parser.Option.OUTLINE);
+        Ast.Source source = parser.parseSource();
+        Assertions.assertEquals(Arrays.asList(7, 59), indices(parser.getErrors()));
+        source.getMethods().get(1).getStatements();
+        Assertions.assertEquals(Arrays.asList(7, 45, 59), indices(parser.getErrors()));
+        source.getMethods().get(0).getStatements();
+        Assertions.assertEquals(Arrays.asList(7, 24, 45, 59), indices(parser.getErrors()));
+        Assertions.assertEquals(24, ((Ast.Stmt.Error) source.getMethods().get(0).getStatements().get(0)).getIndex());
+    }
+
+    @Test
+    void testOutlineConcurrentAccess() throws InterruptedException {
+        List<Token> tokens = new Lexer("DEF f() DO WHILE x DO print(x); END END").lex();
+        Ast.Method method = new Parser(tokens, Parser.Option.OUTLINE).parseSource().getMethods().get(0);
+        AtomicReferenceArray<List<Ast.Stmt>> results = new AtomicReferenceArray<>(8);
+        Thread[] threads = new Thread[results.length()];
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> results.set(index, method.getStatements()));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < results.length(); i++) {
+            Assertions.assertSame(results.get(0), results.get(i));
+        }
+    }
+
+    @Test
+    void testSpans() throws ParseException {
+        String input = "LET x = a + b.c; DEF f() DO RETURN x; END";
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        SpanTable spans = source.getSpans();
+        Ast.Field field = source.getFields().get(0);
+        Ast.Expr binary = field.getValue().get();
+        Assertions.assertEquals(0, spans.getStart(field));
+        Assertions.assertEquals(16, spans.getEnd(field));
+        Assertions.assertEquals(8, spans.getStart(binary));
+        Assertions.assertEquals(15, spans.getEnd(binary));
+        Assertions.assertEquals(0, spans.getStart(source));
+        Assertions.assertEquals(input.length(), spans.getEnd(source));
+        Assertions.assertEquals(new Ast.Expr.Access(Optional.of(
+                new Ast.Expr.Access(Optional.empty(), "b")), "c"), spans.find(14));
+        Assertions.assertEquals(new Ast.Expr.Access(Optional.empty(), "b"), spans.find(12));
+        Assertions.assertEquals(-1, spans.getStart(new Ast.Expr.Literal(null)));
+    }
+
+    @Test
+    void testInterning() throws ParseException {
+        AstFactory factory = new AstFactory(true);
+        List<Token> tokens = new Lexer("DEF f() DO print(x.y + 1); print(x.y + 1); END").lex();
+        Ast.Source first = new Parser(tokens, factory).parseSource();
+        Ast.Source second = new Parser(tokens, factory).parseSource();
+        Assertions.assertEquals(first, second);
+        Assertions.assertNotSame(first.getMethods().get(0), second.getMethods().get(0));
+        List<Ast.Stmt> statements = first.getMethods().get(0).getStatements();
+        Assertions.assertSame(statements.get(0), statements.get(1));
+        Assertions.assertSame(statements.get(0), second.getMethods().get(0).getStatements().get(0));
+        Assertions.assertEquals(new Parser(tokens).parseSource(), first);
+    }
+
+    @Test
+    void testFind() throws ParseException {
+        String input = new ProgramGenerator(1).generate(5_000);
+        SpanTable spans = new Parser(new Lexer(input).lex()).parseSource().getSpans();
+        for (int offset = -1; offset <= input.length(); offset++) {
+            // The innermost span containing the offset, found by a scan.
+            int best = -1;
+            for (int id = 0; id < spans.size(); id++) {
+                if (spans.getStart(id) <= offset && offset < spans.getEnd(id)
+                        && (best < 0 || spans.getEnd(id) - spans.getStart(id) < spans.getEnd(best) - spans.getStart(best))) {
+                    best = id;
+                }
+            }
+            Assertions.assertSame(best < 0 ? null : spans.getNode(best), spans.find(offset));
+        }
+    }
+
+    @Test
+    void testSharedSpans() throws ParseException {
+        // A shared node has one span per occurrence, and reports the first.
+        String input = "DEF f() DO print(x); print(x); END";
+        Ast.Source source = new Parser(new Lexer(input).lex(), new AstFactory(true)).parseSource();
+        List<Ast.Stmt> statements = source.getMethods().get(0).getStatements();
+        Assertions.assertSame(statements.get(0), statements.get(1));
+        Assertions.assertEquals(11, source.getSpans().getStart(statements.get(1)));
+        Assertions.assertSame(statements.get(1), source.getSpans().find(29));
+
+        Ast.Source plain = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(21, plain.getSpans().getStart(plain.getMethods().get(0).getStatements().get(1)));
+    }
+
+    @Test
+    void testOutlineSpans() throws ParseException {
+        String input = "DEF f() DO RETURN x; END";
+        Ast.Source source = new Parser(new Lexer(input).lex(), Parser.Option.OUTLINE).parseSource();
+        Ast.Stmt statement = source.getMethods().get(0).getStatements().get(0);
+        Assertions.assertEquals(11, source.getSpans().getStart(statement));
+        Assertions.assertEquals(20, source.getSpans().getEnd(statement));
+        Assertions.assertEquals(statement, source.getSpans().find(12));
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
@@ -630,4 +833,8 @@ final class ParserTests {
         }
     }
 
+    private static List<Integer> indices(List<ParseException> errors) {
+        return errors.stream().map(ParseException::getIndex).collect(Collectors.toList());
+    }
+
 }
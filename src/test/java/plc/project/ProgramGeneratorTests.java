@@ -0,0 +1,35 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+/**
+ * Tests that {@link ProgramGenerator} output is deterministic and accepted by
+ * both {@link Parser} and {@link StreamingParser}.
+ */
+final class ProgramGeneratorTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testGenerate(String test, long seed, int statementDepth, int expressionDepth, int width) {
+        String program = new ProgramGenerator(seed, statementDepth, expressionDepth, width).generate(20_000);
+        Assertions.assertTrue(program.length() >= 20_000);
+        Assertions.assertEquals(program, new ProgramGenerator(seed, statementDepth, expressionDepth, width).generate(20_000));
+        Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(program).lex()).parseSource());
+        Assertions.assertDoesNotThrow(() -> new StreamingParser(new Lexer(program), new ParseListener() {}).parseSource());
+    }
+
+    private static Stream<Arguments> testGenerate() {
+        return Stream.of(
+                Arguments.of("Default", 0L, 3, 4, 3),
+                Arguments.of("Flat", 1L, 0, 0, 1),
+                Arguments.of("Deep", 2L, 6, 8, 2),
+                Arguments.of("Wide", 3L, 2, 2, 8)
+        );
+    }
+
+}
@@ -0,0 +1,175 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests the events emitted by {@link StreamingParser}. Each event is recorded
+ * as a short string so the expected sequences stay readable.
+ */
+final class StreamingParserTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSource(String test, String input, List<String> expected) {
+        Recorder recorder = new Recorder();
+        new StreamingParser(new Lexer(input), recorder).parseSource();
+        Assertions.assertEquals(expected, recorder.events);
+    }
+
+    private static Stream<Arguments> testSource() {
+        return Stream.of(
+                Arguments.of("Empty", "", Arrays.asList()),
+                Arguments.of("Field", "LET x = 1 + y;", Arrays.asList(
+                        "literal 1", "access y", "binary +", "field x true"
+                )),
+                Arguments.of("Method",
+                        "DEF f(a, b) DO obj.g(a, 2); RETURN b; END",
+                        Arrays.asList(
+                                "method f", "parameter a", "parameter b",
+                                "start", "access obj", "access a", "literal 2", "call g true 2", "statement EXPRESSION null",
+                                "start", "access b", "statement RETURN null",
+                                "end f"
+                        )
+                ),
+                Arguments.of("If Else",
+                        "DEF f() DO IF c DO LET x; ELSE x = (1); END END",
+                        Arrays.asList(
+                                "method f",
+                                "start", "access c",
+                                "start", "statement DECLARATION x",
+                                "else",
+                                "start", "access x", "literal 1", "group", "statement ASSIGNMENT null",
+                                "statement IF null",
+                                "end f"
+                        )
+                ),
+                Arguments.of("For",
+                        "DEF f() DO FOR i IN list DO print(i); END END",
+                        Arrays.asList(
+                                "method f",
+                                "start", "access list",
+                                "start", "access i", "call print false 1", "statement EXPRESSION null",
+                                "statement FOR i",
+                                "end f"
+                        )
+                )
+        );
+    }
+
+    @Test
+    void testMatchesTokens() {
+        String input = "LET a = 1; DEF main() DO WHILE a != 10 DO print(a.b(1, \"s\")); a = a + 1; END END";
+        Recorder fromLexer = new Recorder();
+        Recorder fromTokens = new Recorder();
+        new StreamingParser(new Lexer(input), fromLexer).parseSource();
+        new StreamingParser(new Lexer(input).lex(), fromTokens).parseSource();
+        Assertions.assertEquals(fromLexer.events, fromTokens.events);
+        Assertions.assertEquals("field a true", fromLexer.events.get(1));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testMatchesParser(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, FlatAst.parse(new Lexer(input)).getSource().toAst());
+    }
+
+    private static Stream<Arguments> testMatchesParser() {
+        return Stream.of(
+                Arguments.of("Return Semicolon", "DEF f() DO RETURN x; END"),
+                Arguments.of("Return No Semicolon", "DEF f() DO RETURN x END"),
+                Arguments.of("Return Then Statement", "DEF f() DO IF c DO RETURN 1 END RETURN x + 1 END"),
+                Arguments.of("Generated 1", new ProgramGenerator(1).generate(5_000)),
+                Arguments.of("Generated 2", new ProgramGenerator(2).generate(5_000)),
+                Arguments.of("Generated 3", new ProgramGenerator(3).generate(5_000))
+        );
+    }
+
+    @Test
+    void testException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new StreamingParser(new Lexer("DEF f() DO x = ; END"), new Recorder()).parseSource());
+        Assertions.assertEquals(14, exception.getIndex());
+        exception = Assertions.assertThrows(ParseException.class,
+                () -> new StreamingParser(new Lexer("LET x = 1"), new Recorder()).parseSource());
+        Assertions.assertEquals(9, exception.getIndex());
+    }
+
+    private static final class Recorder implements ParseListener {
+
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onField(String name, boolean initialized) {
+            events.add("field " + name + " " + initialized);
+        }
+
+        @Override
+        public void onMethodStart(String name) {
+            events.add("method " + name);
+        }
+
+        @Override
+        public void onParameter(String name) {
+            events.add("parameter " + name);
+        }
+
+        @Override
+        public void onMethodEnd(String name) {
+            events.add("end " + name);
+        }
+
+        @Override
+        public void onStatementStart() {
+            events.add("start");
+        }
+
+        @Override
+        public void onElse() {
+            events.add("else");
+        }
+
+        @Override
+        public void onStatement(Kind kind, String name) {
+            events.add("statement " + kind + " " + name);
+        }
+
+        @Override
+        public void onLiteral(Object literal) {
+            Assertions.assertTrue(!(literal instanceof Number) || literal instanceof BigInteger);
+            events.add("literal " + literal);
+        }
+
+        @Override
+        public void onGroup() {
+            events.add("group");
+        }
+
+        @Override
+        public void onBinary(String operator) {
+            events.add("binary " + operator);
+        }
+
+        @Override
+        public void onAccess(String name, boolean hasReceiver) {
+            events.add("access " + name);
+        }
+
+        @Override
+        public void onCall(String name, boolean hasReceiver, int arguments) {
+            events.add("call " + name + " " + hasReceiver + " " + arguments);
+        }
+
+    }
+
+}
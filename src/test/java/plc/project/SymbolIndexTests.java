@@ -0,0 +1,127 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the definitions and references found by {@link SymbolIndex}, and that
+ * updating a file replaces only that file's entries.
+ */
+final class SymbolIndexTests {
+
+    @Test
+    void testDefinitions() {
+        SymbolIndex index = new SymbolIndex();
+        index.update("a", parse("LET x = 1; DEF f() DO x; END"));
+        index.update("b", parse("DEF x(y) DO RETURN y; END"));
+        Assertions.assertEquals(Arrays.asList("a FIELD 0", "b METHOD 0"), describe(index.getDefinitions("x")));
+        Assertions.assertEquals(Arrays.asList("a ACCESS 22"), describe(index.getReferences("x")));
+        Assertions.assertEquals(Arrays.asList(), index.getDefinitions("missing"));
+    }
+
+    @Test
+    void testReferences() {
+        SymbolIndex index = new SymbolIndex();
+        index.update("a", parse("LET f = f(); DEF g() DO obj.f(f); obj.f = 1; END"));
+        List<SymbolIndex.Entry> references = index.getReferences("f");
+        Assertions.assertEquals(Arrays.asList("a FUNCTION 8", "a FUNCTION 24", "a ACCESS 30", "a ACCESS 34"), describe(references));
+        Assertions.assertEquals(Arrays.asList(false, true, false, true),
+                Arrays.asList(references.get(0).hasReceiver(), references.get(1).hasReceiver(),
+                        references.get(2).hasReceiver(), references.get(3).hasReceiver()));
+        Assertions.assertNull(references.get(0).getMethod());
+        Assertions.assertEquals("g", references.get(1).getMethod());
+        Assertions.assertEquals(2, index.get("f", SymbolIndex.Kind.FUNCTION).size());
+    }
+
+    @Test
+    void testOffsets() {
+        SymbolIndex index = new SymbolIndex();
+        index.update("a", parse("DEF g() DO obj.f(1); END"));
+        SymbolIndex.Entry definition = index.getDefinitions("g").get(0);
+        Assertions.assertEquals("g", definition.getName());
+        Assertions.assertEquals(Arrays.asList(0, 24), Arrays.asList(definition.getStart(), definition.getEnd()));
+        SymbolIndex.Entry reference = index.getReferences("f").get(0);
+        Assertions.assertEquals("f", reference.getName());
+        Assertions.assertEquals(Arrays.asList(11, 19), Arrays.asList(reference.getStart(), reference.getEnd()));
+    }
+
+    @Test
+    void testInterned() {
+        String input = "LET y = print(x); DEF f() DO print(x); IF c DO print(x); END END DEF g() DO print(x); END";
+        Ast.Source source = new Parser(new Lexer(input).lex(), new AstFactory(true)).parseSource();
+        SymbolIndex index = new SymbolIndex();
+        index.update("a", source);
+        Assertions.assertEquals(Arrays.asList("a FUNCTION 8", "a FUNCTION 29", "a FUNCTION 47", "a FUNCTION 76"),
+                describe(index.getReferences("print")));
+        Assertions.assertEquals(Arrays.asList("a ACCESS 14", "a ACCESS 35", "a ACCESS 53", "a ACCESS 82"),
+                describe(index.getReferences("x")));
+        Assertions.assertEquals(Arrays.asList(null, "f", "f", "g"),
+                Arrays.asList(index.getReferences("x").stream().map(SymbolIndex.Entry::getMethod).toArray()));
+        Assertions.assertEquals(37, index.getReferences("print").get(1).getEnd());
+    }
+
+    @Test
+    void testInternedGenerated() {
+        String input = new ProgramGenerator(7).generate(5_000);
+        SymbolIndex interned = new SymbolIndex();
+        SymbolIndex plain = new SymbolIndex();
+        interned.update("a", new Parser(new Lexer(input).lex(), new AstFactory(true)).parseSource());
+        plain.update("a", parse(input));
+        for (Ast.Method method : parse(input).getMethods()) {
+            Assertions.assertEquals(describe(plain.getDefinitions(method.getName())),
+                    describe(interned.getDefinitions(method.getName())));
+            Assertions.assertEquals(describe(plain.getReferences(method.getName())),
+                    describe(interned.getReferences(method.getName())));
+        }
+    }
+
+    @Test
+    void testUpdate() {
+        SymbolIndex index = new SymbolIndex();
+        index.update("a", parse("DEF f() DO g(); END"));
+        index.update("b", parse("DEF h() DO g(); END"));
+        index.update("a", parse("DEF f() DO k(); END"));
+        Assertions.assertEquals(Arrays.asList("b FUNCTION 11"), describe(index.getReferences("g")));
+        Assertions.assertEquals(Arrays.asList("a FUNCTION 11"), describe(index.getReferences("k")));
+        Assertions.assertTrue(index.remove("b"));
+        Assertions.assertFalse(index.remove("b"));
+        Assertions.assertEquals(Arrays.asList(), index.getReferences("g"));
+        Assertions.assertEquals(1, index.size());
+    }
+
+    @Test
+    void testGenerated() {
+        SymbolIndex index = new SymbolIndex();
+        for (int i = 0; i < 20; i++) {
+            index.update("file" + i, parse(new ProgramGenerator(i).generate(5_000)));
+        }
+        String name = parse(new ProgramGenerator(3).generate(5_000)).getMethods().get(0).getName();
+        Assertions.assertTrue(files(index.getDefinitions(name)).contains("file3"));
+        index.update("file3", parse(""));
+        Assertions.assertFalse(files(index.getDefinitions(name)).contains("file3"));
+        Assertions.assertEquals(20, index.size());
+    }
+
+    private static List<String> describe(List<SymbolIndex.Entry> entries) {
+        List<String> descriptions = new ArrayList<>();
+        for (SymbolIndex.Entry entry : entries) {
+            descriptions.add(entry.getFile() + " " + entry.getKind() + " " + entry.getStart());
+        }
+        return descriptions;
+    }
+
+    private static List<String> files(List<SymbolIndex.Entry> entries) {
+        List<String> files = new ArrayList<>();
+        entries.forEach(entry -> files.add(entry.getFile()));
+        return files;
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
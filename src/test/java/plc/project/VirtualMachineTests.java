@@ -0,0 +1,58 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+
+/**
+ * Tests that programs compiled to {@link Bytecode} and run by the {@link
+ * VirtualMachine} behave as they do with the {@link Interpreter}, using the
+ * same programs as {@link InterpreterTests}.
+ */
+final class VirtualMachineTests {
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testRun")
+    void testRun(String test, String input, Object expected, String output) {
+        StringBuilder builder = new StringBuilder();
+        Object result = new VirtualMachine(Bytecode.compile(parse(input), new Environment(builder))).run();
+        Assertions.assertEquals(expected, result);
+        Assertions.assertEquals(output, builder.toString());
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testResolveError")
+    void testResolveError(String test, String input) {
+        Assertions.assertThrows(EvaluationException.class, () -> Bytecode.compile(parse(input), new Environment()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testRuntimeError")
+    void testRuntimeError(String test, String input) {
+        VirtualMachine machine = new VirtualMachine(Bytecode.compile(parse(input), new Environment(new StringBuilder())));
+        Assertions.assertThrows(EvaluationException.class, machine::run);
+    }
+
+    @Test
+    void testDeepRecursion() {
+        // Each call needs a frame on the shared stack, which must grow.
+        Ast.Source source = parse("DEF sum(n) DO IF n == 0 DO RETURN 0; END RETURN n + sum(n - 1); END");
+        VirtualMachine machine = new VirtualMachine(Bytecode.compile(source, new Environment()));
+        Assertions.assertEquals(BigInteger.valueOf(2000 * 2001 / 2), machine.call("sum", BigInteger.valueOf(2000)));
+    }
+
+    @Test
+    void testConstantPool() {
+        Bytecode program = Bytecode.compile(parse("DEF main() DO RETURN \"a\" + \"a\" + 1 + 1 + 1.0; END"), new Environment());
+        // "a", 1, 1.0 and the NIL returned at the end of the method.
+        Assertions.assertEquals(4, program.constants.length);
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}